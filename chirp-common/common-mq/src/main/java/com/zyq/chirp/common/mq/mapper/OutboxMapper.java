@@ -0,0 +1,26 @@
+package com.zyq.chirp.common.mq.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.zyq.chirp.common.mq.model.OutboxMessage;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+
+public interface OutboxMapper extends BaseMapper<OutboxMessage> {
+    int insertList(@Param("messages") Collection<OutboxMessage> messages);
+
+    /**
+     * 初始化中继租约记录，已存在时忽略
+     */
+    int initLease(@Param("service") String service);
+
+    /**
+     * 获取或续期中继租约，租约未被其他实例持有或已过期时成功
+     *
+     * @param lease 租约时长(毫秒)
+     * @return 1为持有租约
+     */
+    int tryLease(@Param("service") String service, @Param("owner") String owner, @Param("lease") Long lease);
+
+    int releaseLease(@Param("service") String service, @Param("owner") String owner);
+}
@@ -0,0 +1,39 @@
+package com.zyq.chirp.common.mq.model;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.sql.Timestamp;
+
+/**
+ * 发件箱消息，与业务数据在同一个事务中写入，由中继按id顺序发送到kafka后删除
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("tb_outbox")
+public class OutboxMessage {
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    /**
+     * 写入消息的服务，只由该服务的中继发送
+     */
+    private String service;
+    private String topic;
+    private String msgKey;
+    /**
+     * 消息体的json
+     */
+    private String payload;
+    /**
+     * 消息体的类型，发送前按该类型还原，保持与直接发送时相同的类型头
+     */
+    private String payloadType;
+    private Timestamp createTime;
+}
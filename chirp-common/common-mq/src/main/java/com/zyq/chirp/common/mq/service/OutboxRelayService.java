@@ -0,0 +1,17 @@
+package com.zyq.chirp.common.mq.service;
+
+/**
+ * 发件箱中继服务接口
+ * 同一服务只有持有租约的实例中继，按id顺序批量发送本服务写入的消息，发送成功后删除
+ */
+public interface OutboxRelayService {
+    /**
+     * 执行一轮中继，直到发件箱清空、发送失败或达到单轮批次上限
+     */
+    void relay();
+
+    /**
+     * 唤醒中继线程，在写入消息的事务提交后调用，不必等待下一次轮询
+     */
+    void wakeUp();
+}
@@ -0,0 +1,38 @@
+package com.zyq.chirp.common.mq.service;
+
+import com.zyq.chirp.common.mq.model.OutboxMessage;
+
+import java.util.Collection;
+
+/**
+ * 发件箱服务接口
+ * 业务数据与待发送的消息在同一个事务中写入，事务提交后由中继发送到kafka，
+ * 避免业务数据已提交而消息因宕机或broker故障丢失
+ */
+public interface OutboxService {
+    /**
+     * 构建发件箱消息，消息体按json保存
+     *
+     * @param topic   主题
+     * @param key     消息键，可以为空
+     * @param payload 消息体
+     * @return 发件箱消息
+     */
+    OutboxMessage build(String topic, String key, Object payload);
+
+    /**
+     * 写入发件箱，必须在调用方的事务中执行
+     *
+     * @param messages 发件箱消息
+     */
+    void save(Collection<OutboxMessage> messages);
+
+    /**
+     * 构建并写入一条消息，必须在调用方的事务中执行
+     *
+     * @param topic   主题
+     * @param key     消息键，可以为空
+     * @param payload 消息体
+     */
+    void save(String topic, String key, Object payload);
+}
@@ -0,0 +1,235 @@
+package com.zyq.chirp.common.mq.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zyq.chirp.common.mq.mapper.OutboxMapper;
+import com.zyq.chirp.common.mq.model.OutboxMessage;
+import com.zyq.chirp.common.mq.service.OutboxRelayService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.JacksonUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 发件箱中继服务实现类
+ * 中继线程在事务提交后被唤醒，或按间隔轮询。每批按id顺序取出本服务的消息全部发送后依次等待结果，
+ * 只删除从头开始连续发送成功的消息，失败的消息及其后的消息在下一轮重发，保证同一个键的消息不乱序；
+ * 生产者需开启幂等，重试时不会在分区内重复或乱序。每批发送前续期租约，租约丢失时立即停止
+ */
+@Service
+@Slf4j
+public class OutboxRelayServiceImpl implements OutboxRelayService {
+    /**
+     * 与kafka的JsonSerializer使用相同的配置
+     */
+    private final ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper();
+    @Resource
+    OutboxMapper outboxMapper;
+    @Resource
+    KafkaTemplate<String, Object> kafkaTemplate;
+    @Resource
+    MeterRegistry meterRegistry;
+    @Value("${spring.application.name}")
+    String service;
+    @Value("${mq.outbox.batch-size}")
+    Integer batchSize;
+    @Value("${mq.outbox.max-batches}")
+    Integer maxBatches;
+    @Value("${mq.outbox.interval}")
+    Long interval;
+    @Value("${mq.outbox.lease}")
+    Long lease;
+    @Value("${mq.outbox.send-timeout}")
+    Long sendTimeout;
+    private final String token = UUID.randomUUID().toString();
+    private final Semaphore signal = new Semaphore(0);
+    private final Map<String, Class<?>> types = new ConcurrentHashMap<>();
+    /**
+     * 最早一条未发送消息的等待时间(毫秒)
+     */
+    private final AtomicLong lag = new AtomicLong();
+    private volatile boolean held;
+    private Thread thread;
+    private Counter publishedCounter;
+    private Counter failedCounter;
+    private Counter droppedCounter;
+    private Timer batchTimer;
+
+    @PostConstruct
+    public void init() {
+        publishedCounter = Counter.builder("outbox.published")
+                .description("发件箱已发送的消息数")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("outbox.failed")
+                .description("发件箱发送失败、等待重发的批次数")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("outbox.dropped")
+                .description("消息体无法还原而丢弃的消息数")
+                .register(meterRegistry);
+        batchTimer = Timer.builder("outbox.relay.batch")
+                .description("每批消息从发送到全部确认的耗时")
+                .register(meterRegistry);
+        Gauge.builder("outbox.lag", lag, AtomicLong::get)
+                .description("最早一条未发送消息的等待时间(毫秒)")
+                .register(meterRegistry);
+        thread = Thread.ofPlatform().name("outbox-relay").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        thread.interrupt();
+        if (held) {
+            try {
+                outboxMapper.releaseLease(service, token);
+            } catch (Exception e) {
+                log.warn("释放发件箱中继租约失败，错误:", e);
+            }
+        }
+    }
+
+    @Override
+    public void wakeUp() {
+        signal.release();
+    }
+
+    @Override
+    public void relay() {
+        for (int i = 0; i < maxBatches; i++) {
+            if (!this.hold()) {
+                return;
+            }
+            List<OutboxMessage> messages = outboxMapper.selectPage(new Page<>(1, batchSize, false),
+                    new LambdaQueryWrapper<OutboxMessage>()
+                            .eq(OutboxMessage::getService, service)
+                            .orderByAsc(OutboxMessage::getId)).getRecords();
+            if (messages.isEmpty()) {
+                lag.set(0);
+                return;
+            }
+            int sent = batchTimer.record(() -> this.send(messages));
+            if (sent > 0) {
+                outboxMapper.deleteBatchIds(messages.subList(0, sent).stream().map(OutboxMessage::getId).toList());
+                publishedCounter.increment(sent);
+            }
+            if (sent < messages.size()) {
+                failedCounter.increment();
+                lag.set(System.currentTimeMillis() - messages.get(sent).getCreateTime().getTime());
+                return;
+            }
+            if (messages.size() < batchSize) {
+                lag.set(0);
+                return;
+            }
+        }
+        //达到单轮上限，记录剩余消息的等待时间后立即开始下一轮
+        List<OutboxMessage> oldest = outboxMapper.selectPage(new Page<>(1, 1, false),
+                new LambdaQueryWrapper<OutboxMessage>()
+                        .select(OutboxMessage::getId, OutboxMessage::getCreateTime)
+                        .eq(OutboxMessage::getService, service)
+                        .orderByAsc(OutboxMessage::getId)).getRecords();
+        lag.set(oldest.isEmpty() ? 0 : System.currentTimeMillis() - oldest.getFirst().getCreateTime().getTime());
+        signal.release();
+    }
+
+    private void run() {
+        try {
+            outboxMapper.initLease(service);
+        } catch (Exception e) {
+            log.error("初始化发件箱中继租约失败，错误:", e);
+        }
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                signal.tryAcquire(interval, TimeUnit.MILLISECONDS);
+                signal.drainPermits();
+                this.relay();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("发件箱中继失败，错误:", e);
+            }
+        }
+    }
+
+    /**
+     * 获取或续期租约
+     *
+     * @return 本实例是否持有租约
+     */
+    private boolean hold() {
+        boolean acquired = outboxMapper.tryLease(service, token, lease) > 0;
+        if (acquired != held) {
+            log.info(acquired ? "获得发件箱中继租约" : "发件箱中继租约已被其他实例持有");
+            held = acquired;
+        }
+        if (!acquired) {
+            lag.set(0);
+        }
+        return acquired;
+    }
+
+    /**
+     * 按顺序发送整批消息后依次等待结果
+     *
+     * @return 从头开始连续发送成功的消息数
+     */
+    private int send(List<OutboxMessage> messages) {
+        List<CompletableFuture<?>> futures = new ArrayList<>(messages.size());
+        for (OutboxMessage message : messages) {
+            Object payload = this.restore(message);
+            futures.add(payload == null
+                    ? CompletableFuture.completedFuture(null)
+                    : kafkaTemplate.send(message.getTopic(), message.getMsgKey(), payload));
+        }
+        int sent = 0;
+        for (CompletableFuture<?> future : futures) {
+            try {
+                future.get(sendTimeout, TimeUnit.MILLISECONDS);
+                sent++;
+            } catch (ExecutionException | TimeoutException e) {
+                log.warn("发件箱消息发送失败，稍后重发，消息:{}，错误:", messages.get(sent), e);
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * 按写入时的类型还原消息体，无法还原的消息会一直阻塞后续消息，记录后丢弃
+     */
+    private Object restore(OutboxMessage message) {
+        try {
+            Class<?> type = types.computeIfAbsent(message.getPayloadType(), name -> {
+                try {
+                    return ClassUtils.forName(name, ClassUtils.getDefaultClassLoader());
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            return objectMapper.readValue(message.getPayload(), type);
+        } catch (Exception e) {
+            log.error("无法还原发件箱消息，已丢弃，消息:{}，错误:", message, e);
+            droppedCounter.increment();
+            return null;
+        }
+    }
+}
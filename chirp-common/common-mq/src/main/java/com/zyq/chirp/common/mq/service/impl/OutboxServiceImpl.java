@@ -0,0 +1,71 @@
+package com.zyq.chirp.common.mq.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zyq.chirp.common.mq.mapper.OutboxMapper;
+import com.zyq.chirp.common.mq.model.OutboxMessage;
+import com.zyq.chirp.common.mq.service.OutboxRelayService;
+import com.zyq.chirp.common.mq.service.OutboxService;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.JacksonUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+
+@Service
+public class OutboxServiceImpl implements OutboxService {
+    /**
+     * 与kafka的JsonSerializer使用相同的配置，还原后的消息体序列化结果不变
+     */
+    private final ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper();
+    @Resource
+    OutboxMapper outboxMapper;
+    @Resource
+    OutboxRelayService outboxRelayService;
+    @Value("${spring.application.name}")
+    String service;
+
+    @Override
+    public OutboxMessage build(String topic, String key, Object payload) {
+        try {
+            return OutboxMessage.builder()
+                    .service(service)
+                    .topic(topic)
+                    .msgKey(key)
+                    .payload(objectMapper.writeValueAsString(payload))
+                    .payloadType(payload.getClass().getName())
+                    .createTime(new Timestamp(System.currentTimeMillis()))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(STR."无法序列化消息体:\{payload}", e);
+        }
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void save(Collection<OutboxMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        outboxMapper.insertList(messages);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                outboxRelayService.wakeUp();
+            }
+        });
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void save(String topic, String key, Object payload) {
+        this.save(List.of(this.build(topic, key, payload)));
+    }
+}
@@ -0,0 +1,109 @@
+package com.zyq.chirp.common.mq.service.impl;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zyq.chirp.common.mq.mapper.OutboxMapper;
+import com.zyq.chirp.common.mq.model.OutboxMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 发件箱中继吞吐测试
+ * 发件箱表与kafka均在内存中模拟，kafka每条消息延迟确认，对比每批一条(逐条等待确认)与整批发送后等待的吞吐
+ */
+public class OutboxRelayThroughputTest {
+    private static final long ACK_LATENCY = 1;
+    private final ScheduledExecutorService broker = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    public void shutdown() {
+        broker.shutdownNow();
+    }
+
+    @Test
+    public void batchedRelayOutperformsOneByOne() {
+        double single = this.relay(2000, 1);
+        double batched = this.relay(2000, 200);
+        System.out.printf("发件箱中继吞吐，每批1条:%.0f条/秒，每批200条:%.0f条/秒%n", single, batched);
+        assertTrue(batched > single * 5, "整批发送的吞吐应明显高于逐条等待确认");
+    }
+
+    /**
+     * 中继全部消息，校验按id顺序发送且全部删除
+     *
+     * @return 每秒发送的消息数
+     */
+    @SuppressWarnings("unchecked")
+    private double relay(int total, int batchSize) {
+        TreeMap<Long, OutboxMessage> rows = new TreeMap<>();
+        for (long id = 1; id <= total; id++) {
+            rows.put(id, OutboxMessage.builder()
+                    .id(id)
+                    .service("test")
+                    .topic("test")
+                    .msgKey(String.valueOf(id % 16))
+                    .payload("{\"id\":" + id + "}")
+                    .payloadType(LinkedHashMap.class.getName())
+                    .createTime(new Timestamp(System.currentTimeMillis()))
+                    .build());
+        }
+        List<Long> sent = Collections.synchronizedList(new ArrayList<>());
+        OutboxRelayServiceImpl relayService = new OutboxRelayServiceImpl();
+        relayService.outboxMapper = mock(OutboxMapper.class);
+        relayService.kafkaTemplate = mock(KafkaTemplate.class);
+        relayService.meterRegistry = new SimpleMeterRegistry();
+        relayService.service = "test";
+        relayService.batchSize = batchSize;
+        relayService.maxBatches = Integer.MAX_VALUE;
+        relayService.interval = TimeUnit.HOURS.toMillis(1);
+        relayService.lease = TimeUnit.MINUTES.toMillis(1);
+        relayService.sendTimeout = TimeUnit.SECONDS.toMillis(10);
+        when(relayService.outboxMapper.tryLease(anyString(), anyString(), anyLong())).thenReturn(1);
+        when(relayService.outboxMapper.selectPage(any(), any())).thenAnswer(invocation -> {
+            Page<OutboxMessage> page = invocation.getArgument(0);
+            page.setRecords(rows.values().stream().limit(page.getSize()).toList());
+            return page;
+        });
+        when(relayService.outboxMapper.deleteBatchIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<?> ids = invocation.getArgument(0);
+            ids.forEach(rows::remove);
+            return ids.size();
+        });
+        when(relayService.kafkaTemplate.send(anyString(), any(), any())).thenAnswer(invocation -> {
+            Map<?, ?> payload = invocation.getArgument(2);
+            CompletableFuture<SendResult<String, Object>> future = new CompletableFuture<>();
+            broker.schedule(() -> {
+                sent.add(((Number) payload.get("id")).longValue());
+                future.complete(null);
+            }, ACK_LATENCY, TimeUnit.MILLISECONDS);
+            return future;
+        });
+        //轮询间隔足够长，中继线程不会与测试线程同时中继
+        relayService.init();
+        try {
+            long start = System.nanoTime();
+            relayService.relay();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            assertTrue(rows.isEmpty(), "全部消息发送后应被删除");
+            assertEquals(LongStream.rangeClosed(1, total).boxed().toList(), sent);
+            return total / seconds;
+        } finally {
+            relayService.destroy();
+        }
+    }
+}
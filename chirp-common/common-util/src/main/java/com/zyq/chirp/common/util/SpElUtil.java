@@ -3,24 +3,133 @@ package com.zyq.chirp.common.util;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.core.DefaultParameterNameDiscoverer;
-import org.springframework.expression.EvaluationContext;
-import org.springframework.expression.Expression;
+import org.springframework.expression.*;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 注解中SpEL表达式的求值工具
+ * 每个方法上的每个表达式只解析一次，多次执行后编译为字节码，编译后执行失败时回退为解释执行，参数名到参数下标的映射同时预先计算；
+ * 求值时只创建一个持有参数数组的上下文，变量按下标直接读取
+ */
 public class SpElUtil {
-    private static final SpelExpressionParser parser = new SpelExpressionParser();
+    private static final SpelExpressionParser parser = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, SpElUtil.class.getClassLoader()));
     private static final DefaultParameterNameDiscoverer discoverer = new DefaultParameterNameDiscoverer();
+    /**
+     * 所有求值共享的只读上下文，提供属性访问、类型转换等组件
+     */
+    private static final StandardEvaluationContext shared = new StandardEvaluationContext();
+    private static final Map<Method, Map<String, MethodExpression>> cache = new ConcurrentHashMap<>();
+
+    static {
+        //提前初始化延迟创建的组件，之后只读，可以在多线程间共享
+        shared.getPropertyAccessors();
+        shared.getConstructorResolvers();
+        shared.getMethodResolvers();
+        shared.getTypeLocator();
+        shared.getTypeConverter();
+    }
 
     public static String generateKeyBySPEL(String spELString, JoinPoint joinPoint) {
-        MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
-        String[] paramNames = discoverer.getParameterNames(methodSignature.getMethod());
-        Expression expression = parser.parseExpression(spELString);
-        EvaluationContext context = new StandardEvaluationContext();
-        Object[] args = joinPoint.getArgs();
-        for (int i = 0; i < args.length; i++) {
-            context.setVariable(paramNames[i], args[i]);
-        }
-        return expression.getValue(context).toString();
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Map<String, MethodExpression> expressions = cache.get(method);
+        if (expressions == null) {
+            expressions = cache.computeIfAbsent(method, key -> new ConcurrentHashMap<>());
+        }
+        MethodExpression methodExpression = expressions.get(spELString);
+        if (methodExpression == null) {
+            methodExpression = expressions.computeIfAbsent(spELString, expression -> new MethodExpression(method, expression));
+        }
+        return methodExpression.expression.getValue(new ArgsContext(methodExpression.paramIndex, joinPoint.getArgs())).toString();
+    }
+
+    /**
+     * 已解析的表达式及其所在方法的参数名下标
+     */
+    private static class MethodExpression {
+        private final Expression expression;
+        private final Map<String, Integer> paramIndex;
+
+        private MethodExpression(Method method, String spELString) {
+            this.expression = parser.parseExpression(spELString);
+            String[] paramNames = discoverer.getParameterNames(method);
+            Map<String, Integer> index = new HashMap<>();
+            if (paramNames != null) {
+                for (int i = 0; i < paramNames.length; i++) {
+                    index.put(paramNames[i], i);
+                }
+            }
+            this.paramIndex = Map.copyOf(index);
+        }
+    }
+
+    /**
+     * 以方法参数作为变量的求值上下文，除变量外的组件均来自共享上下文
+     */
+    private record ArgsContext(Map<String, Integer> paramIndex, Object[] args) implements EvaluationContext {
+        @Override
+        public TypedValue getRootObject() {
+            return TypedValue.NULL;
+        }
+
+        @Override
+        public List<PropertyAccessor> getPropertyAccessors() {
+            return shared.getPropertyAccessors();
+        }
+
+        @Override
+        public List<ConstructorResolver> getConstructorResolvers() {
+            return shared.getConstructorResolvers();
+        }
+
+        @Override
+        public List<MethodResolver> getMethodResolvers() {
+            return shared.getMethodResolvers();
+        }
+
+        @Override
+        public BeanResolver getBeanResolver() {
+            return null;
+        }
+
+        @Override
+        public TypeLocator getTypeLocator() {
+            return shared.getTypeLocator();
+        }
+
+        @Override
+        public TypeConverter getTypeConverter() {
+            return shared.getTypeConverter();
+        }
+
+        @Override
+        public TypeComparator getTypeComparator() {
+            return shared.getTypeComparator();
+        }
+
+        @Override
+        public OperatorOverloader getOperatorOverloader() {
+            return shared.getOperatorOverloader();
+        }
+
+        @Override
+        public void setVariable(String name, Object value) {
+            throw new UnsupportedOperationException("注解表达式中不允许定义变量");
+        }
+
+        @Override
+        public Object lookupVariable(String name) {
+            Integer index = paramIndex.get(name);
+            return index != null && index < args.length ? args[index] : null;
+        }
     }
 }
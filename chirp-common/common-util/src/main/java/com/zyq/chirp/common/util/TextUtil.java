@@ -2,46 +2,125 @@ package com.zyq.chirp.common.util;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * 推文文本解析工具
+ * 单次遍历识别@用户、#话题与链接，不使用正则表达式
+ */
 public class TextUtil {
+    /**
+     * 文本实体类型
+     */
+    public enum EntityType {
+        MENTION,
+        TAG,
+        URL
+    }
+
+    @FunctionalInterface
+    public interface EntityVisitor {
+        /**
+         * @param type  实体类型
+         * @param start 实体在文本中的起始位置，包含@、#前缀
+         * @param end   实体在文本中的结束位置，不包含
+         */
+        void visit(EntityType type, int start, int end);
+    }
+
+    /**
+     * 单次遍历文本，按出现顺序回调其中的实体，实体之间不会重叠
+     * 链接以http://或https://开头，直到空白或非ASCII字符结束，末尾的标点不属于链接；
+     * @用户与#话题的前一个字符不能是ASCII字母数字（避免把邮箱识别为@用户，中文后紧跟的@用户仍可识别），
+     * 内容由字母、数字、下划线与连字符组成
+     */
+    public static void scan(String text, EntityVisitor visitor) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == 'h' && (i == 0 || !isAsciiWordChar(text.charAt(i - 1)))
+                    && (text.startsWith("http://", i) || text.startsWith("https://", i))) {
+                int end = i;
+                boolean parenthesis = false;
+                while (end < length && text.charAt(end) < 0x80 && !Character.isWhitespace(text.charAt(end))) {
+                    parenthesis |= text.charAt(end) == '(';
+                    end++;
+                }
+                //句末的标点与包住链接的右括号不属于链接
+                while (end > i && (isTrailingPunctuation(text.charAt(end - 1)) || (!parenthesis && text.charAt(end - 1) == ')'))) {
+                    end--;
+                }
+                visitor.visit(EntityType.URL, i, end);
+                i = end;
+                continue;
+            }
+            if ((c == '@' || c == '#') && (i == 0 || !isAsciiWordChar(text.charAt(i - 1)))) {
+                int end = i + 1;
+                while (end < length && isWordChar(text.charAt(end))) {
+                    end++;
+                }
+                if (end > i + 1) {
+                    visitor.visit(c == '@' ? EntityType.MENTION : EntityType.TAG, i, end);
+                    i = end;
+                    continue;
+                }
+            }
+            i++;
+        }
+    }
+
     public static List<String> findMentioned(String text) {
-        Pattern pattern = Pattern.compile("@[^@\\s]+");
-        Matcher matcher = pattern.matcher(text);
         List<String> str = new ArrayList<>();
-        while (matcher.find()) {
-            str.add(matcher.group().replace("@", ""));
-        }
+        scan(text, (type, start, end) -> {
+            if (type == EntityType.MENTION) {
+                str.add(text.substring(start + 1, end));
+            }
+        });
         return str;
     }
 
     public static boolean getIsMentioned(String text, String username) {
-        Pattern pattern = Pattern.compile(STR."@\{username}\\b");
-        Matcher matcher = pattern.matcher(text);
-        return matcher.find();
+        if (username == null) {
+            return false;
+        }
+        boolean[] mentioned = {false};
+        scan(text, (type, start, end) -> {
+            if (type == EntityType.MENTION && end - start - 1 == username.length()
+                    && text.regionMatches(start + 1, username, 0, username.length())) {
+                mentioned[0] = true;
+            }
+        });
+        return mentioned[0];
     }
 
     public static List<String> findTags(String text) {
-        Pattern pattern = Pattern.compile("#[^#\\s]+");
-        Matcher matcher = pattern.matcher(text);
         List<String> str = new ArrayList<>();
-        while (matcher.find()) {
-            str.add(matcher.group());
-        }
+        scan(text, (type, start, end) -> {
+            if (type == EntityType.TAG) {
+                str.add(text.substring(start, end));
+            }
+        });
         return str;
     }
 
     public static List<String> findTags(List<String> text) {
-        Pattern pattern = Pattern.compile("#[^#\\s]+");
         List<String> str = new ArrayList<>();
-        text.forEach(content -> {
-            Matcher matcher = pattern.matcher(content);
-            while (matcher.find()) {
-                str.add(matcher.group());
-            }
-        });
+        text.forEach(content -> str.addAll(findTags(content)));
         return str;
     }
 
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+    }
+
+    private static boolean isAsciiWordChar(char c) {
+        return c < 0x80 && isWordChar(c);
+    }
+
+    private static boolean isTrailingPunctuation(char c) {
+        return c == '.' || c == ',' || c == ';' || c == ':' || c == '!' || c == '?' || c == '\'' || c == '"';
+    }
 }
@@ -0,0 +1,126 @@
+package com.zyq.chirp.common.util;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 注解表达式求值的基准测试，对比每次调用都重新解析表达式、创建上下文的旧实现
+ * 执行mvn test-compile后运行main方法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpElUtilBenchmark {
+    static final String EXPRESSION = "#chirperDto.inReplyToChirperId";
+    private static final SpelExpressionParser legacyParser = new SpelExpressionParser();
+    private static final DefaultParameterNameDiscoverer legacyDiscoverer = new DefaultParameterNameDiscoverer();
+    private JoinPoint joinPoint;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SpElUtilBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        joinPoint = joinPoint(Target.class.getMethod("reply", Target.Dto.class, Long.class), new Target.Dto(1L, 2L), 3L);
+    }
+
+    @Benchmark
+    public String legacy() {
+        return legacyGenerateKey(EXPRESSION, joinPoint);
+    }
+
+    @Benchmark
+    public String cached() {
+        return SpElUtil.generateKeyBySPEL(EXPRESSION, joinPoint);
+    }
+
+    /**
+     * 优化前的实现
+     */
+    static String legacyGenerateKey(String spELString, JoinPoint joinPoint) {
+        MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
+        String[] paramNames = legacyDiscoverer.getParameterNames(methodSignature.getMethod());
+        Expression expression = legacyParser.parseExpression(spELString);
+        EvaluationContext context = new StandardEvaluationContext();
+        Object[] args = joinPoint.getArgs();
+        for (int i = 0; i < args.length; i++) {
+            context.setVariable(paramNames[i], args[i]);
+        }
+        return expression.getValue(context).toString();
+    }
+
+    /**
+     * 只提供方法与参数的切点
+     */
+    static JoinPoint joinPoint(Method method, Object... args) {
+        MethodSignature signature = (MethodSignature) Proxy.newProxyInstance(SpElUtilBenchmark.class.getClassLoader(),
+                new Class[]{MethodSignature.class}, (proxy, invoked, invokedArgs) -> switch (invoked.getName()) {
+                    case "getMethod" -> method;
+                    default -> throw new UnsupportedOperationException(invoked.getName());
+                });
+        return (JoinPoint) Proxy.newProxyInstance(SpElUtilBenchmark.class.getClassLoader(),
+                new Class[]{JoinPoint.class}, (proxy, invoked, invokedArgs) -> switch (invoked.getName()) {
+                    case "getSignature" -> signature;
+                    case "getArgs" -> args;
+                    default -> throw new UnsupportedOperationException(invoked.getName());
+                });
+    }
+
+    /**
+     * 与@Statistic所在方法形式相同的被拦截方法
+     */
+    public static class Target {
+        public void reply(Dto chirperDto, Long viewerId) {
+        }
+
+        public void entity(Object entity) {
+        }
+
+        public static class Dto {
+            private final Long authorId;
+            private final Long inReplyToChirperId;
+
+            public Dto(Long authorId, Long inReplyToChirperId) {
+                this.authorId = authorId;
+                this.inReplyToChirperId = inReplyToChirperId;
+            }
+
+            public Long getAuthorId() {
+                return authorId;
+            }
+
+            public Long getInReplyToChirperId() {
+                return inReplyToChirperId;
+            }
+        }
+
+        public static class Other {
+            private final Long authorId;
+
+            public Other(Long authorId) {
+                this.authorId = authorId;
+            }
+
+            public Long getAuthorId() {
+                return authorId;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.zyq.chirp.common.util;
+
+import com.zyq.chirp.common.util.SpElUtilBenchmark.Target;
+import org.aspectj.lang.JoinPoint;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpElUtilTest {
+
+    @Test
+    public void sameKeyAsLegacy() throws NoSuchMethodException {
+        Method method = Target.class.getMethod("reply", Target.Dto.class, Long.class);
+        for (long i = 0; i < 300; i++) {
+            JoinPoint joinPoint = SpElUtilBenchmark.joinPoint(method, new Target.Dto(i, i + 1), i + 2);
+            for (String expression : new String[]{SpElUtilBenchmark.EXPRESSION, "#viewerId", "#chirperDto.authorId + ':' + #viewerId"}) {
+                assertEquals(SpElUtilBenchmark.legacyGenerateKey(expression, joinPoint),
+                        SpElUtil.generateKeyBySPEL(expression, joinPoint));
+            }
+        }
+    }
+
+    @Test
+    public void compiledExpressionFallsBackWhenArgumentTypeChanges() throws NoSuchMethodException {
+        Method method = Target.class.getMethod("entity", Object.class);
+        //足够多次的执行使表达式按第一种参数类型编译
+        for (long i = 0; i < 300; i++) {
+            assertEquals(String.valueOf(i), SpElUtil.generateKeyBySPEL("#entity.authorId",
+                    SpElUtilBenchmark.joinPoint(method, new Target.Dto(i, null))));
+        }
+        //参数类型变化后编译的表达式无法执行，回退为解释执行而不是抛出异常
+        assertEquals("7", SpElUtil.generateKeyBySPEL("#entity.authorId",
+                SpElUtilBenchmark.joinPoint(method, new Target.Other(7L))));
+    }
+}
@@ -0,0 +1,74 @@
+package com.zyq.chirp.common.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 推文文本解析的基准测试，对比每次调用都编译正则表达式的旧实现
+ * 执行mvn test-compile后运行main方法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TextUtilBenchmark {
+    private static final String TEXT = "今天和@alice @bob_1 一起讨论了 #java 与 #性能优化，详见 https://example.com/posts/42?from=chirp 欢迎@carol 参与";
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TextUtilBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        blackhole.consume(legacyFindMentioned(TEXT));
+        blackhole.consume(legacyFindTags(TEXT));
+        blackhole.consume(legacyIsMentioned(TEXT, "carol"));
+    }
+
+    @Benchmark
+    public void scanner(Blackhole blackhole) {
+        blackhole.consume(TextUtil.findMentioned(TEXT));
+        blackhole.consume(TextUtil.findTags(TEXT));
+        blackhole.consume(TextUtil.getIsMentioned(TEXT, "carol"));
+    }
+
+    /**
+     * 优化前的实现
+     */
+    private static List<String> legacyFindMentioned(String text) {
+        Pattern pattern = Pattern.compile("@[^@\\s]+");
+        Matcher matcher = pattern.matcher(text);
+        List<String> str = new ArrayList<>();
+        while (matcher.find()) {
+            str.add(matcher.group().replace("@", ""));
+        }
+        return str;
+    }
+
+    private static boolean legacyIsMentioned(String text, String username) {
+        Pattern pattern = Pattern.compile("@" + username + "\\b");
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find();
+    }
+
+    private static List<String> legacyFindTags(String text) {
+        Pattern pattern = Pattern.compile("#[^#\\s]+");
+        Matcher matcher = pattern.matcher(text);
+        List<String> str = new ArrayList<>();
+        while (matcher.find()) {
+            str.add(matcher.group());
+        }
+        return str;
+    }
+}
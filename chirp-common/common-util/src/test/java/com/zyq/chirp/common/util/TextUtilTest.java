@@ -0,0 +1,71 @@
+package com.zyq.chirp.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TextUtilTest {
+
+    @Test
+    public void scansEntitiesWithPositions() {
+        assertEquals(List.of("MENTION:3:7", "TAG:12:17", "URL:18:33"), scan("hi @bob see #java https://a.com/x"));
+        assertEquals(List.of(), scan(null));
+        assertEquals(List.of(), scan(""));
+    }
+
+    @Test
+    public void emailsAndWordsAreNotEntities() {
+        assertEquals(List.of(), TextUtil.findMentioned("mail a@b.com or bob@example.org"));
+        assertEquals(List.of(), TextUtil.findTags("issue#1 and C#"));
+        assertEquals(List.of(), TextUtil.findMentioned("@ alone, # alone"));
+    }
+
+    @Test
+    public void mentionsAndTagsAfterUnicodeAndPunctuation() {
+        String text = "你好@张三，(@bob) 「#话题」 😀@emoji😀 #end";
+        assertEquals(List.of("张三", "bob", "emoji"), TextUtil.findMentioned(text));
+        assertEquals(List.of("#话题", "#end"), TextUtil.findTags(text));
+    }
+
+    @Test
+    public void mentionStopsAtPunctuation() {
+        assertEquals(List.of("bob", "alice", "carol", "dave_1-x"),
+                TextUtil.findMentioned("@bob, @alice. @carol! @dave_1-x"));
+        //连续的符号只有最后一个作为前缀
+        assertEquals(List.of("bob"), TextUtil.findMentioned("@@bob"));
+        assertEquals(List.of("#tag"), TextUtil.findTags("##tag"));
+    }
+
+    @Test
+    public void urlBoundaries() {
+        assertEquals(List.of("URL:3:22"), scan("看这里https://a.com/p?q=1。然后"));
+        assertEquals(List.of("URL:5:20"), scan("(see https://a.com/x)."));
+        assertEquals(List.of("URL:0:45"), scan("https://en.wikipedia.org/wiki/Java_(language)."));
+        //链接中的#与@不是话题和用户
+        assertEquals(List.of("URL:0:24"), scan("http://a.com/#frag/@user"));
+        //紧跟在字母后的不是链接
+        assertEquals(List.of(), scan("xhttps://a.com"));
+    }
+
+    @Test
+    public void isMentionedMatchesWholeUsername() {
+        assertTrue(TextUtil.getIsMentioned("hi @bob!", "bob"));
+        assertFalse(TextUtil.getIsMentioned("hi @bobby", "bob"));
+        assertFalse(TextUtil.getIsMentioned("mail bob@a.com", "bob"));
+        assertFalse(TextUtil.getIsMentioned("hi @bob", null));
+    }
+
+    @Test
+    public void findTagsOfTexts() {
+        assertEquals(List.of("#a", "#b", "#c"), TextUtil.findTags(List.of("#a #b", "x #c")));
+    }
+
+    private static List<String> scan(String text) {
+        List<String> entities = new ArrayList<>();
+        TextUtil.scan(text, (type, start, end) -> entities.add(type + ":" + start + ":" + end));
+        return entities;
+    }
+}
@@ -0,0 +1,30 @@
+package com.zyq.chirp.chirpclient.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 推文状态变化或被删除时广播给每个实例，用于清除实例本地的缓存
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ChirperChangedDto {
+    /**
+     * 变化的推文
+     */
+    private List<Long> chirperIds;
+
+    /**
+     * 变化前的状态，为空时不校验
+     */
+    private Integer expect;
+
+    /**
+     * 变化后的状态，为空表示推文已被删除
+     */
+    private Integer status;
+}
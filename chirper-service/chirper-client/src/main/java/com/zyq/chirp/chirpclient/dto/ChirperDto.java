@@ -43,7 +43,15 @@ public class ChirperDto {
     private ChirperDto referenced;
     @Size(max = 4, message = "最多支持4个媒体文件")
     private List<MediaDto> mediaKeys;
+    /**
+     * 正文中的@用户、#话题与链接，发布时解析
+     */
+    private List<TextEntity> entities;
     private Integer viewCount;
+    /**
+     * 去重后的浏览人数，由HyperLogLog估算
+     */
+    private Integer uniqueViewCount;
     private Integer likeCount;
     private Integer forwardCount;
     private Integer quoteCount;
@@ -57,6 +65,10 @@ public class ChirperDto {
     private Boolean quotable = false;
     private Boolean likeable = false;
     private Integer status;
+    /**
+     * 热度排序时推文的热度，与推文id一起作为下一页的hotCursor与hotCursorId
+     */
+    private Double hotScore;
 
     public ChirperDto() {
         this.createTime = new Timestamp(System.currentTimeMillis());
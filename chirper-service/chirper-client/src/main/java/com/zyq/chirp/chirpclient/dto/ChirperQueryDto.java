@@ -21,6 +21,14 @@ public class ChirperQueryDto extends QueryDto {
     Boolean media;
     Long communityId;
     Long currentUserId;
+    /**
+     * 热度排序时上一页最后一条推文的热度，用于键集分页
+     */
+    Double hotCursor;
+    /**
+     * 热度排序时上一页最后一条推文的id，与hotCursor一起确定热度相同的推文的位置
+     */
+    Long hotCursorId;
 
     @Override
     public void withDefault() {
@@ -42,6 +50,8 @@ public class ChirperQueryDto extends QueryDto {
                 ", page=" + page +
                 ", pageSize=" + pageSize +
                 ", order='" + order + '\'' +
+                ", hotCursor=" + hotCursor +
+                ", hotCursorId=" + hotCursorId +
                 '}';
     }
 }
@@ -0,0 +1,27 @@
+package com.zyq.chirp.chirpclient.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 按游标分页的结果
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class CursorPageDto<T> {
+    private List<T> records;
+    /**
+     * 加载下一页时原样传回的游标，没有更多时为空
+     */
+    private String cursor;
+    /**
+     * 是否还有下一页
+     */
+    private Boolean hasMore;
+}
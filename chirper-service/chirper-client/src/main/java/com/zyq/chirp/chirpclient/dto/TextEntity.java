@@ -0,0 +1,38 @@
+package com.zyq.chirp.chirpclient.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 推文正文中的实体，发布时解析一次后随推文保存
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TextEntity {
+    /**
+     * mention、tag、url
+     */
+    private String type;
+    /**
+     * 去掉@、#前缀后的内容，链接为完整地址
+     */
+    private String value;
+    /**
+     * 在正文中的起始位置，包含前缀
+     */
+    private Integer start;
+    /**
+     * 在正文中的结束位置，不包含
+     */
+    private Integer end;
+    /**
+     * 被提及用户的id，发布时按用户名解析，用户不存在时为空，只有mention有值
+     */
+    private Long userId;
+
+    public TextEntity(String type, String value, Integer start, Integer end) {
+        this(type, value, start, end, null);
+    }
+}
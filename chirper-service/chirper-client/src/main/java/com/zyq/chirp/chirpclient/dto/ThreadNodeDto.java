@@ -0,0 +1,49 @@
+package com.zyq.chirp.chirpclient.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 对话回复树中的一个节点
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ThreadNodeDto {
+    private ChirperDto chirper;
+    /**
+     * 已展开的直接回复，按发布先后排序
+     */
+    private List<ThreadNodeDto> replies;
+    /**
+     * 继续展开该节点时传入的游标，即已返回的最后一条直接回复的id
+     */
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long cursor;
+    /**
+     * 是否还有未展开的回复
+     */
+    private Boolean hasMore;
+
+    /**
+     * 按先序展开树中的所有推文
+     */
+    @JsonIgnore
+    public List<ChirperDto> flatten() {
+        List<ChirperDto> chirperDtos = new ArrayList<>();
+        chirperDtos.add(chirper);
+        if (replies != null) {
+            replies.forEach(reply -> chirperDtos.addAll(reply.flatten()));
+        }
+        return chirperDtos;
+    }
+}
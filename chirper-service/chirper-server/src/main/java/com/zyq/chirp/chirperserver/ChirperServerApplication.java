@@ -19,13 +19,14 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 @ComponentScan({"com.zyq.chirp.chirperserver",
         "com.zyq.chirp.common.redis",
         "com.zyq.chirp.common.db",
-        "com.zyq.chirp.common.web"})
+        "com.zyq.chirp.common.web",
+        "com.zyq.chirp.common.mq"})
 @EnableConfigurationProperties
 @EnableCaching
 @EnableAsync
 @EnableScheduling
 @EnableAspectJAutoProxy
-@MapperScan("com.zyq.chirp.chirperserver.mapper")
+@MapperScan({"com.zyq.chirp.chirperserver.mapper", "com.zyq.chirp.common.mq.mapper"})
 @EnableFeignClients(basePackageClasses = {MediaClient.class, UserClient.class, CommunityClient.class})
 public class ChirperServerApplication {
     public static void main(String[] args) {
@@ -30,6 +30,13 @@ public @interface Statistic {
      */
     int delta() default 1;
 
+    /**
+     * 浏览者的ID，使用SpEL表达式
+     * 不为空时同时记录去重浏览人数
+     */
+    @Language("SpEL")
+    String viewer() default "";
+
     /**
      * 统计数据的缓存键类型
      * 可以同时指定多个统计类型
@@ -1,6 +1,7 @@
 package com.zyq.chirp.chirperserver.aspect;
 
 import com.zyq.chirp.chirperserver.domain.enums.CacheKey;
+import com.zyq.chirp.chirperserver.service.UniqueViewService;
 import com.zyq.chirp.common.util.SpElUtil;
 import jakarta.annotation.Resource;
 import org.aspectj.lang.JoinPoint;
@@ -29,6 +30,12 @@ public class StatisticAspect {
     @Resource
     RedisTemplate<String, Object> redisTemplate;
 
+    /**
+     * 去重浏览人数服务
+     */
+    @Resource
+    UniqueViewService uniqueViewService;
+
     /**
      * 定义切点
      * 匹配所有使用@Statistic注解的方法
@@ -59,6 +66,10 @@ public class StatisticAspect {
             String id = SpElUtil.generateKeyBySPEL(annotation.id(), joinPoint);
             // 增加统计值
             operations.increment(id, annotation.delta());
+            // 记录去重浏览人数
+            if (CacheKey.VIEW_COUNT_BOUND_KEY == cacheKey && !annotation.viewer().isEmpty()) {
+                uniqueViewService.record(id, SpElUtil.generateKeyBySPEL(annotation.viewer(), joinPoint));
+            }
         }
     }
 }
@@ -0,0 +1,46 @@
+package com.zyq.chirp.chirperserver.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.time.Duration;
+
+/**
+ * 推文主体缓存配置
+ * 本地Caffeine近端缓存 + Redis，两级缓存中存放的都是序列化后的字节
+ */
+@Configuration
+public class ChirperCacheConfig {
+    @Value("${default-config.body-cache.local-size}")
+    Long localSize;
+    @Value("${default-config.body-cache.local-expire}")
+    Long localExpire;
+
+    /**
+     * 值不做序列化处理的RedisTemplate，用于存取已序列化的推文主体
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> byteRedisTemplate(LettuceConnectionFactory lettuceConnectionFactory) {
+        RedisTemplate<String, byte[]> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(lettuceConnectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(RedisSerializer.byteArray());
+        redisTemplate.afterPropertiesSet();
+        return redisTemplate;
+    }
+
+    @Bean
+    public Cache<Long, byte[]> chirperBodyNearCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(localSize)
+                .expireAfterWrite(Duration.ofSeconds(localExpire))
+                .build();
+    }
+}
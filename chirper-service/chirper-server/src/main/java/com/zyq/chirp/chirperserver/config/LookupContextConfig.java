@@ -0,0 +1,38 @@
+package com.zyq.chirp.chirperserver.config;
+
+import com.zyq.chirp.chirperserver.context.LookupContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * 为每个请求绑定远程查询上下文，请求结束时输出省去的远程调用次数
+ */
+@Configuration
+@Slf4j
+public class LookupContextConfig implements WebMvcConfigurer {
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                LookupContext.bind();
+                return true;
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+                LookupContext context = LookupContext.current();
+                if (context.getAvoidedKeys() > 0) {
+                    log.debug("请求{}远程调用{}次，省去{}次调用、{}个id的重复查询", request.getRequestURI(),
+                            context.getRemoteCalls(), context.getAvoidedCalls(), context.getAvoidedKeys());
+                }
+                LookupContext.clear();
+            }
+        });
+    }
+}
@@ -0,0 +1,152 @@
+package com.zyq.chirp.chirperserver.context;
+
+import com.zyq.chirp.common.util.StringUtil;
+import com.zyq.chirp.communityclient.dto.CommunityDto;
+import com.zyq.chirp.mediaclient.dto.MediaDto;
+import com.zyq.chirp.userclient.dto.UserDto;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 请求级别的远程查询上下文
+ * 在一次HTTP请求内缓存用户、媒体、社区的查询结果，同一个id在一次请求中最多远程查询一次
+ * 使用普通的ThreadLocal保存，不会被请求中创建的线程池线程等长期存活的线程继承；
+ * 需要在虚拟线程中查询时，在请求线程中调用current()取得上下文后显式传入
+ * 非请求线程（如消息消费）中获取到的是一次性的上下文，不做缓存
+ */
+public class LookupContext {
+    private static final ThreadLocal<LookupContext> CONTEXT = new ThreadLocal<>();
+    private final Memo<Long, UserDto> users = new Memo<>();
+    private final Memo<Long, List<MediaDto>> medias = new Memo<>();
+    private final Memo<String, CommunityDto> communities = new Memo<>();
+    /**
+     * 实际发起的远程调用次数
+     */
+    private final AtomicInteger remoteCalls = new AtomicInteger();
+    /**
+     * 完全由缓存满足而省去的远程调用次数
+     */
+    private final AtomicInteger avoidedCalls = new AtomicInteger();
+    /**
+     * 由缓存满足而无需远程查询的id数
+     */
+    private final AtomicInteger avoidedKeys = new AtomicInteger();
+
+    public static LookupContext current() {
+        LookupContext context = CONTEXT.get();
+        return context != null ? context : new LookupContext();
+    }
+
+    public static LookupContext bind() {
+        LookupContext context = new LookupContext();
+        CONTEXT.set(context);
+        return context;
+    }
+
+    public static void clear() {
+        CONTEXT.remove();
+    }
+
+    /**
+     * 获取用户基本信息
+     *
+     * @param userIds 用户id
+     * @param loader  远程查询
+     * @return 用户id到用户信息的映射
+     */
+    public Map<Long, UserDto> getBasicInfo(Collection<Long> userIds, Function<Collection<Long>, List<UserDto>> loader) {
+        return this.lookup(users, userIds, ids -> toMap(loader.apply(ids), UserDto::getId));
+    }
+
+    /**
+     * 获取推文的媒体信息
+     *
+     * @param mediaKeys 推文id到媒体id的映射
+     * @param loader    远程查询
+     * @return 推文id到媒体信息的映射
+     */
+    public Map<Long, List<MediaDto>> getMedia(Map<Long, List<Integer>> mediaKeys,
+                                              Function<Map<Long, List<Integer>>, Map<Long, List<MediaDto>>> loader) {
+        return this.lookup(medias, mediaKeys.keySet(), ids -> {
+            Map<Long, List<Integer>> missing = new HashMap<>();
+            ids.forEach(id -> missing.put(id, mediaKeys.get(id)));
+            return loader.apply(missing);
+        });
+    }
+
+    /**
+     * 获取用户在社区中的信息
+     *
+     * @param entries 社区id与用户id
+     * @param loader  远程查询
+     * @return 社区id:用户id到社区信息的映射
+     */
+    public Map<String, CommunityDto> getCommunity(List<Map.Entry<Long, Long>> entries,
+                                                  Function<List<Map.Entry<Long, Long>>, Map<String, CommunityDto>> loader) {
+        Map<String, Map.Entry<Long, Long>> entryMap = entries.stream()
+                .collect(Collectors.toMap(entry -> StringUtil.combineKey(entry.getKey(), entry.getValue()),
+                        Function.identity(), (k1, k2) -> k1));
+        return this.lookup(communities, entryMap.keySet(),
+                keys -> loader.apply(keys.stream().map(entryMap::get).toList()));
+    }
+
+    public int getRemoteCalls() {
+        return remoteCalls.get();
+    }
+
+    public int getAvoidedCalls() {
+        return avoidedCalls.get();
+    }
+
+    public int getAvoidedKeys() {
+        return avoidedKeys.get();
+    }
+
+    private <K, V> Map<K, V> lookup(Memo<K, V> memo, Collection<K> keys, Function<List<K>, Map<K, V>> loader) {
+        List<K> distinct = keys.stream().filter(Objects::nonNull).distinct().toList();
+        List<K> missing = distinct.stream().filter(key -> !memo.loaded.contains(key)).toList();
+        if (missing.isEmpty()) {
+            if (!distinct.isEmpty()) {
+                avoidedCalls.incrementAndGet();
+            }
+        } else {
+            remoteCalls.incrementAndGet();
+            Map<K, V> loaded = loader.apply(missing);
+            //远程调用失败时不做记录，下次仍会重新查询
+            if (loaded != null) {
+                loaded.forEach((key, value) -> {
+                    if (key != null && value != null) {
+                        memo.values.put(key, value);
+                    }
+                });
+                //查询不到的id同样记录，避免重复查询
+                memo.loaded.addAll(missing);
+            }
+        }
+        avoidedKeys.addAndGet(distinct.size() - missing.size());
+        Map<K, V> result = new HashMap<>();
+        distinct.forEach(key -> {
+            V value = memo.values.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        });
+        return result;
+    }
+
+    private static <K> Map<K, UserDto> toMap(List<UserDto> userDtos, Function<UserDto, K> keyMapper) {
+        if (userDtos == null) {
+            return null;
+        }
+        return userDtos.stream().collect(Collectors.toMap(keyMapper, Function.identity(), (k1, k2) -> k1));
+    }
+
+    private static class Memo<K, V> {
+        final Map<K, V> values = new ConcurrentHashMap<>();
+        final Set<K> loaded = ConcurrentHashMap.newKeySet();
+    }
+}
@@ -4,6 +4,8 @@ import cn.dev33.satoken.stp.StpUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.zyq.chirp.chirpclient.dto.ChirperDto;
 import com.zyq.chirp.chirpclient.dto.ChirperQueryDto;
+import com.zyq.chirp.chirpclient.dto.CursorPageDto;
+import com.zyq.chirp.chirpclient.dto.ThreadNodeDto;
 import com.zyq.chirp.chirperserver.domain.enums.ChirperType;
 import com.zyq.chirp.chirperserver.service.ChirperService;
 import jakarta.annotation.Nullable;
@@ -90,14 +92,25 @@ public class ChirperController {
         }
         return ResponseEntity.ok(chirperDtos);
     }
-    @GetMapping("/like/{id}/{page}")
-    public ResponseEntity<List<ChirperDto>> getLikeRecord(@PathVariable("id") Long id,
-                                                          @PathVariable("page") Integer page) {
-        List<ChirperDto> chirperDtos = chirperService.getLikeRecordByUserId(id, page);
+
+    @GetMapping("/thread/{id}")
+    public ResponseEntity<ThreadNodeDto> getThread(@PathVariable("id") Long id,
+                                                   @RequestParam(value = "cursor", required = false) Long cursor) {
+        ThreadNodeDto thread = chirperService.getThread(id, cursor);
         if (StpUtil.isLogin()) {
-            chirperService.getInteractionInfo(chirperDtos, StpUtil.getLoginIdAsLong());
+            chirperService.getInteractionInfo(thread.flatten(), StpUtil.getLoginIdAsLong());
         }
-        return ResponseEntity.ok(chirperDtos);
+        return ResponseEntity.ok(thread);
+    }
+
+    @GetMapping("/like/{id}")
+    public ResponseEntity<CursorPageDto<ChirperDto>> getLikeTimeline(@PathVariable("id") Long id,
+                                                                     @RequestParam(value = "cursor", required = false) String cursor) {
+        CursorPageDto<ChirperDto> timeline = chirperService.getLikeTimeline(id, cursor);
+        if (StpUtil.isLogin()) {
+            chirperService.getInteractionInfo(timeline.getRecords(), StpUtil.getLoginIdAsLong());
+        }
+        return ResponseEntity.ok(timeline);
     }
 
     @PostMapping("/basic_info")
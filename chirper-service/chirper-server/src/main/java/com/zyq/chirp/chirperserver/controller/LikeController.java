@@ -1,14 +1,13 @@
 package com.zyq.chirp.chirperserver.controller;
 
 import cn.dev33.satoken.stp.StpUtil;
+import com.zyq.chirp.chirpclient.dto.CursorPageDto;
 import com.zyq.chirp.chirpclient.dto.LikeDto;
 import com.zyq.chirp.chirperserver.service.LikeService;
+import com.zyq.chirp.userclient.dto.UserDto;
 import jakarta.annotation.Resource;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 
 /**
  * 点赞相关接口控制器
@@ -47,4 +46,21 @@ public class LikeController {
         likeService.cancelLike(likeDto);
         return ResponseEntity.ok(null);
     }
+
+    /**
+     * 点赞推文的用户
+     * GET /like/users/{chirperId}
+     *
+     * @param chirperId      推文ID
+     * @param followeesFirst 是否优先展示当前用户关注的人
+     * @param cursor         上一页返回的游标
+     * @return 点赞用户及下一页的游标
+     */
+    @GetMapping("/users/{chirperId}")
+    public ResponseEntity<CursorPageDto<UserDto>> likedBy(@PathVariable("chirperId") Long chirperId,
+                                                          @RequestParam(value = "followeesFirst", defaultValue = "false") Boolean followeesFirst,
+                                                          @RequestParam(value = "cursor", required = false) String cursor) {
+        Long viewerId = StpUtil.isLogin() ? StpUtil.getLoginIdAsLong() : null;
+        return ResponseEntity.ok(likeService.getLikedBy(chirperId, viewerId, followeesFirst, cursor));
+    }
 }
@@ -36,22 +36,178 @@ public enum CacheKey {
     FORWARD_INFO_BOUND_KEY("chirper:forward"),
 
     /**
-     * 话题趋势缓存键
-     * 记录热门话题的排名信息
+     * 话题趋势快照缓存键
+     * 记录按时间衰减后的话题热度，与发布数快照使用相同的hash tag以便在集群中原子替换
      */
-    TEND_TAG_BOUND_KEY("trend:tag"),
+    TEND_TAG_BOUND_KEY("{trend}:tag"),
 
     /**
-     * 推文趋势缓存键
-     * 记录热门推文的排名信息
+     * 话题发布数快照缓存键
+     * 记录统计窗口内各话题的发布数
      */
-    TEND_POST_BOUND_KEY("trend:post"),
+    TEND_POST_BOUND_KEY("{trend}:post"),
+
+    /**
+     * 话题计数桶缓存键
+     * 每分钟一个有序集合，记录该分钟内各话题的发布数，窗口结束后过期
+     */
+    TREND_BUCKET_BOUND_KEY("trend:bucket"),
+
+    /**
+     * 话题趋势快照租约键
+     * 保证同一周期只有一个实例生成快照
+     */
+    TREND_LEASE_KEY("trend:lease"),
 
     /**
      * 延迟发布推文缓存键
-     * 用于存储待发布的定时推文
+     * 按推文id分片的有序集合，成员为待发布的推文id，分数为发布时间(毫秒)
+     */
+    DELAY_POST_KEY("chirper:delay"),
+
+    /**
+     * 延迟发布分片租约键
+     * 每个分片一个，持有租约的实例负责装载并激活该分片中到期的推文
+     */
+    DELAY_LEASE_KEY("chirper:delay:lease"),
+
+    /**
+     * 延迟发布恢复租约键
+     * 保证启动时只有一个实例从数据库登记待发布的推文
+     */
+    DELAY_RECOVER_LEASE_KEY("chirper:delay:recover"),
+
+    /**
+     * 延迟发布扫描租约键
+     * 保证同一时间只有一个实例扫描数据库中超过发布时间仍未激活的推文
+     */
+    DELAY_SWEEP_LEASE_KEY("chirper:delay:sweep"),
+
+    /**
+     * 推文主体缓存键
+     * 存储序列化后的推文不可变内容（文本、媒体、作者、类型等）
+     */
+    CHIRPER_BODY_BOUND_KEY("chirper:body"),
+
+    /**
+     * 推文计数缓存键
+     * 以hash存储单条推文的点赞、转发、引用、回复、浏览数，读取时覆盖到推文主体上
+     */
+    CHIRPER_COUNTER_BOUND_KEY("chirper:counter"),
+
+    /**
+     * 推文分页缓存键
+     * 存储与查看者无关的分页推文id，查看者相关的状态在读取后单独计算
+     */
+    CHIRPER_PAGE_BOUND_KEY("chirper:page"),
+
+    /**
+     * 作者分页版本缓存键
+     * 作者发布后递增，过期时间与分页缓存相同，期间该作者读取分页时使用带版本的键，能看到自己刚发布的推文
+     */
+    CHIRPER_PAGE_AUTHOR_BOUND_KEY("chirper:page:author"),
+
+    /**
+     * 推文热度排行缓存键
+     * 按全站、作者、社区分别存储推文热度的有序集合
+     */
+    HOT_RANK_BOUND_KEY("chirper:hot"),
+
+    /**
+     * 热度排行装载完成标记键
+     * 存在时表示排行已从数据库装载，不存在时热度分页由数据库排序
+     */
+    HOT_RANK_READY_KEY("chirper:hot:ready"),
+
+    /**
+     * 作者与社区排行重建完成标记键
+     * 与排行同时续期，不存在时排行中只有重建后写入的推文，读取前先从数据库重建
+     */
+    HOT_RANK_LOADED_BOUND_KEY("chirper:hot:loaded"),
+
+    /**
+     * 热度排行装载租约键
+     * 保证同一时间只有一个实例从数据库装载排行
+     */
+    HOT_RANK_WARM_LEASE_KEY("chirper:hot:warm:lease"),
+
+    /**
+     * 计数交接区缓存键
+     * 每个实例一个hash，记录已确认消息但尚未写入数据库的计数变化
+     */
+    COUNTER_PENDING_BOUND_KEY("counter:pending"),
+
+    /**
+     * 计数交接区实例集合键
+     * 记录所有存在交接区的实例，用于查找已退出实例遗留的交接区
+     */
+    COUNTER_INSTANCES_KEY("counter:instances"),
+
+    /**
+     * 计数交接区归属键
+     * 每个实例一个，存活期间定时续期，过期后交接区由其他实例接管
+     */
+    COUNTER_OWNER_BOUND_KEY("counter:owner"),
+
+    /**
+     * 计数消息偏移量缓存键
+     * hash，记录每个计数类型每个分区已记入交接区的最大偏移量，重复投递的消息不再记入
+     */
+    COUNTER_OFFSET_KEY("counter:offset"),
+
+    /**
+     * 浏览数写入租约键
+     * 保证同一时间只有一个实例在写入浏览数
+     */
+    VIEW_FLUSH_LEASE_KEY("count:view:lease"),
+
+    /**
+     * 去重浏览人数缓存键
+     * 每条推文一个HyperLogLog总计数，以及按天划分的计数桶
+     */
+    UNIQUE_VIEW_BOUND_KEY("count:uv"),
+
+    /**
+     * 用户互动位图缓存键
+     * 每个用户的点赞、转发、引用各一个序列化后的压缩位图，记录互动过的推文id
+     */
+    INTERACTION_BOUND_KEY("chirper:interaction"),
+
+    /**
+     * 用户最近点赞缓存键
+     * 记录活跃用户最近的点赞时间与推文id，用于点赞时间线的前几页
+     */
+    LIKE_HEAD_BOUND_KEY("chirper:like:head"),
+
+    /**
+     * 热门推文计数缓存键
+     * 有序集合，记录计数写入分片的热门推文，分数为热门状态的过期时间(毫秒)
+     */
+    HOT_COUNTER_BOUND_KEY("counter:hot"),
+
+    /**
+     * 计数分片合并租约键
+     * 保证同一时间只有一个实例在合并计数分片
+     */
+    SHARD_FOLD_LEASE_KEY("counter:shard:lease"),
+
+    /**
+     * 计数校对进度缓存键
+     * hash，记录校对的游标、下一轮开始时间以及本轮的偏差统计
+     */
+    COUNTER_RECONCILE_BOUND_KEY("counter:reconcile"),
+
+    /**
+     * 计数校对租约键
+     * 保证同一时间只有一个实例在校对计数
+     */
+    COUNTER_RECONCILE_LEASE_KEY("counter:reconcile:lease"),
+
+    /**
+     * 发布后处理进度缓存键
+     * 每条推文一个hash，记录已完成的处理阶段，重发或重复投递时跳过
      */
-    DELAY_POST_KEY("chirper:delay");
+    POST_PUBLISH_BOUND_KEY("chirper:post-publish");
 
     /**
      * 缓存键的实际值
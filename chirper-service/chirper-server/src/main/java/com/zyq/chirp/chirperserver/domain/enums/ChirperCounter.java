@@ -0,0 +1,55 @@
+package com.zyq.chirp.chirperserver.domain.enums;
+
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirperserver.domain.pojo.Chirper;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 推文计数枚举
+ * 推文发布后只有这些计数会变化，其余内容均不可变
+ */
+public enum ChirperCounter {
+    VIEW("view", "view_count", Chirper::getViewCount, ChirperDto::setViewCount),
+    LIKE("like", "like_count", Chirper::getLikeCount, ChirperDto::setLikeCount),
+    FORWARD("forward", "forward_count", Chirper::getForwardCount, ChirperDto::setForwardCount),
+    QUOTE("quote", "quote_count", Chirper::getQuoteCount, ChirperDto::setQuoteCount),
+    REPLY("reply", "reply_count", Chirper::getReplyCount, ChirperDto::setReplyCount),
+    UNIQUE_VIEW("uniqueView", "unique_view_count", Chirper::getUniqueViewCount, ChirperDto::setUniqueViewCount);
+
+    /**
+     * 计数缓存hash中的字段名
+     */
+    private final String field;
+    /**
+     * tb_chirper中对应的列名
+     */
+    private final String column;
+    private final Function<Chirper, Integer> getter;
+    private final BiConsumer<ChirperDto, Integer> setter;
+
+    ChirperCounter(String field, String column, Function<Chirper, Integer> getter, BiConsumer<ChirperDto, Integer> setter) {
+        this.field = field;
+        this.column = column;
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public Integer get(Chirper chirper) {
+        Integer value = getter.apply(chirper);
+        return value != null ? value : 0;
+    }
+
+    public void set(ChirperDto chirperDto, Integer value) {
+        setter.accept(chirperDto, value != null ? value : 0);
+    }
+}
@@ -0,0 +1,35 @@
+package com.zyq.chirp.chirperserver.domain.enums;
+
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+
+import java.util.function.BiConsumer;
+
+/**
+ * 用户与推文的互动类型
+ * 每种类型为每个用户维护一个推文id位图，用于标记查看者是否点赞、转发、引用过推文
+ */
+public enum InteractionType {
+    LIKE(ChirperDto::setIsLike),
+    FORWARD(ChirperDto::setIsForward),
+    QUOTE(ChirperDto::setIsQuote);
+
+    private final BiConsumer<ChirperDto, Boolean> setter;
+
+    InteractionType(BiConsumer<ChirperDto, Boolean> setter) {
+        this.setter = setter;
+    }
+
+    public void set(ChirperDto chirperDto, boolean value) {
+        setter.accept(chirperDto, value);
+    }
+
+    public static InteractionType find(String chirperType) {
+        if (ChirperType.FORWARD.name().equals(chirperType)) {
+            return FORWARD;
+        }
+        if (ChirperType.QUOTE.name().equals(chirperType)) {
+            return QUOTE;
+        }
+        return null;
+    }
+}
@@ -5,7 +5,9 @@ import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import com.baomidou.mybatisplus.extension.handlers.JacksonTypeHandler;
+import com.zyq.chirp.chirpclient.dto.TextEntity;
 import com.zyq.chirp.chirperserver.domain.enums.ReplyRangeEnums;
+import com.zyq.chirp.chirperserver.handler.TextEntityTypeHandler;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -35,7 +37,10 @@ public class Chirper {
     private Long referencedChirperId;
     @TableField(value = "media_keys", typeHandler = JacksonTypeHandler.class)
     private List<Integer> mediaKeys;
+    @TableField(value = "entities", typeHandler = TextEntityTypeHandler.class)
+    private List<TextEntity> entities;
     private Integer viewCount = 0;
+    private Integer uniqueViewCount = 0;
     private Integer likeCount = 0;
     private Integer forwardCount = 0;
     private Integer quoteCount = 0;
@@ -0,0 +1,23 @@
+package com.zyq.chirp.chirperserver.domain.pojo;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.sql.Timestamp;
+
+/**
+ * 已写入数据库的计数批次，与计数更新在同一事务中插入，保证同一批次只写入一次
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@TableName("tb_counter_flush")
+public class CounterFlush {
+    @TableId(type = IdType.INPUT)
+    Long batchId;
+    Timestamp createTime;
+}
@@ -0,0 +1,23 @@
+package com.zyq.chirp.chirperserver.domain.pojo;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 热门推文的计数分片，计数变化分散写入多行，定时合并回tb_chirper
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@TableName("tb_chirper_counter_shard")
+public class CounterShard {
+    Long chirperId;
+    /**
+     * 计数类型，ChirperCounter的名称
+     */
+    String counter;
+    Integer shard;
+    Long delta;
+}
@@ -0,0 +1,40 @@
+package com.zyq.chirp.chirperserver.endpoint;
+
+import com.zyq.chirp.chirperserver.service.ChirperSearchService;
+import com.zyq.chirp.common.util.StringUtil;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * 推文索引管理端点
+ * POST /actuator/chirpersearch {"token": "..."} 从数据库重建本实例的全文索引，
+ * 令牌须与配置的管理令牌一致，未配置令牌时拒绝所有重建请求
+ */
+@Component
+@Endpoint(id = "chirpersearch")
+public class ChirperSearchEndpoint {
+    @Resource
+    ChirperSearchService chirperSearchService;
+    @Value("${default-config.search.admin-token}")
+    String adminToken;
+
+    @WriteOperation
+    public Map<String, Object> rebuild(String token) {
+        if (StringUtil.isBlank(adminToken) || token == null
+                || !MessageDigest.isEqual(adminToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            return Map.of("success", false, "message", "无权重建索引");
+        }
+        long count = chirperSearchService.rebuild();
+        if (count < 0) {
+            return Map.of("success", false, "message", "索引正在重建中");
+        }
+        return Map.of("success", true, "count", count);
+    }
+}
@@ -0,0 +1,25 @@
+package com.zyq.chirp.chirperserver.endpoint;
+
+import com.zyq.chirp.chirperserver.service.CounterReconcileService;
+import jakarta.annotation.Resource;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 计数校对端点
+ * GET /actuator/counterreconcile 查看校对进度与本轮各计数的偏差统计
+ */
+@Component
+@Endpoint(id = "counterreconcile")
+public class CounterReconcileEndpoint {
+    @Resource
+    CounterReconcileService counterReconcileService;
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        return counterReconcileService.getStats();
+    }
+}
@@ -0,0 +1,38 @@
+package com.zyq.chirp.chirperserver.handler;
+
+import com.baomidou.mybatisplus.extension.handlers.AbstractJsonTypeHandler;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zyq.chirp.chirpclient.dto.TextEntity;
+import com.zyq.chirp.common.domain.exception.ChirpException;
+import com.zyq.chirp.common.domain.model.Code;
+
+import java.util.List;
+
+/**
+ * 推文实体列与List<TextEntity>之间的转换
+ * JacksonTypeHandler只能按字段的原始类型反序列化，列表元素会变成Map，因此单独处理
+ */
+public class TextEntityTypeHandler extends AbstractJsonTypeHandler<List<TextEntity>> {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Override
+    protected List<TextEntity> parse(String json) {
+        try {
+            return OBJECT_MAPPER.readValue(json, new TypeReference<List<TextEntity>>() {
+            });
+        } catch (JsonProcessingException e) {
+            throw new ChirpException(Code.ERR_SYSTEM, "推文实体解析失败", e);
+        }
+    }
+
+    @Override
+    protected String toJson(List<TextEntity> obj) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(obj);
+        } catch (JsonProcessingException e) {
+            throw new ChirpException(Code.ERR_SYSTEM, "推文实体序列化失败", e);
+        }
+    }
+}
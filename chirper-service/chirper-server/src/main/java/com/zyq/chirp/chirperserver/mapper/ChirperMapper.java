@@ -7,7 +7,9 @@ import com.zyq.chirp.chirperserver.domain.pojo.Chirper;
 import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public interface ChirperMapper extends BaseMapper<Chirper> {
@@ -25,4 +27,78 @@ public interface ChirperMapper extends BaseMapper<Chirper> {
     /*    int addForwardBatch(List<Chirper> chirpers);*/
     int addQuote(Chirper chirper);
 
+    /**
+     * 多行插入推文
+     * @param chirpers 推文，所有字段由调用方填写
+     */
+    int insertBatch(@Param("chirpers") List<Chirper> chirpers);
+
+    /**
+     * 批量修改同一计数列
+     * @param column 计数列名
+     * @param deltas 推文id到变化值的映射
+     */
+    int incrementCounters(@Param("column") String column, @Param("deltas") Map<Long, Long> deltas);
+
+    /**
+     * 批量更新去重浏览人数，只增不减
+     * @param counts 推文id到去重浏览人数的映射
+     */
+    int updateUniqueViewCounts(@Param("counts") Map<Long, Long> counts);
+
+    /**
+     * 统计推文的实际点赞数
+     * @param ids 推文id
+     * @return id与likeCount，没有点赞的推文不返回
+     */
+    List<Chirper> tallyLikes(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 统计推文的实际转发数与引用数
+     * @param ids 推文id
+     * @return id、forwardCount与quoteCount，没有被转发或引用的推文不返回
+     */
+    List<Chirper> tallyReferences(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 统计推文的实际回复数
+     * @param ids 推文id
+     * @return id与replyCount，没有回复的推文不返回
+     */
+    List<Chirper> tallyReplies(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 按热度降序读取已激活的非转发推文，热度相同时按id降序
+     * @param authorId 作者，为null时不限
+     * @param communityId 社区，为null时不限
+     * @param cursor 上一页最后一条推文的热度，为null时从头读取
+     * @param cursorId 上一页最后一条推文的id
+     * @param epsilon 比较热度时允许的误差
+     * @return id、发布时间与各项互动计数
+     */
+    List<Chirper> selectHotPage(@Param("authorId") Long authorId,
+                                @Param("communityId") Long communityId,
+                                @Param("likeWeight") Double likeWeight,
+                                @Param("replyWeight") Double replyWeight,
+                                @Param("forwardWeight") Double forwardWeight,
+                                @Param("quoteWeight") Double quoteWeight,
+                                @Param("epoch") Long epoch,
+                                @Param("halfLife") Long halfLife,
+                                @Param("cursor") Double cursor,
+                                @Param("cursorId") Long cursorId,
+                                @Param("epsilon") Double epsilon,
+                                @Param("offset") Long offset,
+                                @Param("limit") Integer limit);
+
+    /**
+     * 读取每条推文最早的若干条已激活的直接回复，每条推文单独按索引取出，互不挤占
+     * @param parentIds 被回复的推文
+     * @param after 只读取id大于该值的回复
+     * @param limit 每条推文读取的回复数
+     * @return 按id升序的回复id与被回复的推文id
+     */
+    List<Chirper> selectReplies(@Param("parentIds") Collection<Long> parentIds,
+                                @Param("after") Long after,
+                                @Param("limit") Integer limit);
+
 }
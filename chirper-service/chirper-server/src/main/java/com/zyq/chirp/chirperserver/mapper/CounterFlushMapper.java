@@ -0,0 +1,9 @@
+package com.zyq.chirp.chirperserver.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.zyq.chirp.chirperserver.domain.pojo.CounterFlush;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CounterFlushMapper extends BaseMapper<CounterFlush> {
+}
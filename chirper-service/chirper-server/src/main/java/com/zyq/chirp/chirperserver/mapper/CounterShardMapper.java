@@ -0,0 +1,37 @@
+package com.zyq.chirp.chirperserver.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.zyq.chirp.chirperserver.domain.pojo.CounterShard;
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CounterShardMapper extends BaseMapper<CounterShard> {
+    /**
+     * 累加到各自的分片行，分片行不存在时插入
+     */
+    int incrementShards(@Param("shards") List<CounterShard> shards);
+
+    /**
+     * 按推文id顺序查询存在未合并变化的推文
+     */
+    List<Long> selectUnfoldedIds(@Param("after") long after, @Param("limit") int limit);
+
+    /**
+     * 查询并锁定推文尚未合并的分片行
+     */
+    List<CounterShard> selectUnfoldedForUpdate(@Param("chirperIds") Collection<Long> chirperIds);
+
+    /**
+     * 按推文与计数类型汇总尚未合并的变化
+     */
+    List<CounterShard> sumUnfolded(@Param("chirperIds") Collection<Long> chirperIds);
+
+    /**
+     * 清零已合并的分片行，只清零读取过的行，合并期间新插入的分片不受影响
+     */
+    int resetShards(@Param("shards") List<CounterShard> shards);
+}
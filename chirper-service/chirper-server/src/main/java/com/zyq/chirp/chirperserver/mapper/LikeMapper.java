@@ -14,5 +14,7 @@ public interface LikeMapper extends BaseMapper<Like> {
 
     int deleteList(List<Like> likes);
 
+    List<Like> selectExisting(List<Like> likes);
+
     int updateChirperLikeCount(@Param("chirpreId") long chirperId, @Param("delta") int delta);
 }
@@ -0,0 +1,9 @@
+package com.zyq.chirp.chirperserver.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.zyq.chirp.chirperserver.domain.pojo.ViewFlush;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ViewFlushMapper extends BaseMapper<ViewFlush> {
+}
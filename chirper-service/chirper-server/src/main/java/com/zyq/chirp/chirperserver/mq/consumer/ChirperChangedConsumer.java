@@ -0,0 +1,61 @@
+package com.zyq.chirp.chirperserver.mq.consumer;
+
+import com.zyq.chirp.chirpclient.dto.ChirperChangedDto;
+import com.zyq.chirp.chirperserver.service.ChirperCacheService;
+import com.zyq.chirp.chirperserver.service.ChirperMetaService;
+import com.zyq.chirp.chirperserver.service.ChirperSearchService;
+import com.zyq.chirp.common.mq.model.Message;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 推文变化消费者
+ * 清除本地近端缓存中状态已变化或已删除的推文，并同步本地元数据索引与全文索引，每个实例使用独立的消费组
+ */
+@Slf4j
+@Component
+public class ChirperChangedConsumer {
+    @Resource
+    ChirperCacheService chirperCacheService;
+    @Resource
+    ChirperMetaService chirperMetaService;
+    @Resource
+    ChirperSearchService chirperSearchService;
+    @Value("${mq.topic.chirper.changed}")
+    String CHANGED_TOPIC;
+
+    @KafkaListener(topics = "${mq.topic.chirper.changed}",
+            groupId = "${mq.consumer.group.changed}",
+            batch = "true")
+    public void changedConsumer(@Payload List<Message<ChirperChangedDto>> messages, Acknowledgment ack) {
+        log.info("消费到主题:{}", CHANGED_TOPIC);
+        List<ChirperChangedDto> changes = messages.stream()
+                .map(Message::getBody)
+                .filter(Objects::nonNull)
+                .toList();
+        List<Long> chirperIds = changes.stream()
+                .flatMap(change -> change.getChirperIds().stream())
+                .distinct()
+                .toList();
+        chirperCacheService.evictLocal(chirperIds);
+        changes.forEach(change -> {
+            if (change.getStatus() == null) {
+                chirperMetaService.remove(change.getChirperIds());
+            } else {
+                chirperMetaService.updateStatus(change.getChirperIds(), change.getExpect(), change.getStatus());
+            }
+        });
+        //近端缓存已清除，按最新状态刷新本地全文索引
+        chirperSearchService.refresh(chirperIds);
+        ack.acknowledge();
+        log.info("主题:#{}偏移量提交", CHANGED_TOPIC);
+    }
+}
@@ -0,0 +1,55 @@
+package com.zyq.chirp.chirperserver.mq.consumer;
+
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirperserver.service.ChirperService;
+import com.zyq.chirp.common.mq.model.Message;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 延时发布登记消息消费者
+ * 推文与登记消息在同一个事务中写入，登记失败时重发，超过重试次数的推文由定时扫描激活
+ */
+@Slf4j
+@Component
+public class DelayScheduleConsumer {
+    @Resource
+    ChirperService chirperService;
+    @Resource
+    KafkaTemplate<String, Object> kafkaTemplate;
+    @Value("${mq.topic.chirper.delay}")
+    String DELAY_TOPIC;
+    @Value("${default-config.post-publish.max-retry}")
+    Integer maxRetryTimes;
+
+    @KafkaListener(topics = "${mq.topic.chirper.delay}",
+            groupId = "${mq.consumer.group.delay}",
+            batch = "true")
+    public void delayConsumer(@Payload List<Message<ChirperDto>> messages, Acknowledgment ack) {
+        log.info("消费到主题:{}", DELAY_TOPIC);
+        messages.stream()
+                .filter(message -> message.getBody() != null)
+                .forEach(message -> {
+                    try {
+                        chirperService.postDelay(message.getBody());
+                    } catch (Exception e) {
+                        log.error("登记延时发布推文失败，推文:{}，错误:", message.getBody().getId(), e);
+                        // 失败重试
+                        if (message.getRetryTimes() < maxRetryTimes) {
+                            message.setRetryTimes(message.getRetryTimes() + 1);
+                            kafkaTemplate.send(DELAY_TOPIC, message.getBody().getId().toString(), message);
+                        }
+                    }
+                });
+        ack.acknowledge();
+        log.info("主题:#{}偏移量提交", DELAY_TOPIC);
+    }
+}
@@ -6,7 +6,9 @@ import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
@@ -42,9 +44,11 @@ public class ForwardConsumer {
     @KafkaListener(topics = "${mq.topic.chirper.forward.count}",
             groupId = "${mq.consumer.group.forward}",
             batch = "true", concurrency = "4")
-    public void forwardCountConsumer(@Payload List<Action<Long, Long>> actions, Acknowledgment ack) {
+    public void forwardCountConsumer(@Payload List<Action<Long, Long>> actions,
+                                     @Header(KafkaHeaders.RECEIVED_PARTITION) List<Integer> partitions,
+                                     @Header(KafkaHeaders.OFFSET) List<Long> offsets, Acknowledgment ack) {
         log.info("消费到主题:{}", FORWARD_INCREMENT_COUNT_TOPIC);
-        chirperService.modifyForwardCount(actions);
+        chirperService.modifyForwardCount(actions, partitions, offsets);
         ack.acknowledge();
         log.info("主题:#{}偏移量提交", FORWARD_INCREMENT_COUNT_TOPIC);
     }
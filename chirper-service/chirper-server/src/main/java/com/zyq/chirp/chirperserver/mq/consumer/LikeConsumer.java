@@ -7,10 +7,13 @@ import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -31,7 +34,11 @@ public class LikeConsumer {
     public void likeRecordConsumer(@Payload List<Action<Long, Long>> actions, Acknowledgment ack) {
         try {
             log.info("消费到主题:{}", LIKE_RECORD_TOPIC);
-            Map<String, List<Action<Long, Long>>> collect = actions.stream().collect(Collectors.groupingBy(Action::getOperation));
+            //同一用户对同一推文的消息在同一分区内有序，按消费顺序只保留最后一次操作，反复点赞取消只落库最终状态
+            Map<String, Action<Long, Long>> finalActions = new LinkedHashMap<>();
+            actions.forEach(action -> finalActions.put(STR."\{action.getOperator()}:\{action.getTarget()}", action));
+            Map<String, List<Action<Long, Long>>> collect = finalActions.values().stream().collect(Collectors.groupingBy(Action::getOperation));
+            //两类操作涉及的用户与推文互不重叠，执行顺序不影响结果
             collect.forEach((operation, actionList) -> {
                 if (DefaultOperation.INSET.getOperation().equals(operation)) {
                     likeService.saveLike(actionList);
@@ -52,9 +59,11 @@ public class LikeConsumer {
     @KafkaListener(topics = "${mq.topic.chirper.like.count}",
             groupId = "${mq.consumer.group.like}",
             batch = "true", concurrency = "4")
-    public void forwardCountConsumer(@Payload List<Action<Long, Long>> actions, Acknowledgment ack) {
+    public void forwardCountConsumer(@Payload List<Action<Long, Long>> actions,
+                                     @Header(KafkaHeaders.RECEIVED_PARTITION) List<Integer> partitions,
+                                     @Header(KafkaHeaders.OFFSET) List<Long> offsets, Acknowledgment ack) {
         log.info("消费到主题:{}", LIKE_INCREMENT_COUNT_TOPIC);
-        likeService.modifyLikeCount(actions);
+        likeService.modifyLikeCount(actions, partitions, offsets);
         ack.acknowledge();
         log.info("主题:#{}偏移量提交", LIKE_INCREMENT_COUNT_TOPIC);
     }
@@ -0,0 +1,66 @@
+package com.zyq.chirp.chirperserver.mq.consumer;
+
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirperserver.service.PostPublishService;
+import com.zyq.chirp.common.mq.model.Message;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 推文已写入消息消费者
+ * 按批执行推文发布后的处理，每次拉取的条数即为批次上限，只重发未完成的推文，已完成的阶段不会重复执行
+ */
+@Slf4j
+@Component
+public class PublishedConsumer {
+    @Resource
+    PostPublishService postPublishService;
+    @Resource
+    KafkaTemplate<String, Object> kafkaTemplate;
+    @Value("${mq.topic.chirper.published}")
+    String PUBLISHED_TOPIC;
+    @Value("${default-config.post-publish.max-retry}")
+    Integer maxRetryTimes;
+
+    @KafkaListener(topics = "${mq.topic.chirper.published}",
+            groupId = "${mq.consumer.group.published}",
+            batch = "true", concurrency = "4",
+            properties = {"max.poll.records:${default-config.post-publish.max-batch}"})
+    public void publishedConsumer(@Payload List<Message<ChirperDto>> messages, Acknowledgment ack) {
+        log.info("消费到主题:{}", PUBLISHED_TOPIC);
+        List<ChirperDto> chirperDtos = messages.stream()
+                .map(Message::getBody)
+                .filter(Objects::nonNull)
+                .toList();
+        Set<Long> failed;
+        try {
+            failed = new HashSet<>(postPublishService.process(chirperDtos));
+        } catch (Exception e) {
+            log.error("推文发布后处理失败，推文:{}，错误:", chirperDtos.stream().map(ChirperDto::getId).toList(), e);
+            failed = chirperDtos.stream().map(ChirperDto::getId).collect(Collectors.toSet());
+        }
+        // 失败重试，只重发未完成的推文
+        Set<Long> retry = failed;
+        messages.stream()
+                .filter(message -> message.getBody() != null && retry.contains(message.getBody().getId()))
+                .filter(message -> message.getRetryTimes() < maxRetryTimes)
+                .forEach(message -> {
+                    message.setRetryTimes(message.getRetryTimes() + 1);
+                    kafkaTemplate.send(PUBLISHED_TOPIC, message.getBody().getId().toString(), message);
+                });
+        ack.acknowledge();
+        log.info("主题:#{}偏移量提交", PUBLISHED_TOPIC);
+    }
+}
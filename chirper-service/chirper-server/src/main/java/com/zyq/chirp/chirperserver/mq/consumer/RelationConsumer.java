@@ -0,0 +1,41 @@
+package com.zyq.chirp.chirperserver.mq.consumer;
+
+import com.zyq.chirp.chirperserver.service.ReplyPermissionService;
+import com.zyq.chirp.common.mq.model.Message;
+import com.zyq.chirp.userclient.dto.RelationDto;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 用户关系变化消费者
+ * 清除本地缓存的作者与查看者关系，每个实例使用独立的消费组
+ */
+@Slf4j
+@Component
+public class RelationConsumer {
+    @Resource
+    ReplyPermissionService replyPermissionService;
+    @Value("${mq.topic.relation}")
+    String RELATION_TOPIC;
+
+    @KafkaListener(topics = "${mq.topic.relation}",
+            groupId = "${mq.consumer.group.relation}",
+            batch = "true")
+    public void relationConsumer(@Payload List<Message<RelationDto>> messages, Acknowledgment ack) {
+        log.info("消费到主题:{}", RELATION_TOPIC);
+        replyPermissionService.evict(messages.stream()
+                .map(Message::getBody)
+                .filter(Objects::nonNull)
+                .toList());
+        ack.acknowledge();
+        log.info("主题:#{}偏移量提交", RELATION_TOPIC);
+    }
+}
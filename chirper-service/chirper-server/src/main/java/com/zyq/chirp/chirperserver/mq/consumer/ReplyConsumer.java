@@ -6,7 +6,9 @@ import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
@@ -24,9 +26,11 @@ public class ReplyConsumer {
     @KafkaListener(topics = "${mq.topic.chirper.reply.count}",
             groupId = "${mq.consumer.group.reply}",
             batch = "true", concurrency = "4")
-    public void replyCountConsumer(@Payload List<Action<Long, Long>> actions, Acknowledgment ack) {
+    public void replyCountConsumer(@Payload List<Action<Long, Long>> actions,
+                                   @Header(KafkaHeaders.RECEIVED_PARTITION) List<Integer> partitions,
+                                   @Header(KafkaHeaders.OFFSET) List<Long> offsets, Acknowledgment ack) {
         log.info("消费到主题:{}", REPLY_INCREMENT_COUNT_TOPIC);
-        chirperService.modifyReplyCount(actions);
+        chirperService.modifyReplyCount(actions, partitions, offsets);
         ack.acknowledge();
         log.info("主题:#{}偏移量提交", REPLY_INCREMENT_COUNT_TOPIC);
     }
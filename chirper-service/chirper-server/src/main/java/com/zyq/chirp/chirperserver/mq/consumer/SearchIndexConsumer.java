@@ -0,0 +1,52 @@
+package com.zyq.chirp.chirperserver.mq.consumer;
+
+import com.zyq.chirp.chirperserver.service.ChirperSearchService;
+import com.zyq.chirp.common.mq.model.Message;
+import com.zyq.chirp.feedclient.dto.FeedBatchDto;
+import com.zyq.chirp.feedclient.dto.FeedDto;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 推文发布消息消费者
+ * 将新发布的推文写入本地全文索引，每个实例使用独立的消费组
+ */
+@Slf4j
+@Component
+public class SearchIndexConsumer {
+    @Resource
+    ChirperSearchService chirperSearchService;
+    @Value("${mq.topic.publish}")
+    String PUBLISH_TOPIC;
+
+    @KafkaListener(topics = "${mq.topic.publish}",
+            groupId = "${mq.consumer.group.search}",
+            batch = "true")
+    public void publishConsumer(@Payload List<Message<Object>> messages, Acknowledgment ack) {
+        log.info("消费到主题:{}", PUBLISH_TOPIC);
+        List<Long> chirperIds = messages.stream()
+                .map(Message::getBody)
+                .<FeedDto>mapMulti((body, consumer) -> {
+                    // 兼容单条推文的发布消息
+                    switch (body) {
+                        case FeedBatchDto batch -> batch.getFeeds().forEach(consumer);
+                        case FeedDto feedDto -> consumer.accept(feedDto);
+                        case null, default -> {
+                        }
+                    }
+                })
+                .map(feedDto -> Long.valueOf(feedDto.getContentId()))
+                .distinct()
+                .toList();
+        chirperSearchService.refresh(chirperIds);
+        ack.acknowledge();
+        log.info("主题:#{}偏移量提交", PUBLISH_TOPIC);
+    }
+}
@@ -0,0 +1,70 @@
+package com.zyq.chirp.chirperserver.service;
+
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperCounter;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 推文缓存服务接口
+ * 推文的文本、媒体、作者、类型在发布后不再变化，以主体缓存保存；
+ * 点赞、转发等计数单独存放，读取时覆盖到主体上，计数变化不会使主体失效
+ */
+public interface ChirperCacheService {
+    /**
+     * 批量获取推文
+     * 依次查询本地缓存、Redis、数据库，并覆盖最新的计数
+     * @param chirperIds 推文ID集合
+     * @return 按给定顺序排列的推文ID到推文的映射，每次调用返回新的对象
+     */
+    Map<Long, ChirperDto> getBodies(Collection<Long> chirperIds);
+
+    /**
+     * 修改缓存中的计数，缓存中不存在时忽略，下次读取时从数据库加载
+     * @param chirperId 推文ID
+     * @param counter 计数类型
+     * @param delta 变化值
+     */
+    void incrementCounter(Long chirperId, ChirperCounter counter, long delta);
+
+    /**
+     * 覆盖缓存中的计数，缓存中不存在时忽略
+     * @param chirperId 推文ID
+     * @param counter 计数类型
+     * @param value 新的值
+     */
+    void setCounter(Long chirperId, ChirperCounter counter, long value);
+
+    /**
+     * 清除推文的主体与计数缓存
+     * @param chirperIds 推文ID集合
+     */
+    void evict(Collection<Long> chirperIds);
+
+    /**
+     * 只清除本实例的近端缓存，其他实例发生的变化由推文变化事件通知
+     * @param chirperIds 推文ID集合
+     */
+    void evictLocal(Collection<Long> chirperIds);
+
+    /**
+     * 获取与查看者无关的分页推文id，缓存未命中时由loader从数据库查询并写入缓存；
+     * 查看者在分页缓存的有效期内发布过推文时，使用带该作者版本的键，不会读到发布前缓存的分页
+     * @param pageKey 由查询条件组成的键，不能包含查看者相关的条件
+     * @param viewerId 查看者，为空时只使用共享的键
+     * @param loader 数据库查询，参数为需要同时查出其延时发布推文的作者，使用共享的键时为空
+     * @return 推文ID列表
+     */
+    List<Long> getPageIds(String pageKey, Long viewerId, Function<Long, List<Long>> loader);
+
+    /**
+     * 作者发布推文后递增其分页版本
+     * @param authorId 作者ID
+     * @param activeTime 延时发布推文的激活时间，版本至少保留到激活之后，立即发布时为空
+     */
+    void touchAuthor(Long authorId, Timestamp activeTime);
+}
@@ -0,0 +1,27 @@
+package com.zyq.chirp.chirperserver.service;
+
+import com.zyq.chirp.chirperserver.domain.enums.ChirperCounter;
+import com.zyq.chirp.common.mq.model.Action;
+
+import java.util.List;
+
+/**
+ * 推文计数累加服务接口
+ * 计数变化先记入Redis交接区，再在内存中按推文合并，定时或累积到一定数量后按列批量写入数据库，
+ * 热门推文的并发更新不再争抢同一行的行锁
+ */
+public interface ChirperCounterService {
+    /**
+     * 累加计数变化，偏移量不大于该分区已记入的最大偏移量的消息视为重复投递并跳过
+     * @param counter 计数类型
+     * @param actions 增减操作，按目标推文合并
+     * @param partitions 每个操作所在的分区
+     * @param offsets 每个操作的偏移量
+     */
+    void add(ChirperCounter counter, List<Action<Long, Long>> actions, List<Integer> partitions, List<Long> offsets);
+
+    /**
+     * 将内存中累积的计数写入数据库，并同步计数缓存与热度排行
+     */
+    void flush();
+}
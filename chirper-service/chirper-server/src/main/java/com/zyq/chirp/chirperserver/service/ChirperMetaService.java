@@ -0,0 +1,39 @@
+package com.zyq.chirp.chirperserver.service;
+
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 推文元数据索引服务接口
+ * 在堆外内存中维护推文ID到作者、类型、社区、状态的映射，供通知等只需要基本信息的场景使用
+ */
+public interface ChirperMetaService {
+    /**
+     * 写入或覆盖推文的元数据
+     * @param chirperDtos 推文集合，需包含id、作者、类型、社区与状态
+     */
+    void put(Collection<ChirperDto> chirperDtos);
+
+    /**
+     * 修改已在索引中的推文的状态，不在索引中的推文忽略
+     * @param chirperIds 推文ID集合
+     * @param expect 只修改处于该状态的推文，为null时不限制
+     * @param status 新的状态
+     */
+    void updateStatus(Collection<Long> chirperIds, Integer expect, int status);
+
+    /**
+     * 将推文从索引中移除
+     * @param chirperIds 推文ID集合
+     */
+    void remove(Collection<Long> chirperIds);
+
+    /**
+     * 获取推文的基本信息，索引未命中的推文从数据库加载并写入索引
+     * @param chirperIds 推文ID集合
+     * @return 仅包含id、作者、类型、社区与状态的推文，不存在的推文不返回
+     */
+    List<ChirperDto> getBasicInfo(Collection<Long> chirperIds);
+}
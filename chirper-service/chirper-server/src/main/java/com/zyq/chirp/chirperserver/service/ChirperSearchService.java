@@ -0,0 +1,32 @@
+package com.zyq.chirp.chirperserver.service;
+
+import com.zyq.chirp.chirpclient.dto.ChirperQueryDto;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 推文全文检索服务接口
+ * 每个实例在本地磁盘维护一份倒排索引，由推文发布消息与状态变化增量更新
+ */
+public interface ChirperSearchService {
+    /**
+     * 按关键词检索推文
+     * 关键词中以#开头的词匹配话题，以@开头的词匹配被提及的用户，其余按中英文分词匹配正文
+     * @param chirperQueryDto 查询条件
+     * @return 按相关度排序的推文ID
+     */
+    List<Long> search(ChirperQueryDto chirperQueryDto);
+
+    /**
+     * 按推文最新的状态更新索引，已激活的推文写入索引，其余从索引中删除
+     * @param chirperIds 推文ID集合
+     */
+    void refresh(Collection<Long> chirperIds);
+
+    /**
+     * 从数据库重建索引，已激活的推文逐条覆盖写入，其余的文档在写完后删除
+     * @return 写入索引的推文数，已有重建任务在执行时返回-1
+     */
+    long rebuild();
+}
@@ -2,6 +2,7 @@ package com.zyq.chirp.chirperserver.service;
 
 import com.zyq.chirp.chirpclient.dto.ChirperDto;
 import com.zyq.chirp.chirpclient.dto.ChirperQueryDto;
+import com.zyq.chirp.chirpclient.dto.ThreadNodeDto;
 import com.zyq.chirp.chirperserver.domain.enums.ChirperStatus;
 import com.zyq.chirp.chirperserver.domain.enums.ChirperType;
 import com.zyq.chirp.common.mq.model.Action;
@@ -33,8 +34,10 @@ public interface ChirperService {
     /**
      * 修改推文的回复数量
      * @param actions 回复操作的集合
+     * @param partitions 每个操作所在的分区
+     * @param offsets 每个操作的偏移量，用于跳过重复投递的消息
      */
-    void modifyReplyCount(List<Action<Long, Long>> actions);
+    void modifyReplyCount(List<Action<Long, Long>> actions, List<Integer> partitions, List<Long> offsets);
 
     /**
      * 获取被引用的推文
@@ -70,8 +73,10 @@ public interface ChirperService {
     /**
      * 修改推文的转发数量
      * @param actions 转发操作的集合
+     * @param partitions 每个操作所在的分区
+     * @param offsets 每个操作的偏移量，用于跳过重复投递的消息
      */
-    void modifyForwardCount(List<Action<Long, Long>> actions);
+    void modifyForwardCount(List<Action<Long, Long>> actions, List<Integer> partitions, List<Long> offsets);
 
     /**
      * 引用推文（带评论的转发）
@@ -83,8 +88,10 @@ public interface ChirperService {
     /**
      * 修改推文的引用数量
      * @param actions 引用操作的集合
+     * @param partitions 每个操作所在的分区
+     * @param offsets 每个操作的偏移量，用于跳过重复投递的消息
      */
-    void modifyQuoteCount(List<Action<Long, Long>> actions);
+    void modifyQuoteCount(List<Action<Long, Long>> actions, List<Integer> partitions, List<Long> offsets);
 
     /**
      * 根据ID获取推文详情
@@ -101,12 +108,21 @@ public interface ChirperService {
     List<ChirperDto> getPage(ChirperQueryDto chirperQueryDto);
 
     /**
-     * 获取用户点赞的推文记录
+     * 获取推文下的对话回复树
+     * 从该推文开始逐层读取回复结构，每层一次查询，一次批量获取所有节点的推文信息
+     * @param chirperId 要展开的推文ID，可以是对话中任意一条推文
+     * @param cursor 该推文上次展开返回的游标，为空时从头展开
+     * @return 以该推文为根的回复树
+     */
+    ThreadNodeDto getThread(Long chirperId, Long cursor);
+
+    /**
+     * 获取用户点赞的推文时间线
      * @param userId 用户ID
-     * @param page 页码
-     * @return 用户点赞的推文列表
+     * @param cursor 上一页返回的游标，为空时从最新的点赞开始
+     * @return 用户点赞的推文及下一页的游标
      */
-    List<ChirperDto> getLikeRecordByUserId(Long userId, Integer page);
+    CursorPageDto<ChirperDto> getLikeTimeline(Long userId, String cursor);
 
     /**
      * 更新推文状态
@@ -171,7 +187,7 @@ public interface ChirperService {
     ChirperDto getWithPrecondition(ChirperDto chirperDto);
 
     /**
-     * 处理延时发布的推文
+     * 登记延时发布的推文，由延时发布登记消息的消费者调用
      * @param chirperDto 推文信息
      */
     void postDelay(ChirperDto chirperDto);
@@ -179,11 +195,7 @@ public interface ChirperService {
     /**
      * 激活延时发布的推文
      * @param chirperIds 要激活的推文ID集合
+     * @return 是否激活成功
      */
-    void activeDelay(Collection<Long> chirperIds);
-
-    /**
-     * 自动激活到期的延时发布推文
-     */
-    void activeDelayAuto();
+    boolean activeDelay(Collection<Long> chirperIds);
 }
@@ -0,0 +1,31 @@
+package com.zyq.chirp.chirperserver.service;
+
+import com.zyq.chirp.chirperserver.domain.pojo.Chirper;
+import com.zyq.chirp.common.mq.model.OutboxMessage;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 推文写入服务接口
+ * 并发的发布请求排队等待几毫秒，合并为一条多行插入语句在同一个事务中提交，减少高峰期的提交次数；
+ * 发布产生的消息随推文在同一个事务中写入发件箱
+ */
+public interface ChirperWriteService {
+    /**
+     * 提交推文等待写入
+     * @param chirper 推文，id由调用方生成
+     * @param messages 与推文一起提交的发件箱消息
+     * @return 所在批次提交后完成，结果为推文id
+     */
+    CompletableFuture<Long> submit(Chirper chirper, List<OutboxMessage> messages);
+
+    /**
+     * 写入推文，阻塞直到所在批次提交
+     * 排队超过等待时间仍未开始写入时失败，推文不会写入；已开始写入的推文等待提交结果
+     * @param chirper 推文，id由调用方生成
+     * @param messages 与推文一起提交的发件箱消息
+     * @return 推文id
+     */
+    Long insert(Chirper chirper, List<OutboxMessage> messages);
+}
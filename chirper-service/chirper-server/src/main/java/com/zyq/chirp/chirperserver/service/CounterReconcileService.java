@@ -0,0 +1,21 @@
+package com.zyq.chirp.chirperserver.service;
+
+import java.util.Map;
+
+/**
+ * 计数校对服务接口
+ * 点赞、转发、引用、回复数由消息异步累加，消息丢失时会与实际记录数产生偏差，
+ * 后台按推文id分批统计实际记录数，修正存在偏差的推文
+ */
+public interface CounterReconcileService {
+    /**
+     * 执行一次校对，从上次的进度继续，每次校对的推文数受预算限制，同一时间只有持有租约的实例会执行
+     */
+    void reconcile();
+
+    /**
+     * 获取校对进度与本轮的偏差统计
+     * @return 统计项到值的映射
+     */
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,34 @@
+package com.zyq.chirp.chirperserver.service;
+
+import java.util.Collection;
+import java.util.function.Predicate;
+
+/**
+ * 定时发布调度服务接口
+ * 待发布的推文按推文id分片存放在多个以发布时间为分数的有序集合中，每个分片由持有租约的实例装载即将到期的推文，
+ * 放入本地的时间轮中按秒触发；激活成功后才从有序集合中移除，实例宕机时由接手分片的实例重新装载
+ */
+public interface DelayPublishService {
+    /**
+     * 登记定时发布的推文，发布时间已过的推文会尽快激活
+     * @param chirperId 推文id
+     * @param activeTime 发布时间(毫秒)
+     */
+    void schedule(Long chirperId, long activeTime);
+
+    /**
+     * 设置到期推文的激活方法
+     * @param activator 参数为到期的推文id，返回是否激活成功，失败的推文稍后重试
+     */
+    void onDue(Predicate<Collection<Long>> activator);
+
+    /**
+     * 续期或获取分片租约，并从持有的分片中装载即将到期的推文
+     */
+    void load();
+
+    /**
+     * 从数据库中找出超过发布时间仍未激活的推文并直接激活，作为登记或调度失败时的兜底
+     */
+    void sweep();
+}
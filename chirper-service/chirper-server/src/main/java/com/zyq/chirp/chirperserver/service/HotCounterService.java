@@ -0,0 +1,42 @@
+package com.zyq.chirp.chirperserver.service;
+
+import com.zyq.chirp.chirperserver.domain.enums.ChirperCounter;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 热门推文计数分片服务接口
+ * 计数变化速率超过阈值的推文被标记为热门，其计数变化分散写入多行分片，定时合并回tb_chirper，
+ * 避免所有更新争抢同一行；普通推文仍直接更新tb_chirper
+ */
+public interface HotCounterService {
+    /**
+     * 写入一批计数变化，热门推文写入分片，其余推文直接更新tb_chirper
+     * @param counter 计数类型
+     * @param deltas 推文id到变化值的映射
+     */
+    void increment(ChirperCounter counter, Map<Long, Long> deltas);
+
+    /**
+     * 获取热门推文尚未合并回tb_chirper的计数变化，非热门推文不查询
+     * @param chirperIds 推文id
+     * @return 推文id到各计数变化的映射
+     */
+    Map<Long, Map<ChirperCounter, Long>> getUnfolded(Collection<Long> chirperIds);
+
+    /**
+     * 根据上一个统计窗口内的计数变化速率标记热门推文
+     */
+    void detect();
+
+    /**
+     * 从Redis同步所有实例标记的热门推文
+     */
+    void refresh();
+
+    /**
+     * 将分片中的计数变化合并回tb_chirper，同一时间只有持有租约的实例会执行
+     */
+    void fold();
+}
@@ -0,0 +1,37 @@
+package com.zyq.chirp.chirperserver.service;
+
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirpclient.dto.ChirperQueryDto;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+/**
+ * 推文热度排行服务接口
+ * 按全站、作者、社区分别维护有序集合，热度由互动计数与发布时间共同决定
+ */
+public interface HotRankService {
+    /**
+     * 从数据库装载全站热度排行，排行已装载或其他实例正在装载时直接返回，作者与社区排行在读取时重建
+     */
+    void warm();
+
+    /**
+     * 将新发布的推文加入热度排行
+     * @param chirperDtos 推文集合，只有已激活的推文会被加入
+     */
+    void add(Collection<ChirperDto> chirperDtos);
+
+    /**
+     * 按推文最新的状态与计数重新计算热度，未激活的推文从排行中移除
+     * @param chirperIds 推文ID集合
+     */
+    void refresh(Collection<Long> chirperIds);
+
+    /**
+     * 从热度排行中读取一页推文
+     * @param chirperQueryDto 查询条件
+     * @return 按热度降序排列的推文ID到热度的映射，查询条件不属于任何排行范围时返回null
+     */
+    LinkedHashMap<Long, Double> getPage(ChirperQueryDto chirperQueryDto);
+}
@@ -0,0 +1,43 @@
+package com.zyq.chirp.chirperserver.service;
+
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirperserver.domain.enums.InteractionType;
+
+import java.util.Collection;
+
+/**
+ * 用户互动状态服务接口
+ * 每个用户的点赞、转发、引用各用一个压缩位图记录互动过的推文id，
+ * 查看者相关的互动标记只需读取一次位图，不再查询数据库
+ */
+public interface InteractionService {
+    /**
+     * 记录互动，位图未被缓存时不做处理，下次读取时从数据库重建
+     * @param type 互动类型
+     * @param userId 用户id
+     * @param chirperIds 互动的推文id
+     */
+    void add(InteractionType type, Long userId, Collection<Long> chirperIds);
+
+    /**
+     * 移除互动
+     * @param type 互动类型
+     * @param userId 用户id
+     * @param chirperIds 取消互动的推文id
+     */
+    void remove(InteractionType type, Long userId, Collection<Long> chirperIds);
+
+    /**
+     * 删除用户的位图缓存，用于无法直接得知推文id的变化，如引用推文被删除或延时激活
+     * @param type 互动类型
+     * @param userIds 用户id
+     */
+    void evict(InteractionType type, Collection<Long> userIds);
+
+    /**
+     * 设置查看者对推文的点赞、转发、引用标记
+     * @param chirperDtos 推文
+     * @param userId 查看者id
+     */
+    void fill(Collection<ChirperDto> chirperDtos, Long userId);
+}
@@ -1,8 +1,10 @@
 package com.zyq.chirp.chirperserver.service;
 
+import com.zyq.chirp.chirpclient.dto.CursorPageDto;
 import com.zyq.chirp.chirpclient.dto.LikeDto;
 import com.zyq.chirp.chirperserver.domain.pojo.Like;
 import com.zyq.chirp.common.mq.model.Action;
+import com.zyq.chirp.userclient.dto.UserDto;
 
 import java.util.Collection;
 import java.util.List;
@@ -44,8 +46,10 @@ public interface LikeService {
     /**
      * 修改推文的点赞数量
      * @param actions 点赞操作的集合
+     * @param partitions 每个操作所在的分区
+     * @param offsets 每个操作的偏移量，用于跳过重复投递的消息
      */
-    void modifyLikeCount(List<Action<Long, Long>> actions);
+    void modifyLikeCount(List<Action<Long, Long>> actions, List<Integer> partitions, List<Long> offsets);
 
     /**
      * 获取用户对推文的点赞信息
@@ -56,12 +60,25 @@ public interface LikeService {
     List<Long> getLikeInfo(Collection<Long> chirperIds, Long userId);
 
     /**
-     * 获取用户的点赞记录
+     * 获取用户的点赞时间线
+     * 按点赞时间倒序，从游标位置之后开始读取
      * @param userId 用户ID
-     * @param page 页码
+     * @param after 上一页最后一条点赞记录，为空时从最新的点赞开始
+     * @param limit 读取条数
      * @return 点赞记录列表
      */
-    List<Like> getLikeRecord(Long userId, Integer page);
+    List<Like> getLikeTimeline(Long userId, Like after, int limit);
+
+    /**
+     * 获取点赞推文的用户
+     * 按点赞时间倒序分页，可选将查看者关注的用户排在最前
+     * @param chirperId 推文ID
+     * @param viewerId 查看者ID，未登录时为空
+     * @param followeesFirst 是否优先展示查看者关注的用户
+     * @param cursor 上一页返回的游标，为空时从第一页开始
+     * @return 点赞用户及下一页的游标
+     */
+    CursorPageDto<UserDto> getLikedBy(Long chirperId, Long viewerId, boolean followeesFirst, String cursor);
 
     /**
      * 生成点赞记录的缓存键
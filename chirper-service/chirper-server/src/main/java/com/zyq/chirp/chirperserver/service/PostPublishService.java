@@ -0,0 +1,21 @@
+package com.zyq.chirp.chirperserver.service;
+
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+
+import java.util.List;
+
+/**
+ * 推文发布后处理服务接口
+ * 推文的发布消息随推文写入发件箱，消费者按批取出后统一处理：整批被@的用户名一次查询并发送通知，
+ * 整批合并为一条Feed发布消息，话题计数合并后在一个管道中累加。
+ * 处理在消费线程中同步执行，下游变慢时消费随之放缓，不会堆积线程；
+ * 每条推文已完成的阶段会被记录，重发或重复投递时不会重复通知、推送或计数
+ */
+public interface PostPublishService {
+    /**
+     * 处理一批已发布的推文，所有消息确认发送或等待超时后返回
+     * @param chirperDtos 推文
+     * @return 有阶段未完成、需要重发的推文id
+     */
+    List<Long> process(List<ChirperDto> chirperDtos);
+}
@@ -0,0 +1,45 @@
+package com.zyq.chirp.chirperserver.service;
+
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirpclient.dto.TextEntity;
+import com.zyq.chirp.userclient.dto.RelationDto;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 互动权限服务接口
+ * 推文中被提及的用户id在发布时解析并随推文保存，作者与查看者的关系在本地缓存，关注、取关、拉黑时按事件清除，
+ * 一页推文最多各发起一次用户名与关系的批量查询
+ */
+public interface ReplyPermissionService {
+    /**
+     * 计算一页推文对查看者的互动权限
+     * 作者与被提及的用户全部允许，被作者拉黑的用户全部禁止，其他用户可以点赞、转发、引用，能否回复由回复范围决定
+     * @param chirperDtos 推文
+     * @param viewerId 查看者
+     * @return 设置了互动权限的推文
+     */
+    List<ChirperDto> evaluate(List<ChirperDto> chirperDtos, Long viewerId);
+
+    /**
+     * 按用户名解析被提及用户的id并写入实体，发布时调用，随推文保存后读取时不再查询
+     * @param entities 推文实体
+     */
+    void resolveMentioned(List<TextEntity> entities);
+
+    /**
+     * 获取推文中被提及的用户id，优先使用本地缓存，缺失时读取随推文保存的实体
+     * @param chirperDtos 推文
+     * @return 推文id到被提及用户id的映射
+     */
+    Map<Long, Set<Long>> getMentioned(List<ChirperDto> chirperDtos);
+
+    /**
+     * 用户关系变化时清除双方之间缓存的关系
+     * @param relations 变化的关系
+     */
+    void evict(Collection<RelationDto> relations);
+}
@@ -0,0 +1,35 @@
+package com.zyq.chirp.chirperserver.service;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 话题趋势服务接口
+ * 发布的话题按分钟写入带过期时间的计数桶，定时合并最近一段时间的计数桶并按时间衰减，生成趋势快照
+ */
+public interface TrendService {
+    /**
+     * 记录新发布推文中的话题
+     * @param tags 话题集合，同一推文中重复的话题只计一次
+     */
+    void record(Collection<String> tags);
+
+    /**
+     * 记录一批新发布推文中的话题，合并为每个话题一次累加并在一个管道中提交
+     * @param tagGroups 每个元素为一条推文的话题集合
+     */
+    void recordBatch(Collection<? extends Collection<String>> tagGroups);
+
+    /**
+     * 合并最近的计数桶并刷新趋势快照
+     */
+    void snapshot();
+
+    /**
+     * 从趋势快照中读取一页话题
+     * @param page 页码
+     * @param pageSize 每页条数
+     * @return 按衰减后热度降序排列的话题到热度(score)与窗口内发布数(post)的映射
+     */
+    Map<Object, Map<String, Object>> getPage(Integer page, Integer pageSize);
+}
@@ -0,0 +1,22 @@
+package com.zyq.chirp.chirperserver.service;
+
+import java.util.Collection;
+
+/**
+ * 去重浏览人数服务接口
+ * 浏览者按天写入每条推文的HyperLogLog计数桶，持久化浏览数时合并到推文的总计数并写入数据库
+ */
+public interface UniqueViewService {
+    /**
+     * 记录一次浏览
+     * @param chirperId 推文ID
+     * @param viewerId 浏览者ID
+     */
+    void record(String chirperId, String viewerId);
+
+    /**
+     * 将推文的计数桶合并到总计数，并把估算的去重浏览人数写入数据库与计数缓存
+     * @param chirperIds 推文ID集合
+     */
+    void persist(Collection<Long> chirperIds);
+}
@@ -0,0 +1,12 @@
+package com.zyq.chirp.chirperserver.service;
+
+/**
+ * 浏览数持久化服务接口
+ * 将StatisticAspect累积在Redis中的浏览数分批写入数据库
+ */
+public interface ViewCountService {
+    /**
+     * 执行一轮写入，同一时间只有持有租约的实例会执行
+     */
+    void flush();
+}
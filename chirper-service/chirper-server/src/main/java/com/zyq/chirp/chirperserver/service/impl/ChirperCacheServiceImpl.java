@@ -0,0 +1,344 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirperserver.convertor.ChirperConvertor;
+import com.zyq.chirp.chirperserver.domain.enums.CacheKey;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperCounter;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperStatus;
+import com.zyq.chirp.chirperserver.domain.pojo.Chirper;
+import com.zyq.chirp.chirperserver.mapper.ChirperMapper;
+import com.zyq.chirp.chirperserver.service.ChirperCacheService;
+import com.zyq.chirp.chirperserver.service.HotCounterService;
+import com.zyq.chirp.common.domain.exception.ChirpException;
+import com.zyq.chirp.common.domain.model.Code;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 推文缓存服务实现类
+ * 主体缓存：Caffeine近端缓存 -> Redis -> MySQL，缓存的是序列化后的字节，读取时反序列化出新对象；
+ * 只缓存已激活的推文，延时发布和已删除的推文每次都从数据库读取；
+ * 推文状态变化时由推文变化事件清除每个实例的近端缓存，本地过期时间作为兜底
+ * 计数缓存：每条推文一个Redis hash，计数修改时原地自增，不存在时从数据库加载
+ * 分页缓存：只存放与查看者无关的推文id，所有查看者共享；刚发布过推文的作者使用带版本的键，不共享发布前的分页
+ */
+@Service
+@Slf4j
+public class ChirperCacheServiceImpl implements ChirperCacheService {
+    /**
+     * 计数hash存在时才自增，避免只含部分字段的hash覆盖数据库中的计数
+     */
+    private static final DefaultRedisScript<Long> INCREMENT_IF_EXISTS_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                return redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])
+            end
+            return nil
+            """, Long.class);
+    private static final DefaultRedisScript<Long> SET_IF_EXISTS_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                return redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+            end
+            return nil
+            """, Long.class);
+    @Resource
+    ChirperMapper chirperMapper;
+    @Resource
+    ChirperConvertor chirperConvertor;
+    @Resource
+    HotCounterService hotCounterService;
+    @Resource
+    ObjectMapper objectMapper;
+    @Resource
+    RedisTemplate<String, Object> redisTemplate;
+    @Resource
+    RedisTemplate<String, byte[]> byteRedisTemplate;
+    @Resource
+    Cache<Long, byte[]> chirperBodyNearCache;
+    @Value("${default-config.body-cache.expire}")
+    Long bodyExpire;
+    @Value("${default-config.body-cache.counter-expire}")
+    Long counterExpire;
+    @Value("${default-config.body-cache.page-expire}")
+    Long pageExpire;
+
+    @Override
+    public Map<Long, ChirperDto> getBodies(Collection<Long> chirperIds) {
+        if (CollectionUtils.isEmpty(chirperIds)) {
+            return Map.of();
+        }
+        List<Long> ids = chirperIds.stream().filter(Objects::nonNull).distinct().toList();
+        Map<Long, byte[]> bodyMap = new HashMap<>(chirperBodyNearCache.getAllPresent(ids));
+        List<Long> localMiss = ids.stream().filter(id -> !bodyMap.containsKey(id)).toList();
+        if (!localMiss.isEmpty()) {
+            List<byte[]> remote = byteRedisTemplate.opsForValue().multiGet(localMiss.stream().map(this::getBodyKey).toList());
+            List<Long> remoteMiss = new ArrayList<>();
+            for (int i = 0; i < localMiss.size(); i++) {
+                byte[] body = remote != null ? remote.get(i) : null;
+                if (body != null) {
+                    bodyMap.put(localMiss.get(i), body);
+                    chirperBodyNearCache.put(localMiss.get(i), body);
+                } else {
+                    remoteMiss.add(localMiss.get(i));
+                }
+            }
+            if (!remoteMiss.isEmpty()) {
+                bodyMap.putAll(this.loadBodies(remoteMiss));
+            }
+        }
+        Map<Long, ChirperDto> chirperDtoMap = new LinkedHashMap<>();
+        ids.forEach(id -> {
+            byte[] body = bodyMap.get(id);
+            if (body != null) {
+                chirperDtoMap.put(id, this.deserialize(body));
+            }
+        });
+        this.overlayCounters(chirperDtoMap);
+        return chirperDtoMap;
+    }
+
+    @Override
+    public void incrementCounter(Long chirperId, ChirperCounter counter, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        StringRedisSerializer serializer = new StringRedisSerializer();
+        try {
+            redisTemplate.execute(INCREMENT_IF_EXISTS_SCRIPT, serializer, new GenericToStringSerializer<>(Long.class),
+                    List.of(this.getCounterKey(chirperId)), counter.getField(), String.valueOf(delta));
+        } catch (Exception e) {
+            //自增失败时删除计数缓存，下次读取时从数据库加载
+            log.warn("修改计数缓存失败，推文id:{}，计数:{}，错误:", chirperId, counter, e);
+            redisTemplate.delete(this.getCounterKey(chirperId));
+        }
+    }
+
+    @Override
+    public void setCounter(Long chirperId, ChirperCounter counter, long value) {
+        try {
+            redisTemplate.execute(SET_IF_EXISTS_SCRIPT, new StringRedisSerializer(), new GenericToStringSerializer<>(Long.class),
+                    List.of(this.getCounterKey(chirperId)), counter.getField(), String.valueOf(value));
+        } catch (Exception e) {
+            log.warn("覆盖计数缓存失败，推文id:{}，计数:{}，错误:", chirperId, counter, e);
+            redisTemplate.delete(this.getCounterKey(chirperId));
+        }
+    }
+
+    @Override
+    public void evict(Collection<Long> chirperIds) {
+        if (CollectionUtils.isEmpty(chirperIds)) {
+            return;
+        }
+        chirperBodyNearCache.invalidateAll(chirperIds);
+        List<String> keys = new ArrayList<>();
+        chirperIds.forEach(id -> {
+            keys.add(this.getBodyKey(id));
+            keys.add(this.getCounterKey(id));
+        });
+        redisTemplate.delete(keys);
+    }
+
+    @Override
+    public void evictLocal(Collection<Long> chirperIds) {
+        if (!CollectionUtils.isEmpty(chirperIds)) {
+            chirperBodyNearCache.invalidateAll(chirperIds);
+        }
+    }
+
+    @Override
+    public List<Long> getPageIds(String pageKey, Long viewerId, Function<Long, List<Long>> loader) {
+        Long authorId = null;
+        if (viewerId != null) {
+            byte[] version = byteRedisTemplate.opsForValue().get(this.getAuthorVersionKey(viewerId));
+            if (version != null) {
+                pageKey = STR."\{pageKey}:\{viewerId}:\{new String(version, StandardCharsets.UTF_8)}";
+                authorId = viewerId;
+            }
+        }
+        String key = STR."\{CacheKey.CHIRPER_PAGE_BOUND_KEY.getKey()}:\{DigestUtils.md5DigestAsHex(pageKey.getBytes(StandardCharsets.UTF_8))}";
+        byte[] cached = byteRedisTemplate.opsForValue().get(key);
+        if (cached != null) {
+            try {
+                return objectMapper.readValue(cached, new TypeReference<List<Long>>() {
+                });
+            } catch (IOException e) {
+                log.warn("分页缓存反序列化失败，键:{}，错误:", key, e);
+            }
+        }
+        List<Long> ids = loader.apply(authorId);
+        try {
+            byteRedisTemplate.opsForValue().set(key, objectMapper.writeValueAsBytes(ids), Duration.ofSeconds(pageExpire));
+        } catch (IOException e) {
+            log.warn("分页缓存序列化失败，键:{}，错误:", key, e);
+        }
+        return ids;
+    }
+
+    @Override
+    public void touchAuthor(Long authorId, Timestamp activeTime) {
+        if (authorId == null) {
+            return;
+        }
+        String key = this.getAuthorVersionKey(authorId);
+        try {
+            //延时发布的推文在激活前只出现在带版本的分页中，版本保留到激活之后，只延长不缩短
+            long expire = pageExpire;
+            if (activeTime != null) {
+                expire = Math.max(expire, (activeTime.getTime() - System.currentTimeMillis()) / 1000 + pageExpire);
+            }
+            Long ttl = byteRedisTemplate.getExpire(key);
+            if (ttl != null && ttl > expire) {
+                expire = ttl;
+            }
+            byteRedisTemplate.opsForValue().increment(key);
+            byteRedisTemplate.expire(key, Duration.ofSeconds(expire));
+        } catch (Exception e) {
+            log.warn("递增作者分页版本失败，作者:{}，错误:", authorId, e);
+        }
+    }
+
+    /**
+     * 从数据库加载推文主体，并将已激活的推文写入缓存
+     */
+    private Map<Long, byte[]> loadBodies(Collection<Long> chirperIds) {
+        Map<Long, byte[]> bodyMap = new HashMap<>();
+        Map<String, byte[]> cacheable = new HashMap<>();
+        chirperMapper.selectList(new LambdaQueryWrapper<Chirper>().in(Chirper::getId, chirperIds))
+                .forEach(chirper -> {
+                    byte[] body = this.serialize(chirperConvertor.pojoToDto(chirper));
+                    bodyMap.put(chirper.getId(), body);
+                    if (Objects.equals(ChirperStatus.ACTIVE.getStatus(), chirper.getStatus())) {
+                        chirperBodyNearCache.put(chirper.getId(), body);
+                        cacheable.put(this.getBodyKey(chirper.getId()), body);
+                    }
+                });
+        if (!cacheable.isEmpty()) {
+            Duration expire = Duration.ofSeconds(bodyExpire);
+            byteRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, byte[]> ops = (RedisOperations<String, byte[]>) operations;
+                    cacheable.forEach((key, body) -> ops.opsForValue().set(key, body, expire));
+                    return null;
+                }
+            });
+        }
+        return bodyMap;
+    }
+
+    /**
+     * 将计数覆盖到推文主体上，缓存中没有计数的推文从数据库加载并写回缓存
+     */
+    private void overlayCounters(Map<Long, ChirperDto> chirperDtoMap) {
+        if (chirperDtoMap.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(chirperDtoMap.keySet());
+        List<Object> hashes = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                ids.forEach(id -> ops.opsForHash().entries(getCounterKey(id)));
+                return null;
+            }
+        });
+        List<Long> miss = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Map<?, ?> counters = (Map<?, ?>) hashes.get(i);
+            if (CollectionUtils.isEmpty(counters)) {
+                miss.add(ids.get(i));
+                continue;
+            }
+            ChirperDto chirperDto = chirperDtoMap.get(ids.get(i));
+            for (ChirperCounter counter : ChirperCounter.values()) {
+                Object value = counters.get(counter.getField());
+                counter.set(chirperDto, value instanceof Number number ? number.intValue() : 0);
+            }
+        }
+        if (!miss.isEmpty()) {
+            Map<String, Map<String, Object>> loaded = new HashMap<>();
+            //热门推文的部分计数仍在分片中，需加上尚未合并的部分
+            Map<Long, Map<ChirperCounter, Long>> unfolded = hotCounterService.getUnfolded(miss);
+            chirperMapper.selectList(new LambdaQueryWrapper<Chirper>()
+                            .select(Chirper::getId, Chirper::getViewCount, Chirper::getLikeCount,
+                                    Chirper::getForwardCount, Chirper::getQuoteCount, Chirper::getReplyCount,
+                                    Chirper::getUniqueViewCount)
+                            .in(Chirper::getId, miss))
+                    .forEach(chirper -> {
+                        ChirperDto chirperDto = chirperDtoMap.get(chirper.getId());
+                        Map<String, Object> counters = new HashMap<>();
+                        Map<ChirperCounter, Long> pending = unfolded.getOrDefault(chirper.getId(), Map.of());
+                        for (ChirperCounter counter : ChirperCounter.values()) {
+                            int value = counter.get(chirper) + pending.getOrDefault(counter, 0L).intValue();
+                            counter.set(chirperDto, value);
+                            counters.put(counter.getField(), value);
+                        }
+                        loaded.put(this.getCounterKey(chirper.getId()), counters);
+                    });
+            Duration expire = Duration.ofSeconds(counterExpire);
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                    loaded.forEach((key, counters) -> {
+                        ops.opsForHash().putAll(key, counters);
+                        ops.expire(key, expire);
+                    });
+                    return null;
+                }
+            });
+        }
+    }
+
+    private byte[] serialize(ChirperDto chirperDto) {
+        try {
+            return objectMapper.writeValueAsBytes(chirperDto);
+        } catch (IOException e) {
+            throw new ChirpException(Code.ERR_SYSTEM, "推文序列化失败", e);
+        }
+    }
+
+    private ChirperDto deserialize(byte[] body) {
+        try {
+            return objectMapper.readValue(body, ChirperDto.class);
+        } catch (IOException e) {
+            throw new ChirpException(Code.ERR_SYSTEM, "推文反序列化失败", e);
+        }
+    }
+
+    private String getBodyKey(Long chirperId) {
+        return STR."\{CacheKey.CHIRPER_BODY_BOUND_KEY.getKey()}:\{chirperId}";
+    }
+
+    private String getCounterKey(Long chirperId) {
+        return STR."\{CacheKey.CHIRPER_COUNTER_BOUND_KEY.getKey()}:\{chirperId}";
+    }
+
+    private String getAuthorVersionKey(Long authorId) {
+        return STR."\{CacheKey.CHIRPER_PAGE_AUTHOR_BOUND_KEY.getKey()}:\{authorId}";
+    }
+}
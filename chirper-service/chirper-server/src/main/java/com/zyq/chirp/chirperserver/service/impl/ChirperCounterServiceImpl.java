@@ -0,0 +1,496 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.github.rholder.retry.RetryException;
+import com.zyq.chirp.chirperserver.domain.enums.CacheKey;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperCounter;
+import com.zyq.chirp.chirperserver.domain.pojo.CounterFlush;
+import com.zyq.chirp.chirperserver.mapper.CounterFlushMapper;
+import com.zyq.chirp.chirperserver.service.ChirperCacheService;
+import com.zyq.chirp.chirperserver.service.ChirperCounterService;
+import com.zyq.chirp.chirperserver.service.HotCounterService;
+import com.zyq.chirp.chirperserver.service.HotRankService;
+import com.zyq.chirp.common.mq.model.Action;
+import com.zyq.chirp.common.util.RetryUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.CollectionUtils;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 推文计数累加服务实现类
+ * 每个计数类型一张推文ID到LongAdder的表，LongAdder内部按线程分散到多个单元，同一推文的并发累加互不阻塞；
+ * 写入数据库时整表换出，每列按batchSize条生成一条CASE WHEN更新。
+ * 计数变化在进入内存前先HINCRBY到本实例的Redis交接区，同一脚本中记录每个分区已记入的最大偏移量，
+ * 重平衡或偏移量提交失败后重复投递的消息不会再次记入；
+ * 写入数据库前由脚本将一批计数从交接区原子地改名为"~批次id:类型:推文id"暂存，再在一个事务中插入批次记录并更新计数，最后删除暂存字段，
+ * 写入前后崩溃或写入失败时暂存字段在下一轮重新写入，已写入过的批次因主键冲突而跳过，计数不会丢失也不会重复累加；
+ * 实例重启时将交接区中剩余的计数重新载入内存，
+ * 实例存活期间定时续期交接区的归属，重启后标识变化的实例遗留的交接区在归属过期后由其他实例写入数据库
+ */
+@Service
+@Slf4j
+public class ChirperCounterServiceImpl implements ChirperCounterService {
+    private static final String STAGED_PREFIX = "~";
+    /**
+     * 按分区跳过已记入交接区的消息，ARGV[1]为计数类型，之后每个分区依次为分区号、消息数，
+     * 以及每条消息的偏移量、字段与计数变化，返回每个分区此前已记入的最大偏移量
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> ADD_SCRIPT = new DefaultRedisScript<>("""
+            local result = {}
+            local i = 2
+            while i <= #ARGV do
+                local field = ARGV[1] .. ':' .. ARGV[i]
+                local count = tonumber(ARGV[i + 1])
+                local applied = tonumber(redis.call('HGET', KEYS[2], field) or '-1')
+                local max = applied
+                local maxOffset = nil
+                for j = i + 2, i + 1 + count * 3, 3 do
+                    local offset = tonumber(ARGV[j])
+                    if offset > applied then
+                        if tonumber(ARGV[j + 2]) ~= 0 then
+                            redis.call('HINCRBY', KEYS[1], ARGV[j + 1], ARGV[j + 2])
+                        end
+                        if offset > max then
+                            max = offset
+                            maxOffset = ARGV[j]
+                        end
+                    end
+                end
+                if maxOffset then
+                    redis.call('HSET', KEYS[2], field, maxOffset)
+                end
+                table.insert(result, applied)
+                i = i + 2 + count * 3
+            end
+            return result
+            """, List.class);
+    /**
+     * 将一批计数从交接区扣除并暂存为"~批次id:字段"，ARGV[1]为批次id，其余依次为字段与计数，扣为0的字段直接删除
+     */
+    private static final DefaultRedisScript<Long> STAGE_SCRIPT = new DefaultRedisScript<>("""
+            for i = 2, #ARGV, 2 do
+                local value = redis.call('HINCRBY', KEYS[1], ARGV[i], -tonumber(ARGV[i + 1]))
+                if value == 0 then
+                    redis.call('HDEL', KEYS[1], ARGV[i])
+                end
+                redis.call('HSET', KEYS[1], '~' .. ARGV[1] .. ':' .. ARGV[i], ARGV[i + 1])
+            end
+            return 0
+            """, Long.class);
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicInteger pendingKeys = new AtomicInteger();
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+    private volatile Map<ChirperCounter, ConcurrentHashMap<Long, LongAdder>> cells = this.newCells();
+    @Resource
+    HotCounterService hotCounterService;
+    @Resource
+    RedisTemplate<String, Object> redisTemplate;
+    @Resource
+    ChirperCacheService chirperCacheService;
+    @Resource
+    HotRankService hotRankService;
+    @Resource
+    CounterFlushMapper counterFlushMapper;
+    @Resource
+    TransactionTemplate transactionTemplate;
+    @Value("${default-config.counter.instance}")
+    String instance;
+    @Value("${default-config.counter.max-keys}")
+    Integer maxKeys;
+    @Value("${default-config.counter.batch-size}")
+    Integer batchSize;
+    @Value("${default-config.counter.owner-timeout}")
+    Long ownerTimeout;
+    @Value("${default-config.counter.marker-retention}")
+    Long markerRetention;
+
+    /**
+     * 取得本实例交接区的归属，载入上次退出时交接区中尚未写入数据库的计数
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            redisTemplate.opsForSet().add(CacheKey.COUNTER_INSTANCES_KEY.getKey(), instance);
+            this.acquireOwner();
+            //暂存的计数在下一轮写入时重新写入，不载入内存
+            Map<ChirperCounter, Map<Long, Long>> pending = this.parse(redisTemplate.opsForHash().entries(this.getPendingKey()));
+            if (pending.isEmpty()) {
+                return;
+            }
+            pending.forEach(this::accumulate);
+            log.info("载入交接区中未写入的计数{}条", pending.values().stream().mapToInt(Map::size).sum());
+        } catch (Exception e) {
+            log.error("载入交接区计数失败，将在下次启动时重试，错误:", e);
+        }
+    }
+
+    /**
+     * 退出前写入内存中的计数，交接区已清空时放弃归属，否则等待重启或由其他实例接管
+     */
+    @PreDestroy
+    public void destroy() {
+        this.flush();
+        try {
+            if (redisTemplate.opsForHash().size(this.getPendingKey()) == 0) {
+                redisTemplate.opsForSet().remove(CacheKey.COUNTER_INSTANCES_KEY.getKey(), instance);
+                redisTemplate.execute(RELEASE_SCRIPT, redisTemplate.getValueSerializer(), new GenericToStringSerializer<>(Long.class),
+                        List.of(this.getOwnerKey(instance)), instance);
+            }
+        } catch (Exception e) {
+            log.warn("放弃交接区归属失败，归属将自然过期，错误:", e);
+        }
+    }
+
+    /**
+     * 续期本实例的归属，并接管归属已过期的实例遗留的交接区，
+     * 接管期间由接管方持有该实例的归属，同一交接区同时只会被一个实例处理
+     */
+    @Scheduled(fixedDelayString = "${default-config.counter.claim-interval}")
+    public void claim() {
+        try {
+            redisTemplate.opsForValue().set(this.getOwnerKey(instance), instance, Duration.ofMillis(ownerTimeout));
+            Set<Object> instances = redisTemplate.opsForSet().members(CacheKey.COUNTER_INSTANCES_KEY.getKey());
+            if (CollectionUtils.isEmpty(instances)) {
+                return;
+            }
+            String token = STR."claim:\{instance}";
+            for (Object member : instances) {
+                String other = String.valueOf(member);
+                if (instance.equals(other)
+                        || !Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(this.getOwnerKey(other), token, Duration.ofMillis(ownerTimeout)))) {
+                    continue;
+                }
+                try {
+                    this.takeOver(other);
+                } finally {
+                    redisTemplate.execute(RELEASE_SCRIPT, redisTemplate.getValueSerializer(), new GenericToStringSerializer<>(Long.class),
+                            List.of(this.getOwnerKey(other)), token);
+                }
+            }
+        } catch (Exception e) {
+            log.error("接管遗留的计数交接区失败，错误:", e);
+        }
+        try {
+            counterFlushMapper.delete(new LambdaQueryWrapper<CounterFlush>()
+                    .lt(CounterFlush::getCreateTime, new Timestamp(System.currentTimeMillis() - Duration.ofHours(markerRetention).toMillis())));
+        } catch (Exception e) {
+            log.warn("清理计数批次记录失败，错误:", e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void add(ChirperCounter counter, List<Action<Long, Long>> actions, List<Integer> partitions, List<Long> offsets) {
+        if (CollectionUtils.isEmpty(actions)) {
+            return;
+        }
+        //同一分区内的消息按偏移量有序
+        Map<Integer, List<Integer>> partitionIndexes = new LinkedHashMap<>();
+        for (int i = 0; i < actions.size(); i++) {
+            partitionIndexes.computeIfAbsent(partitions.get(i), partition -> new ArrayList<>()).add(i);
+        }
+        List<String> args = new ArrayList<>(actions.size() * 3 + partitionIndexes.size() * 2 + 1);
+        args.add(counter.name());
+        partitionIndexes.forEach((partition, indexes) -> {
+            args.add(String.valueOf(partition));
+            args.add(String.valueOf(indexes.size()));
+            indexes.forEach(i -> {
+                args.add(String.valueOf(offsets.get(i)));
+                args.add(this.getField(counter, actions.get(i).getTarget()));
+                args.add(String.valueOf(Action.getIncCount(List.of(actions.get(i)))));
+            });
+        });
+        //交接区写入失败时抛出异常，消息不会被确认
+        List<Object> applied = redisTemplate.execute(ADD_SCRIPT, new StringRedisSerializer(), new GenericToStringSerializer<>(Long.class),
+                List.of(this.getPendingKey(), CacheKey.COUNTER_OFFSET_KEY.getKey()), args.toArray());
+        Map<Long, Long> deltas = new HashMap<>();
+        int skipped = 0;
+        int p = 0;
+        for (List<Integer> indexes : partitionIndexes.values()) {
+            long watermark = Long.parseLong(String.valueOf(applied.get(p++)));
+            for (Integer i : indexes) {
+                if (offsets.get(i) <= watermark) {
+                    skipped++;
+                    continue;
+                }
+                deltas.merge(actions.get(i).getTarget(), (long) Action.getIncCount(List.of(actions.get(i))), Long::sum);
+            }
+        }
+        if (skipped > 0) {
+            log.info("跳过重复投递的{}消息{}条", counter.getColumn(), skipped);
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+        if (deltas.isEmpty()) {
+            return;
+        }
+        this.accumulate(counter, deltas);
+        if (pendingKeys.get() >= maxKeys) {
+            Thread.ofVirtual().start(this::flush);
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${default-config.counter.flush-interval}")
+    public void flush() {
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            //先重新写入上一轮遗留的暂存计数
+            Set<Long> flushed = this.recover(this.getPendingKey());
+            Map<ChirperCounter, ConcurrentHashMap<Long, LongAdder>> drained;
+            //换出时等待正在进行的累加完成，换出后的表不会再被修改
+            lock.writeLock().lock();
+            try {
+                drained = cells;
+                cells = this.newCells();
+                pendingKeys.set(0);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            drained.forEach((counter, counterCells) -> {
+                Map<Long, Long> deltas = new HashMap<>();
+                counterCells.forEach((chirperId, adder) -> {
+                    long sum = adder.sum();
+                    if (sum != 0) {
+                        deltas.put(chirperId, sum);
+                    }
+                });
+                List<Long> chirperIds = new ArrayList<>(deltas.keySet());
+                for (int i = 0; i < chirperIds.size(); i += batchSize) {
+                    Map<Long, Long> chunk = new HashMap<>();
+                    chirperIds.subList(i, Math.min(i + batchSize, chirperIds.size()))
+                            .forEach(chirperId -> chunk.put(chirperId, deltas.get(chirperId)));
+                    if (this.write(counter, chunk, this.getPendingKey())) {
+                        flushed.addAll(chunk.keySet());
+                    }
+                }
+            });
+            hotRankService.refresh(flushed);
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    /**
+     * 将已退出实例交接区中暂存与未写入的计数写入数据库，写入失败时保留剩余的计数等待下次接管
+     */
+    private void takeOver(String other) {
+        String pendingKey = this.getPendingKey(other);
+        Set<Long> flushed = this.recover(pendingKey);
+        Map<ChirperCounter, Map<Long, Long>> pending = this.parse(redisTemplate.opsForHash().entries(pendingKey));
+        for (Map.Entry<ChirperCounter, Map<Long, Long>> entry : pending.entrySet()) {
+            List<Long> chirperIds = new ArrayList<>(entry.getValue().keySet());
+            for (int i = 0; i < chirperIds.size(); i += batchSize) {
+                Map<Long, Long> chunk = new HashMap<>();
+                chirperIds.subList(i, Math.min(i + batchSize, chirperIds.size()))
+                        .forEach(chirperId -> chunk.put(chirperId, entry.getValue().get(chirperId)));
+                if (!this.write(entry.getKey(), chunk, pendingKey)) {
+                    hotRankService.refresh(flushed);
+                    return;
+                }
+                flushed.addAll(chunk.keySet());
+            }
+        }
+        hotRankService.refresh(flushed);
+        if (redisTemplate.opsForHash().size(pendingKey) == 0) {
+            redisTemplate.delete(pendingKey);
+            redisTemplate.opsForSet().remove(CacheKey.COUNTER_INSTANCES_KEY.getKey(), other);
+        }
+        log.info("接管实例{}交接区中未写入的计数{}条", other, pending.values().stream().mapToInt(Map::size).sum());
+    }
+
+    /**
+     * 取得本实例交接区的归属，交接区正在被其他实例接管时等待接管完成
+     */
+    private void acquireOwner() throws InterruptedException {
+        String ownerKey = this.getOwnerKey(instance);
+        while (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(ownerKey, instance, Duration.ofMillis(ownerTimeout)))
+                && !instance.equals(redisTemplate.opsForValue().get(ownerKey))) {
+            log.info("交接区正在被其他实例接管，等待接管完成");
+            Thread.sleep(1000);
+        }
+        redisTemplate.opsForValue().set(ownerKey, instance, Duration.ofMillis(ownerTimeout));
+    }
+
+    private Map<ChirperCounter, Map<Long, Long>> parse(Map<Object, Object> entries) {
+        Map<ChirperCounter, Map<Long, Long>> parsed = new EnumMap<>(ChirperCounter.class);
+        entries.forEach((field, value) -> {
+            if (String.valueOf(field).startsWith(STAGED_PREFIX)) {
+                return;
+            }
+            String[] parts = String.valueOf(field).split(":");
+            long delta = Long.parseLong(String.valueOf(value));
+            if (delta != 0) {
+                parsed.computeIfAbsent(ChirperCounter.valueOf(parts[0]), counter -> new HashMap<>())
+                        .put(Long.valueOf(parts[1]), delta);
+            }
+        });
+        return parsed;
+    }
+
+    /**
+     * 将一批计数从交接区暂存后写入数据库
+     * @param pendingKey 计数所在的交接区
+     * @return 是否写入成功，失败的计数留在暂存字段中等待下一轮重新写入
+     */
+    private boolean write(ChirperCounter counter, Map<Long, Long> chunk, String pendingKey) {
+        long batchId = IdWorker.getId();
+        List<String> args = new ArrayList<>(chunk.size() * 2 + 1);
+        args.add(String.valueOf(batchId));
+        chunk.forEach((chirperId, delta) -> {
+            args.add(this.getField(counter, chirperId));
+            args.add(String.valueOf(delta));
+        });
+        try {
+            redisTemplate.execute(STAGE_SCRIPT, new StringRedisSerializer(), new GenericToStringSerializer<>(Long.class),
+                    List.of(pendingKey), args.toArray());
+        } catch (Exception e) {
+            //暂存失败时计数仍在交接区中，放回内存等待下次写入
+            log.error("暂存{}失败，等待下次写入，推文:{}，错误:", counter.getColumn(), chunk.keySet(), e);
+            if (pendingKey.equals(this.getPendingKey())) {
+                this.accumulate(counter, chunk);
+            }
+            return false;
+        }
+        return this.apply(counter, batchId, chunk, pendingKey);
+    }
+
+    /**
+     * 重新写入交接区中遗留的暂存计数
+     * @return 写入成功的推文
+     */
+    private Set<Long> recover(String pendingKey) {
+        Map<Long, Map<ChirperCounter, Map<Long, Long>>> batches = new HashMap<>();
+        redisTemplate.opsForHash().entries(pendingKey).forEach((field, value) -> {
+            String name = String.valueOf(field);
+            if (!name.startsWith(STAGED_PREFIX)) {
+                return;
+            }
+            String[] parts = name.substring(STAGED_PREFIX.length()).split(":");
+            batches.computeIfAbsent(Long.valueOf(parts[0]), batchId -> new EnumMap<>(ChirperCounter.class))
+                    .computeIfAbsent(ChirperCounter.valueOf(parts[1]), counter -> new HashMap<>())
+                    .put(Long.valueOf(parts[2]), Long.parseLong(String.valueOf(value)));
+        });
+        Set<Long> flushed = new HashSet<>();
+        if (!batches.isEmpty()) {
+            log.info("重新写入遗留的计数批次:{}", batches.keySet());
+            batches.forEach((batchId, counters) -> counters.forEach((counter, chunk) -> {
+                if (this.apply(counter, batchId, chunk, pendingKey)) {
+                    flushed.addAll(chunk.keySet());
+                }
+            }));
+        }
+        return flushed;
+    }
+
+    /**
+     * 在一个事务中插入批次记录并更新计数，成功或批次已写入过时删除暂存字段并同步缓存
+     * @return 是否写入成功
+     */
+    private boolean apply(ChirperCounter counter, Long batchId, Map<Long, Long> chunk, String pendingKey) {
+        Boolean[] applied = {false};
+        try {
+            RetryUtil.doDBRetry(() -> applied[0] = transactionTemplate.execute(status -> {
+                try {
+                    counterFlushMapper.insert(new CounterFlush(batchId, new Timestamp(System.currentTimeMillis())));
+                } catch (DuplicateKeyException e) {
+                    return false;
+                }
+                hotCounterService.increment(counter, chunk);
+                return true;
+            }));
+        } catch (ExecutionException e) {
+            log.error("修改{}时发生无法成功的错误，丢弃计数，批次:{}，推文:{}，错误:", counter.getColumn(), batchId, chunk, e);
+            this.deleteStaged(counter, batchId, chunk, pendingKey);
+            return false;
+        } catch (RetryException e) {
+            log.error("修改{}失败，等待下一轮重新写入，批次:{}，推文:{}，错误:", counter.getColumn(), batchId, chunk.keySet(), e);
+            return false;
+        }
+        this.deleteStaged(counter, batchId, chunk, pendingKey);
+        if (Boolean.TRUE.equals(applied[0])) {
+            chunk.forEach((chirperId, delta) -> chirperCacheService.incrementCounter(chirperId, counter, delta));
+        }
+        return true;
+    }
+
+    /**
+     * 删除暂存字段，删除失败时下一轮因批次已写入而跳过
+     */
+    private void deleteStaged(ChirperCounter counter, Long batchId, Map<Long, Long> chunk, String pendingKey) {
+        try {
+            redisTemplate.opsForHash().delete(pendingKey, chunk.keySet().stream()
+                    .map(chirperId -> STR."\{STAGED_PREFIX}\{batchId}:\{this.getField(counter, chirperId)}")
+                    .toArray());
+        } catch (Exception e) {
+            log.error("删除暂存计数失败，批次:{}，错误:", batchId, e);
+        }
+    }
+
+    private void accumulate(ChirperCounter counter, Map<Long, Long> deltas) {
+        lock.readLock().lock();
+        try {
+            ConcurrentHashMap<Long, LongAdder> counterCells = cells.get(counter);
+            deltas.forEach((chirperId, delta) -> counterCells.computeIfAbsent(chirperId, id -> {
+                pendingKeys.incrementAndGet();
+                return new LongAdder();
+            }).add(delta));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<ChirperCounter, ConcurrentHashMap<Long, LongAdder>> newCells() {
+        Map<ChirperCounter, ConcurrentHashMap<Long, LongAdder>> newCells = new EnumMap<>(ChirperCounter.class);
+        for (ChirperCounter counter : ChirperCounter.values()) {
+            newCells.put(counter, new ConcurrentHashMap<>());
+        }
+        return newCells;
+    }
+
+    private String getPendingKey() {
+        return this.getPendingKey(instance);
+    }
+
+    private String getPendingKey(String instance) {
+        return STR."\{CacheKey.COUNTER_PENDING_BOUND_KEY.getKey()}:\{instance}";
+    }
+
+    private String getOwnerKey(String instance) {
+        return STR."\{CacheKey.COUNTER_OWNER_BOUND_KEY.getKey()}:\{instance}";
+    }
+
+    private String getField(ChirperCounter counter, Long chirperId) {
+        return STR."\{counter.name()}:\{chirperId}";
+    }
+}
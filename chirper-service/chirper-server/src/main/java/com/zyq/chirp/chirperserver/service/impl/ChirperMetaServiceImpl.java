@@ -0,0 +1,281 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperType;
+import com.zyq.chirp.chirperserver.domain.pojo.Chirper;
+import com.zyq.chirp.chirperserver.mapper.ChirperMapper;
+import com.zyq.chirp.chirperserver.service.ChirperMetaService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 推文元数据索引服务实现类
+ * 使用堆外的开放寻址哈希表，每条记录固定32字节：id(8) 作者(8) 社区(8) 类型(1) 状态(1) 填充(6)。
+ * id为0表示空槽位，状态为-1表示已移除，索引本身不为每条记录创建对象。
+ * 启动时从数据库预热，其他实例新发布的推文在首次未命中时从数据库加载，
+ * 其他实例上的状态变化与删除由推文变化事件同步到每个实例的索引
+ */
+@Service
+@Slf4j
+public class ChirperMetaServiceImpl implements ChirperMetaService {
+    private static final int RECORD_SIZE = 32;
+    private static final int AUTHOR_OFFSET = 8;
+    private static final int COMMUNITY_OFFSET = 16;
+    private static final int TYPE_OFFSET = 24;
+    private static final int STATUS_OFFSET = 25;
+    private static final byte REMOVED = -1;
+    /**
+     * 单个ByteBuffer最大可容纳的记录数
+     */
+    private static final int MAX_CAPACITY = 1 << 26;
+    private static final double LOAD_FACTOR = 0.75;
+    private static final ChirperType[] TYPES = ChirperType.values();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    @Resource
+    ChirperMapper chirperMapper;
+    @Value("${default-config.meta-index.initial-capacity}")
+    Integer initialCapacity;
+    @Value("${default-config.meta-index.warm-batch}")
+    Integer warmBatch;
+    private ByteBuffer table;
+    private int capacity;
+    private int size;
+
+    @PostConstruct
+    public void init() {
+        capacity = this.tableSizeFor(initialCapacity);
+        table = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+        Thread.ofVirtual().start(this::warm);
+    }
+
+    @Override
+    public void put(Collection<ChirperDto> chirperDtos) {
+        if (CollectionUtils.isEmpty(chirperDtos)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            chirperDtos.forEach(chirperDto -> this.write(chirperDto.getId(), chirperDto.getAuthorId(),
+                    chirperDto.getCommunityId(), chirperDto.getType(), chirperDto.getStatus(), true));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateStatus(Collection<Long> chirperIds, Integer expect, int status) {
+        this.setStatus(chirperIds, expect, (byte) status);
+    }
+
+    @Override
+    public void remove(Collection<Long> chirperIds) {
+        this.setStatus(chirperIds, null, REMOVED);
+    }
+
+    @Override
+    public List<ChirperDto> getBasicInfo(Collection<Long> chirperIds) {
+        List<ChirperDto> chirperDtos = new ArrayList<>(chirperIds.size());
+        List<Long> missing = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Long chirperId : chirperIds) {
+                int slot = this.find(chirperId);
+                if (slot < 0) {
+                    missing.add(chirperId);
+                    continue;
+                }
+                int offset = slot * RECORD_SIZE;
+                byte status = table.get(offset + STATUS_OFFSET);
+                if (status == REMOVED) {
+                    continue;
+                }
+                ChirperDto chirperDto = new ChirperDto();
+                chirperDto.setId(chirperId);
+                chirperDto.setAuthorId(table.getLong(offset + AUTHOR_OFFSET));
+                long communityId = table.getLong(offset + COMMUNITY_OFFSET);
+                chirperDto.setCommunityId(communityId == 0 ? null : communityId);
+                byte type = table.get(offset + TYPE_OFFSET);
+                chirperDto.setType(type == 0 ? null : TYPES[type - 1].name());
+                chirperDto.setStatus((int) status);
+                chirperDtos.add(chirperDto);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (!missing.isEmpty()) {
+            List<Chirper> chirpers = chirperMapper.selectList(new LambdaQueryWrapper<Chirper>()
+                    .select(Chirper::getId, Chirper::getAuthorId, Chirper::getType, Chirper::getCommunityId, Chirper::getStatus)
+                    .in(Chirper::getId, missing));
+            this.load(chirpers, true);
+            chirpers.forEach(chirper -> {
+                ChirperDto chirperDto = new ChirperDto();
+                chirperDto.setId(chirper.getId());
+                chirperDto.setAuthorId(chirper.getAuthorId());
+                chirperDto.setCommunityId(chirper.getCommunityId());
+                chirperDto.setType(chirper.getType());
+                chirperDto.setStatus(chirper.getStatus());
+                chirperDtos.add(chirperDto);
+            });
+        }
+        return chirperDtos;
+    }
+
+    /**
+     * 按id键集分页从数据库预热索引，已由发布或状态变化写入的记录不会被覆盖
+     */
+    private void warm() {
+        long start = System.currentTimeMillis();
+        long lastId = 0L;
+        long count = 0;
+        try {
+            while (true) {
+                List<Chirper> chirpers = chirperMapper.selectPage(new Page<>(1, warmBatch, false),
+                        new LambdaQueryWrapper<Chirper>()
+                                .select(Chirper::getId, Chirper::getAuthorId, Chirper::getType,
+                                        Chirper::getCommunityId, Chirper::getStatus)
+                                .gt(Chirper::getId, lastId)
+                                .orderByAsc(Chirper::getId)).getRecords();
+                if (chirpers.isEmpty()) {
+                    break;
+                }
+                this.load(chirpers, false);
+                count += chirpers.size();
+                lastId = chirpers.getLast().getId();
+            }
+            log.info("推文元数据索引预热完成，共{}条，耗时{}ms", count, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("推文元数据索引预热失败，已加载{}条，未加载的推文将在查询时从数据库读取，错误:", count, e);
+        }
+    }
+
+    private void load(List<Chirper> chirpers, boolean overwrite) {
+        if (chirpers.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            chirpers.forEach(chirper -> this.write(chirper.getId(), chirper.getAuthorId(),
+                    chirper.getCommunityId(), chirper.getType(), chirper.getStatus(), overwrite));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void setStatus(Collection<Long> chirperIds, Integer expect, byte status) {
+        if (CollectionUtils.isEmpty(chirperIds)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Long chirperId : chirperIds) {
+                int slot = this.find(chirperId);
+                int offset = slot * RECORD_SIZE + STATUS_OFFSET;
+                if (slot >= 0 && (expect == null || table.get(offset) == expect)) {
+                    table.put(offset, status);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 写入一条记录，调用方需持有写锁
+     * @param overwrite 记录已存在时是否覆盖
+     */
+    private void write(Long id, Long authorId, Long communityId, String type, Integer status, boolean overwrite) {
+        if (id == null || id == 0 || authorId == null || status == null) {
+            return;
+        }
+        if (size + 1 > capacity * LOAD_FACTOR && capacity < MAX_CAPACITY) {
+            this.resize(capacity << 1);
+        }
+        int slot = this.probe(table, capacity, id);
+        int offset = slot * RECORD_SIZE;
+        boolean exists = table.getLong(offset) == id;
+        if (exists && !overwrite) {
+            return;
+        }
+        if (!exists) {
+            //达到容量上限后不再接收新记录，未命中的推文由数据库查询
+            if (size + 1 >= capacity) {
+                log.warn("推文元数据索引已满，容量:{}", capacity);
+                return;
+            }
+            size++;
+        }
+        ChirperType chirperType = ChirperType.find(type);
+        table.putLong(offset, id);
+        table.putLong(offset + AUTHOR_OFFSET, authorId);
+        table.putLong(offset + COMMUNITY_OFFSET, communityId == null ? 0 : communityId);
+        table.put(offset + TYPE_OFFSET, chirperType == null ? 0 : (byte) (chirperType.ordinal() + 1));
+        table.put(offset + STATUS_OFFSET, status.byteValue());
+    }
+
+    /**
+     * 扩容并重新散列，已移除的记录不再保留，调用方需持有写锁
+     */
+    private void resize(int newCapacity) {
+        ByteBuffer newTable = ByteBuffer.allocateDirect(newCapacity * RECORD_SIZE);
+        int newSize = 0;
+        for (int i = 0; i < capacity; i++) {
+            int offset = i * RECORD_SIZE;
+            long id = table.getLong(offset);
+            if (id == 0 || table.get(offset + STATUS_OFFSET) == REMOVED) {
+                continue;
+            }
+            int newOffset = this.probe(newTable, newCapacity, id) * RECORD_SIZE;
+            newTable.put(newOffset, table, offset, RECORD_SIZE);
+            newSize++;
+        }
+        log.info("推文元数据索引扩容，{} -> {}", capacity, newCapacity);
+        table = newTable;
+        capacity = newCapacity;
+        size = newSize;
+    }
+
+    /**
+     * 查找记录所在的槽位，调用方需持有读锁或写锁
+     * @return 槽位，不存在时返回-1
+     */
+    private int find(Long id) {
+        if (id == null || id == 0) {
+            return -1;
+        }
+        int slot = this.probe(table, capacity, id);
+        return table.getLong(slot * RECORD_SIZE) == id ? slot : -1;
+    }
+
+    /**
+     * 线性探测，返回id所在的槽位或应写入的空槽位
+     */
+    private int probe(ByteBuffer buffer, int capacity, long id) {
+        int mask = capacity - 1;
+        long hash = id * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (true) {
+            long key = buffer.getLong(slot * RECORD_SIZE);
+            if (key == 0 || key == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int tableSizeFor(int expected) {
+        int n = Integer.highestOneBit(Math.max(expected, 16) - 1) << 1;
+        return Math.min(n, MAX_CAPACITY);
+    }
+}
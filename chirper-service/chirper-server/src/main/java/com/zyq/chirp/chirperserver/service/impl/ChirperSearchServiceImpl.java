@@ -0,0 +1,317 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirpclient.dto.ChirperQueryDto;
+import com.zyq.chirp.chirperserver.convertor.ChirperConvertor;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperStatus;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperType;
+import com.zyq.chirp.chirperserver.domain.pojo.Chirper;
+import com.zyq.chirp.chirperserver.mapper.ChirperMapper;
+import com.zyq.chirp.chirperserver.service.ChirperCacheService;
+import com.zyq.chirp.chirperserver.service.ChirperSearchService;
+import com.zyq.chirp.chirperserver.util.TextEntityUtil;
+import com.zyq.chirp.common.domain.enums.OrderEnum;
+import com.zyq.chirp.common.domain.exception.ChirpException;
+import com.zyq.chirp.common.domain.model.Code;
+import com.zyq.chirp.common.util.StringUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.cjk.CJKAnalyzer;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 推文全文检索服务实现类
+ * 使用Lucene在本地磁盘维护倒排索引，正文使用CJK分词，话题与被提及用户作为独立的精确匹配字段。
+ * 只索引已激活的非转发推文，任一实例上的状态变化都由推文变化事件刷新每个实例的索引，
+ * 尚未收到事件的推文会在水合时按状态过滤
+ */
+@Service
+@Slf4j
+public class ChirperSearchServiceImpl implements ChirperSearchService {
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_TEXT = "text";
+    private static final String FIELD_TAG = "tag";
+    private static final String FIELD_MENTION = "mention";
+    private static final String FIELD_AUTHOR = "authorId";
+    private static final String FIELD_COMMUNITY = "communityId";
+    private static final String FIELD_REPLY_TO = "inReplyToChirperId";
+    private static final String FIELD_TYPE = "type";
+    private static final String FIELD_MEDIA = "media";
+    private static final String FIELD_CREATE_TIME = "createTime";
+    private static final String FIELD_INDEX_TIME = "indexTime";
+    private final Analyzer analyzer = new CJKAnalyzer();
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    /**
+     * 重建期间增量刷新过的推文，重建写完后按最新状态再刷新一次，避免被重建读到的旧状态覆盖
+     */
+    private final Set<Long> refreshedWhileRebuilding = ConcurrentHashMap.newKeySet();
+    @Resource
+    ChirperMapper chirperMapper;
+    @Resource
+    ChirperConvertor chirperConvertor;
+    @Resource
+    ChirperCacheService chirperCacheService;
+    @Resource
+    MeterRegistry meterRegistry;
+    @Value("${default-config.search.index-dir}")
+    String indexDir;
+    @Value("${default-config.search.rebuild-batch}")
+    Integer rebuildBatch;
+    private IndexWriter indexWriter;
+    private SearcherManager searcherManager;
+    private Timer searchTimer;
+
+    @PostConstruct
+    public void init() throws IOException {
+        FSDirectory directory = FSDirectory.open(Path.of(indexDir));
+        IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        indexWriter = new IndexWriter(directory, config);
+        searcherManager = new SearcherManager(indexWriter, null);
+        searchTimer = Timer.builder("chirper.search.latency")
+                .description("推文全文检索耗时")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        //本地索引为空时从数据库重建
+        if (indexWriter.getDocStats().numDocs == 0) {
+            Thread.ofVirtual().start(this::rebuild);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        searcherManager.close();
+        indexWriter.close();
+    }
+
+    @Override
+    public List<Long> search(ChirperQueryDto chirperQueryDto) {
+        Query query = this.buildQuery(chirperQueryDto);
+        if (query == null) {
+            return List.of();
+        }
+        int pageSize = chirperQueryDto.getPageSize();
+        int start = (chirperQueryDto.getPage() - 1) * pageSize;
+        Sort sort = OrderEnum.isAsc(chirperQueryDto.getOrder())
+                ? new Sort(new SortField(FIELD_CREATE_TIME, SortField.Type.LONG))
+                : new Sort(SortField.FIELD_SCORE, new SortField(FIELD_CREATE_TIME, SortField.Type.LONG, true));
+        return searchTimer.record(() -> {
+            IndexSearcher searcher = null;
+            try {
+                searcher = searcherManager.acquire();
+                ScoreDoc[] scoreDocs = searcher.search(query, start + pageSize, sort).scoreDocs;
+                StoredFields storedFields = searcher.storedFields();
+                List<Long> ids = new ArrayList<>();
+                for (int i = start; i < scoreDocs.length; i++) {
+                    ids.add(Long.valueOf(storedFields.document(scoreDocs[i].doc).get(FIELD_ID)));
+                }
+                return ids;
+            } catch (IOException e) {
+                throw new ChirpException(Code.ERR_SYSTEM, "检索推文失败", e);
+            } finally {
+                this.release(searcher);
+            }
+        });
+    }
+
+    @Override
+    public void refresh(Collection<Long> chirperIds) {
+        if (CollectionUtils.isEmpty(chirperIds)) {
+            return;
+        }
+        if (rebuilding.get()) {
+            refreshedWhileRebuilding.addAll(chirperIds);
+        }
+        try {
+            Map<Long, ChirperDto> chirperDtoMap = chirperCacheService.getBodies(chirperIds);
+            for (Long chirperId : chirperIds) {
+                ChirperDto chirperDto = chirperDtoMap.get(chirperId);
+                if (chirperDto != null && this.isIndexable(chirperDto)) {
+                    indexWriter.updateDocument(new Term(FIELD_ID, chirperId.toString()), this.toDocument(chirperDto));
+                } else {
+                    indexWriter.deleteDocuments(new Term(FIELD_ID, chirperId.toString()));
+                }
+            }
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            log.error("更新推文索引失败，推文:{}，错误:", chirperIds, e);
+        }
+    }
+
+    @Override
+    public long rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return -1;
+        }
+        long count = 0;
+        try {
+            log.info("开始重建推文索引");
+            //不清空索引，逐条覆盖写入，重建期间检索结果保持完整，增量刷新也不会被清除
+            long start = System.currentTimeMillis();
+            long lastId = 0L;
+            while (true) {
+                //按id进行键集分页，避免深分页
+                List<Chirper> chirpers = chirperMapper.selectPage(new Page<>(1, rebuildBatch, false),
+                        new LambdaQueryWrapper<Chirper>()
+                                .select(Chirper::getId, Chirper::getAuthorId, Chirper::getCommunityId,
+                                        Chirper::getInReplyToChirperId, Chirper::getCreateTime, Chirper::getText,
+                                        Chirper::getType, Chirper::getMediaKeys, Chirper::getEntities, Chirper::getStatus)
+                                .eq(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus())
+                                .ne(Chirper::getType, ChirperType.FORWARD.name())
+                                .gt(Chirper::getId, lastId)
+                                .orderByAsc(Chirper::getId)).getRecords();
+                if (chirpers.isEmpty()) {
+                    break;
+                }
+                for (Chirper chirper : chirpers) {
+                    indexWriter.updateDocument(new Term(FIELD_ID, chirper.getId().toString()),
+                            this.toDocument(chirperConvertor.pojoToDto(chirper)));
+                }
+                count += chirpers.size();
+                lastId = chirpers.getLast().getId();
+            }
+            //重建开始后没有被写入过的文档对应的推文已不再处于激活状态
+            indexWriter.deleteDocuments(new BooleanQuery.Builder()
+                    .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST)
+                    .add(LongPoint.newRangeQuery(FIELD_INDEX_TIME, start, Long.MAX_VALUE), BooleanClause.Occur.MUST_NOT)
+                    .build());
+            this.refresh(List.copyOf(refreshedWhileRebuilding));
+            indexWriter.commit();
+            searcherManager.maybeRefresh();
+            log.info("推文索引重建完成，共{}条", count);
+            return count;
+        } catch (IOException e) {
+            throw new ChirpException(Code.ERR_SYSTEM, "重建推文索引失败", e);
+        } finally {
+            rebuilding.set(false);
+            refreshedWhileRebuilding.clear();
+        }
+    }
+
+    /**
+     * 定时提交索引，两次提交之间的修改已通过近实时搜索可见
+     */
+    @Scheduled(fixedDelayString = "${default-config.search.commit-interval}")
+    public void commit() {
+        try {
+            if (indexWriter.hasUncommittedChanges()) {
+                indexWriter.commit();
+            }
+        } catch (IOException e) {
+            log.error("提交推文索引失败，错误:", e);
+        }
+    }
+
+    private Query buildQuery(ChirperQueryDto chirperQueryDto) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        StringBuilder text = new StringBuilder();
+        boolean hasTerm = false;
+        for (String word : chirperQueryDto.getKeyword().trim().split("\\s+")) {
+            if (word.length() > 1 && word.startsWith("#")) {
+                builder.add(new TermQuery(new Term(FIELD_TAG, word.substring(1).toLowerCase())), BooleanClause.Occur.MUST);
+                hasTerm = true;
+            } else if (word.length() > 1 && word.startsWith("@")) {
+                builder.add(new TermQuery(new Term(FIELD_MENTION, word.substring(1))), BooleanClause.Occur.MUST);
+                hasTerm = true;
+            } else {
+                text.append(word).append(' ');
+            }
+        }
+        if (!StringUtil.isBlank(text.toString())) {
+            Query textQuery = new QueryBuilder(analyzer).createBooleanQuery(FIELD_TEXT, text.toString(), BooleanClause.Occur.MUST);
+            if (textQuery != null) {
+                builder.add(textQuery, BooleanClause.Occur.MUST);
+                hasTerm = true;
+            }
+        }
+        if (!hasTerm) {
+            return null;
+        }
+        if (chirperQueryDto.getChirperId() != null) {
+            builder.add(new TermQuery(new Term(FIELD_REPLY_TO, chirperQueryDto.getChirperId().toString())), BooleanClause.Occur.FILTER);
+        }
+        if (!CollectionUtils.isEmpty(chirperQueryDto.getUserIds())) {
+            List<BytesRef> authors = chirperQueryDto.getUserIds().stream().map(id -> new BytesRef(id.toString())).toList();
+            builder.add(new TermInSetQuery(FIELD_AUTHOR, authors), BooleanClause.Occur.FILTER);
+        }
+        if (ChirperType.find(chirperQueryDto.getType()) != null) {
+            builder.add(new TermQuery(new Term(FIELD_TYPE, chirperQueryDto.getType())), BooleanClause.Occur.FILTER);
+        }
+        if (Boolean.TRUE.equals(chirperQueryDto.getMedia())) {
+            builder.add(new TermQuery(new Term(FIELD_MEDIA, Boolean.TRUE.toString())), BooleanClause.Occur.FILTER);
+        }
+        if (chirperQueryDto.getCommunityId() != null) {
+            builder.add(new TermQuery(new Term(FIELD_COMMUNITY, chirperQueryDto.getCommunityId().toString())), BooleanClause.Occur.FILTER);
+        }
+        return builder.build();
+    }
+
+    private Document toDocument(ChirperDto chirperDto) {
+        Document document = new Document();
+        document.add(new StringField(FIELD_ID, chirperDto.getId().toString(), Field.Store.YES));
+        document.add(new StringField(FIELD_AUTHOR, chirperDto.getAuthorId().toString(), Field.Store.NO));
+        document.add(new StringField(FIELD_TYPE, chirperDto.getType(), Field.Store.NO));
+        document.add(new StringField(FIELD_MEDIA, String.valueOf(!CollectionUtils.isEmpty(chirperDto.getMediaKeys())), Field.Store.NO));
+        if (chirperDto.getCommunityId() != null) {
+            document.add(new StringField(FIELD_COMMUNITY, chirperDto.getCommunityId().toString(), Field.Store.NO));
+        }
+        if (chirperDto.getInReplyToChirperId() != null) {
+            document.add(new StringField(FIELD_REPLY_TO, chirperDto.getInReplyToChirperId().toString(), Field.Store.NO));
+        }
+        long createTime = chirperDto.getCreateTime() != null ? chirperDto.getCreateTime().getTime() : 0L;
+        document.add(new NumericDocValuesField(FIELD_CREATE_TIME, createTime));
+        document.add(new LongPoint(FIELD_INDEX_TIME, System.currentTimeMillis()));
+        String text = chirperDto.getText();
+        if (!StringUtil.isBlank(text)) {
+            document.add(new TextField(FIELD_TEXT, text, Field.Store.NO));
+            TextEntityUtil.getTags(chirperDto).stream()
+                    .map(tag -> tag.substring(1).toLowerCase())
+                    .distinct()
+                    .forEach(tag -> document.add(new StringField(FIELD_TAG, tag, Field.Store.NO)));
+            TextEntityUtil.getMentioned(chirperDto).stream()
+                    .distinct()
+                    .forEach(username -> document.add(new StringField(FIELD_MENTION, username, Field.Store.NO)));
+        }
+        return document;
+    }
+
+    private boolean isIndexable(ChirperDto chirperDto) {
+        return Objects.equals(ChirperStatus.ACTIVE.getStatus(), chirperDto.getStatus())
+                && !ChirperType.FORWARD.name().equals(chirperDto.getType());
+    }
+
+    private void release(IndexSearcher searcher) {
+        if (searcher == null) {
+            return;
+        }
+        try {
+            searcherManager.release(searcher);
+        } catch (IOException e) {
+            log.warn("释放索引搜索器失败，错误:", e);
+        }
+    }
+}
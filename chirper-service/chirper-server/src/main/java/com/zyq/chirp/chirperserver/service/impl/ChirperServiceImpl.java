@@ -7,34 +7,51 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.github.rholder.retry.RetryException;
 import com.zyq.chirp.adviceclient.dto.NotificationDto;
+import com.zyq.chirp.chirpclient.dto.ChirperChangedDto;
 import com.zyq.chirp.chirpclient.dto.ChirperDto;
 import com.zyq.chirp.chirpclient.dto.ChirperQueryDto;
-import com.zyq.chirp.chirperserver.aspect.ParseMentioned;
+import com.zyq.chirp.chirpclient.dto.CursorPageDto;
+import com.zyq.chirp.chirpclient.dto.ThreadNodeDto;
 import com.zyq.chirp.chirperserver.aspect.Statistic;
+import com.zyq.chirp.chirperserver.context.LookupContext;
 import com.zyq.chirp.chirperserver.convertor.ChirperConvertor;
 import com.zyq.chirp.chirperserver.domain.enums.*;
 import com.zyq.chirp.chirperserver.domain.pojo.Chirper;
 import com.zyq.chirp.chirperserver.domain.pojo.Like;
 import com.zyq.chirp.chirperserver.mapper.ChirperMapper;
+import com.zyq.chirp.chirperserver.service.ChirperCacheService;
+import com.zyq.chirp.chirperserver.service.ChirperCounterService;
+import com.zyq.chirp.chirperserver.service.ChirperMetaService;
+import com.zyq.chirp.chirperserver.service.ChirperSearchService;
 import com.zyq.chirp.chirperserver.service.ChirperService;
+import com.zyq.chirp.chirperserver.service.ChirperWriteService;
+import com.zyq.chirp.chirperserver.service.DelayPublishService;
+import com.zyq.chirp.chirperserver.service.HotRankService;
+import com.zyq.chirp.chirperserver.service.InteractionService;
 import com.zyq.chirp.chirperserver.service.LikeService;
+import com.zyq.chirp.chirperserver.service.ReplyPermissionService;
+import com.zyq.chirp.chirperserver.service.TrendService;
+import com.zyq.chirp.chirperserver.util.CursorUtil;
+import com.zyq.chirp.chirperserver.util.TextEntityUtil;
 import com.zyq.chirp.common.domain.enums.ApproveEnum;
 import com.zyq.chirp.common.domain.enums.OrderEnum;
 import com.zyq.chirp.common.domain.exception.ChirpException;
 import com.zyq.chirp.common.domain.model.Code;
 import com.zyq.chirp.common.mq.enums.DefaultOperation;
 import com.zyq.chirp.common.mq.model.Action;
+import com.zyq.chirp.common.mq.model.Message;
+import com.zyq.chirp.common.mq.model.OutboxMessage;
+import com.zyq.chirp.common.mq.service.OutboxService;
 import com.zyq.chirp.common.util.PageUtil;
 import com.zyq.chirp.common.util.RetryUtil;
 import com.zyq.chirp.common.util.StringUtil;
-import com.zyq.chirp.common.util.TextUtil;
 import com.zyq.chirp.communityclient.client.CommunityClient;
 import com.zyq.chirp.communityclient.dto.CommunityDto;
 import com.zyq.chirp.mediaclient.client.MediaClient;
 import com.zyq.chirp.mediaclient.dto.MediaDto;
 import com.zyq.chirp.userclient.client.UserClient;
 import com.zyq.chirp.userclient.dto.UserDto;
-import com.zyq.chirp.userclient.enums.RelationType;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import net.sf.jsqlparser.parser.feature.Feature;
@@ -44,17 +61,16 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.http.ResponseEntity;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
 
 import java.sql.Timestamp;
-import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static net.sf.jsqlparser.parser.feature.Feature.delete;
@@ -73,12 +89,16 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
     @Resource
     UserClient userClient;
 
-    @Resource
-    KafkaTemplate<String, Object> kafkaTemplate;
     @Resource
     RedisTemplate<String, Object> redisTemplate;
     @Value("${default-config.page-size}")
     Integer pageSize;
+    @Value("${default-config.thread.max-nodes}")
+    Integer threadMaxNodes;
+    @Value("${default-config.thread.max-depth}")
+    Integer threadMaxDepth;
+    @Value("${default-config.thread.children-size}")
+    Integer threadChildrenSize;
     @Value("${mq.topic.site-message.forward}")
     String FORWARD_MSG_TOPIC;
     @Value("${mq.topic.site-message.reply}")
@@ -99,15 +119,51 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
     String QUOTE_INCREMENT_COUNT_TOPIC;
     @Value("${mq.topic.chirper.quote.record}")
     String QUOTE_RECORD_TOPIC;
+    @Value("${mq.topic.chirper.published}")
+    String PUBLISHED_TOPIC;
+    @Value("${mq.topic.chirper.delay}")
+    String DELAY_TOPIC;
+    @Value("${mq.topic.chirper.changed}")
+    String CHANGED_TOPIC;
     Integer expire = 6;
     @Resource
     CommunityClient communityClient;
+    @Resource
+    ChirperCacheService chirperCacheService;
+    @Resource
+    HotRankService hotRankService;
+    @Resource
+    ChirperSearchService chirperSearchService;
+    @Resource
+    ChirperMetaService chirperMetaService;
+    @Resource
+    TrendService trendService;
+    @Resource
+    ChirperCounterService chirperCounterService;
+    @Resource
+    InteractionService interactionService;
+    @Resource
+    DelayPublishService delayPublishService;
+    @Resource
+    ChirperWriteService chirperWriteService;
+    @Resource
+    OutboxService outboxService;
+    @Resource
+    TransactionTemplate transactionTemplate;
+    @Resource
+    ReplyPermissionService replyPermissionService;
+
+    @PostConstruct
+    public void init() {
+        delayPublishService.onDue(this::activeDelay);
+    }
 
     @Override
-    @ParseMentioned
     public ChirperDto save(ChirperDto chirperDto) {
         if (chirperDto.getCommunityId() != null) {
-            Map<String, CommunityDto> communityDtoMap = communityClient.fetchMap(List.of(Map.entry(chirperDto.getCommunityId(), chirperDto.getAuthorId()))).getBody();
+            Map<String, CommunityDto> communityDtoMap = LookupContext.current()
+                    .getCommunity(List.of(Map.entry(chirperDto.getCommunityId(), chirperDto.getAuthorId())),
+                            entries -> communityClient.fetchMap(entries).getBody());
             assert communityDtoMap.get(StringUtil.combineKey(chirperDto.getCommunityId(), chirperDto.getAuthorId())).getPostable();
         }
         chirperDto = this.getWithPrecondition(chirperDto);
@@ -115,21 +171,24 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
         chirper.setId(IdWorker.getId());
         chirper.setConversationId(chirper.getId());
         chirper.setType(ChirperType.ORIGINAL.toString());
-        chirperMapper.insert(chirper);
         chirperDto = chirperConvertor.pojoToDto(chirper);
-        if (ChirperStatus.DELAY.getStatus() == chirperDto.getStatus()) {
-            this.postDelay(chirperDto);
+        chirperWriteService.insert(chirper, this.getPublishMessages(chirperDto));
+        chirperMetaService.put(List.of(chirperDto));
+        chirperCacheService.touchAuthor(chirperDto.getAuthorId(), this.getDelayActiveTime(chirperDto));
+        //延时发布的推文由发件箱消息登记调度
+        if (ChirperStatus.DELAY.getStatus() != chirperDto.getStatus()) {
+            hotRankService.add(List.of(chirperDto));
         }
         return chirperDto;
     }
 
 
     @Override
-    @Statistic(id = "#chirperDto.inReplyToChirperId", key = CacheKey.VIEW_COUNT_BOUND_KEY)
-    @ParseMentioned
+    @Statistic(id = "#chirperDto.inReplyToChirperId", viewer = "#chirperDto.authorId", key = CacheKey.VIEW_COUNT_BOUND_KEY)
     public ChirperDto reply(ChirperDto chirperDto) {
         Chirper target = chirperMapper.selectOne(new LambdaQueryWrapper<Chirper>()
-                .select(Chirper::getId, Chirper::getAuthorId, Chirper::getReplyRange)
+                .select(Chirper::getId, Chirper::getAuthorId, Chirper::getConversationId, Chirper::getCommunityId,
+                        Chirper::getReplyRange, Chirper::getText, Chirper::getEntities)
                 .eq(Chirper::getId, chirperDto.getInReplyToChirperId())
                 .eq(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus()));
         ChirperDto targetDto = chirperConvertor.pojoToDto(target);
@@ -141,7 +200,9 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
             throw new ChirpException(Code.ERR_BUSINESS, STR."回复失败，该推文仅允许作者\{ReplyRangeEnums.getHint(chirperDto.getReplyRange())}的回复");
         }
         if (chirperDto.getCommunityId() != null) {
-            Map<String, CommunityDto> communityDtoMap = communityClient.fetchMap(List.of(Map.entry(chirperDto.getCommunityId(), chirperDto.getAuthorId()))).getBody();
+            Map<String, CommunityDto> communityDtoMap = LookupContext.current()
+                    .getCommunity(List.of(Map.entry(chirperDto.getCommunityId(), chirperDto.getAuthorId())),
+                            entries -> communityClient.fetchMap(entries).getBody());
             assert communityDtoMap.get(StringUtil.combineKey(chirperDto.getCommunityId(), chirperDto.getAuthorId())).getPostable();
         }
 
@@ -149,131 +210,60 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
         Chirper chirper = chirperConvertor.dtoToPojo(chirperDto);
         chirper.setId(IdWorker.getId());
         chirper.setType(ChirperType.REPLY.toString());
-        boolean isInsert = chirperMapper.addReply(chirper) > 0;
-        if (!isInsert) {
-            throw new ChirpException(Code.ERR_BUSINESS, "回复失败");
-        }
+        chirper.setConversationId(target.getConversationId());
+        chirper.setCommunityId(target.getCommunityId());
+        chirper.setInReplyToUserId(target.getAuthorId());
         chirperDto = chirperConvertor.pojoToDto(chirper);
-        if (ChirperStatus.DELAY.getStatus() == chirperDto.getStatus()) {
-            this.postDelay(chirperDto);
-        }
+        List<OutboxMessage> messages = this.getPublishMessages(chirperDto);
         //评论数量+1
         Action<Long, Long> action = new Action<>(ActionTypeEnums.REPLY.getAction(),
                 DefaultOperation.INCREMENT.getOperation(),
                 chirper.getAuthorId(),
                 chirper.getInReplyToChirperId(),
                 System.currentTimeMillis());
-        kafkaTemplate.send(REPLY_INCREMENT_COUNT_TOPIC, action);
+        messages.add(outboxService.build(REPLY_INCREMENT_COUNT_TOPIC, null, action));
         //通知推送
         NotificationDto message = NotificationDto.builder()
                 .sonEntity(chirperDto.getInReplyToChirperId().toString())
                 .entity(chirper.getId().toString())
                 .senderId(chirper.getAuthorId())
                 .build();
-        kafkaTemplate.send(REPLY_MSG_TOPIC, message);
+        messages.add(outboxService.build(REPLY_MSG_TOPIC, null, message));
+        chirperWriteService.insert(chirper, messages);
+        chirperMetaService.put(List.of(chirperDto));
+        chirperCacheService.touchAuthor(chirperDto.getAuthorId(), this.getDelayActiveTime(chirperDto));
+        //延时发布的推文由发件箱消息登记调度
+        if (ChirperStatus.DELAY.getStatus() != chirperDto.getStatus()) {
+            hotRankService.add(List.of(chirperDto));
+        }
         return chirperDto;
     }
 
     @Override
-    public void modifyReplyCount(List<Action<Long, Long>> actions) {
-        Map<Long, List<Action<Long, Long>>> collect = actions.stream()
-                .collect(Collectors.groupingBy(Action::getTarget));
-        collect.forEach((chirperId, actionList) -> {
-            int count = Action.getIncCount(actionList);
-            try {
-                RetryUtil.doDBRetry(() -> chirperMapper.update(null, new LambdaUpdateWrapper<Chirper>()
-                        .eq(Chirper::getId, chirperId)
-                        .setSql(STR."reply_count=reply_count+\{count}")));
-            } catch (Exception e) {
-                if (e instanceof ExecutionException) {
-                    log.error("修改评论数时发生无法成功的错误，推文id:{}", chirperId, e);
-                } else {
-                    log.error("修改评论数失败,推文id:{}，数量:{},错误:", chirperId, count, e);
-                    for (Action<Long, Long> action : actionList) {
-                        log.warn("尝试重发:{}", action);
-                        kafkaTemplate.send(REPLY_INCREMENT_COUNT_TOPIC, action);
-                    }
-                }
-
-            }
-
-        });
+    public void modifyReplyCount(List<Action<Long, Long>> actions, List<Integer> partitions, List<Long> offsets) {
+        chirperCounterService.add(ChirperCounter.REPLY, actions, partitions, offsets);
     }
 
     @Override
     public Map<Long, ChirperDto> fetchReference(Collection<Long> ids) {
-        return chirperMapper.selectList(new LambdaQueryWrapper<Chirper>().in(Chirper::getId, ids))
-                .stream()
-                .map(chirper -> chirperConvertor.pojoToDto(chirper))
-                .collect(Collectors.toMap(ChirperDto::getId, Function.identity()));
+        return chirperCacheService.getBodies(ids);
     }
 
     @Override
     public List<ChirperDto> getInteractionInfo(List<ChirperDto> chirperDtos, Long userId) {
-        try {
-            List<Long> ids = chirperDtos.stream().map(ChirperDto::getId).toList();
-            if (!ids.isEmpty()) {
-                //获取被引用推文的互动信息---
-                Map<Integer, ChirperDto> refers = new HashMap<>();
-                for (int i = 0; i < chirperDtos.size(); i++) {
-                    if (ChirperType.FORWARD.name().equals(chirperDtos.get(i).getType()) &&
-                            chirperDtos.get(i).getReferenced() != null) {
-                        refers.put(i, chirperDtos.get(i).getReferenced());
-                    }
-                }
-                if (!refers.isEmpty()) {
-                    this.getInteractionInfo(new ArrayList<>(refers.values()), userId).forEach(chirperDto -> {
-                        refers.forEach((k, v) -> {
-                            if (chirperDto.getId().equals(v.getId())) {
-                                chirperDtos.get(k).setReferenced(chirperDto);
-                            }
-                        });
-                    });
-                }
-                var ref = new Object() {
-                    Map<Long, Long> likeMap = new HashMap<>();
-                    Map<Long, Map.Entry<Long, String>> reference = new HashMap<>();
-                };
-
-                int threadSize = 2;
-                CountDownLatch latch = new CountDownLatch(threadSize);
-                Thread.ofVirtual().start(() -> {
-                    ref.likeMap = likeService.getLikeInfo(ids, userId)
-                            .stream().collect(Collectors.toMap(Function.identity(), Function.identity()));
-                    latch.countDown();
-                });
-                Thread.ofVirtual().start(() -> {
-                    ref.reference = chirperMapper.selectList(new LambdaQueryWrapper<Chirper>()
-                                    .select(Chirper::getId, Chirper::getReferencedChirperId, Chirper::getType)
-                                    .eq(Chirper::getAuthorId, userId)
-                                    .eq(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus())
-                                    .in(Chirper::getReferencedChirperId, ids))
-                            .stream()
-                            .collect(Collectors.toMap(Chirper::getId, chirper ->
-                                    Map.entry(chirper.getReferencedChirperId(), chirper.getType())));
-                    latch.countDown();
-                });
-                getInteractionStatus(chirperDtos, userId);
-                latch.await();
-                chirperDtos.forEach(chirperDto -> {
-                    Long id = chirperDto.getId();
-                    boolean isLike = ref.likeMap.get(id) != null;
-                    boolean isForward = ref.reference.containsValue(Map.entry(id, ChirperType.FORWARD.name()));
-                    boolean isQuote = ref.reference.containsValue(Map.entry(id, ChirperType.QUOTE.name()));
-                    chirperDto.setIsLike(isLike);
-                    chirperDto.setIsForward(isForward);
-                    chirperDto.setIsQuote(isQuote);
-                });
-            }
-            return chirperDtos;
-        } catch (InterruptedException e) {
-            throw new ChirpException(Code.ERR_SYSTEM, "获取推文信息失败");
+        //转发推文展示的是被转发的推文，将各层被转发推文一并展开，只读取一次互动位图
+        List<ChirperDto> targets = this.flatten(chirperDtos,
+                chirperDto -> ChirperType.FORWARD.name().equals(chirperDto.getType()));
+        if (!targets.isEmpty()) {
+            getInteractionStatus(targets, userId);
+            interactionService.fill(targets, userId);
         }
+        return chirperDtos;
     }
 
 
     @Override
-    @Statistic(id = "#chirperId",
+    @Statistic(id = "#chirperId", viewer = "#userId",
             key = {CacheKey.VIEW_COUNT_BOUND_KEY})
     //防止被重复调用
     @Cacheable(cacheNames = "chirper:forward", key = "#chirperId+':'+#userId")
@@ -286,24 +276,32 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
                 .createTime(new Timestamp(System.currentTimeMillis()))
                 .status(ChirperStatus.ACTIVE.getStatus())
                 .build();
-        //是否更新都会返回1，该方法返回值恒>=1
-        boolean insert = chirperMapper.insert(chirper) > 0;
+        //转发计数与通知随转发记录在同一个事务中写入发件箱
+        boolean insert = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            //是否更新都会返回1，该方法返回值恒>=1
+            if (chirperMapper.insert(chirper) <= 0) {
+                return false;
+            }
+            Action<Long, Long> action = new Action<>(
+                    ActionTypeEnums.FORWARD.getAction(),
+                    DefaultOperation.INCREMENT.getOperation(),
+                    userId,
+                    chirperId,
+                    System.currentTimeMillis()
+            );
+            NotificationDto messageDto = NotificationDto.builder()
+                    .sonEntity(String.valueOf(chirperId))
+                    .senderId(userId)
+                    .build();
+            outboxService.save(List.of(
+                    outboxService.build(FORWARD_INCREMENT_COUNT_TOPIC, null, action),
+                    outboxService.build(FORWARD_MSG_TOPIC, null, messageDto)));
+            return true;
+        }));
         if (insert) {
-            Thread.ofVirtual().start(() -> {
-                Action<Long, Long> action = new Action<>(
-                        ActionTypeEnums.FORWARD.getAction(),
-                        DefaultOperation.INCREMENT.getOperation(),
-                        userId,
-                        chirperId,
-                        System.currentTimeMillis()
-                );
-                kafkaTemplate.send(FORWARD_INCREMENT_COUNT_TOPIC, action);
-                NotificationDto messageDto = NotificationDto.builder()
-                        .sonEntity(String.valueOf(chirperId))
-                        .senderId(userId)
-                        .build();
-                kafkaTemplate.send(FORWARD_MSG_TOPIC, messageDto);
-            });
+            chirperMetaService.put(List.of(chirperConvertor.pojoToDto(chirper)));
+            chirperCacheService.touchAuthor(userId, null);
+            interactionService.add(InteractionType.FORWARD, userId, List.of(chirperId));
         } else {
             throw new ChirpException(Code.ERR_SYSTEM, "系统错误，转发失败");
         }
@@ -314,12 +312,20 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
     @CacheEvict(cacheNames = "chirper:forward", key = "#chirperId+':'+#userId")
     public boolean cancelForward(Long chirperId, Long userId) {
         long currentTimeMillis = System.currentTimeMillis();
-        boolean delete = chirperMapper.delete(new LambdaQueryWrapper<Chirper>()
+        LambdaQueryWrapper<Chirper> wrapper = new LambdaQueryWrapper<Chirper>()
                 .eq(Chirper::getReferencedChirperId, chirperId)
                 .eq(Chirper::getAuthorId, userId)
                 .eq(Chirper::getType, ChirperType.FORWARD.name())
-                .ne(Chirper::getCreateTime, new Timestamp(currentTimeMillis))) > 0;
-        if (delete) {
+                .ne(Chirper::getCreateTime, new Timestamp(currentTimeMillis));
+        List<Long> forwardIds = chirperMapper.selectList(wrapper.select(Chirper::getId))
+                .stream()
+                .map(Chirper::getId)
+                .toList();
+        //转发计数的扣减随删除在同一个事务中写入发件箱
+        boolean delete = !forwardIds.isEmpty() && Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (chirperMapper.deleteBatchIds(forwardIds) <= 0) {
+                return false;
+            }
             Action<Long, Long> action = new Action<>(
                     ActionTypeEnums.FORWARD.getAction(),
                     DefaultOperation.DECREMENT.getOperation(),
@@ -327,53 +333,39 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
                     chirperId,
                     currentTimeMillis
             );
-            kafkaTemplate.send(FORWARD_INCREMENT_COUNT_TOPIC, action);
+            outboxService.save(List.of(
+                    outboxService.build(FORWARD_INCREMENT_COUNT_TOPIC, null, action),
+                    outboxService.build(CHANGED_TOPIC, null, this.getChangedMessage(forwardIds, null, null))));
+            return true;
+        }));
+        if (delete) {
+            chirperCacheService.evict(forwardIds);
+            chirperMetaService.remove(forwardIds);
+            interactionService.remove(InteractionType.FORWARD, userId, List.of(chirperId));
         }
         return delete;
     }
 
 
     @Override
-    public void modifyForwardCount(List<Action<Long, Long>> actions) {
-        Map<Long, List<Action<Long, Long>>> collect = actions.stream()
-                .collect(Collectors.groupingBy(Action::getTarget));
-        collect.forEach((chirperId, actionList) -> {
-            int count = Action.getIncCount(actionList);
-            try {
-                RetryUtil.doDBRetry(() -> chirperMapper.update(null, new LambdaUpdateWrapper<Chirper>()
-                        .eq(Chirper::getId, chirperId)
-                        .setSql(STR."forward_count=forward_count+\{count}")));
-            } catch (ExecutionException e) {
-                log.error("修改转发数时发生无法成功的错误，推文id:{}", chirperId, e);
-            } catch (Exception e) {
-                log.error("修改转发数失败,推文id:{}，数量:{},错误:", chirperId, count, e);
-                for (Action<Long, Long> action : actionList) {
-                    log.warn("尝试重发:{}", action);
-                    kafkaTemplate.send(FORWARD_INCREMENT_COUNT_TOPIC, action);
-                }
-            }
-        });
+    public void modifyForwardCount(List<Action<Long, Long>> actions, List<Integer> partitions, List<Long> offsets) {
+        chirperCounterService.add(ChirperCounter.FORWARD, actions, partitions, offsets);
     }
 
 
     @Override
-    @Transactional
-    @Statistic(id = "#chirperDto.referencedChirperId", key = CacheKey.VIEW_COUNT_BOUND_KEY)
-    @ParseMentioned
+    @Statistic(id = "#chirperDto.referencedChirperId", viewer = "#chirperDto.authorId", key = CacheKey.VIEW_COUNT_BOUND_KEY)
     public ChirperDto quote(ChirperDto chirperDto) {
         chirperDto = this.getWithPrecondition(chirperDto);
         Chirper chirper = chirperConvertor.dtoToPojo(chirperDto);
         chirper.setId(IdWorker.getId());
         chirper.setConversationId(chirper.getId());
         chirper.setType(ChirperType.QUOTE.toString());
-        boolean isInsert = chirperMapper.addQuote(chirper) > 0;
-        if (!isInsert) {
+        if (chirperMetaService.getBasicInfo(List.of(chirper.getReferencedChirperId())).isEmpty()) {
             throw new ChirpException(Code.ERR_BUSINESS, "发布失败");
         }
         chirperDto = chirperConvertor.pojoToDto(chirper);
-        if (ChirperStatus.DELAY.getStatus() == chirperDto.getStatus()) {
-            this.postDelay(chirperDto);
-        }
+        List<OutboxMessage> messages = this.getPublishMessages(chirperDto);
         Action<Long, Long> action = new Action<>(
                 ActionTypeEnums.QUOTE.getAction(),
                 DefaultOperation.INCREMENT.getOperation(),
@@ -381,52 +373,40 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
                 chirper.getReferencedChirperId(),
                 System.currentTimeMillis()
         );
-        kafkaTemplate.send(QUOTE_INCREMENT_COUNT_TOPIC, action);
+        messages.add(outboxService.build(QUOTE_INCREMENT_COUNT_TOPIC, null, action));
         NotificationDto messageDto = NotificationDto.builder()
                 .sonEntity(chirperDto.getReferencedChirperId().toString())
                 .entity(chirper.getId().toString())
                 .senderId(chirper.getAuthorId()).build();
-        kafkaTemplate.send(QUOTE_MSG_TOPIC, messageDto);
+        messages.add(outboxService.build(QUOTE_MSG_TOPIC, null, messageDto));
+        chirperWriteService.insert(chirper, messages);
+        chirperMetaService.put(List.of(chirperDto));
+        chirperCacheService.touchAuthor(chirperDto.getAuthorId(), this.getDelayActiveTime(chirperDto));
+        //延时发布的推文由发件箱消息登记调度
+        if (ChirperStatus.DELAY.getStatus() != chirperDto.getStatus()) {
+            hotRankService.add(List.of(chirperDto));
+            interactionService.add(InteractionType.QUOTE, chirper.getAuthorId(), List.of(chirper.getReferencedChirperId()));
+        }
         return chirperDto;
     }
 
     @Override
-    public void modifyQuoteCount(List<Action<Long, Long>> actions) {
-        Map<Long, List<Action<Long, Long>>> collect = actions.stream().collect(Collectors.groupingBy(Action::getTarget));
-        collect.forEach((chirperId, actionList) -> {
-            int count = Action.getIncCount(actionList);
-            try {
-                RetryUtil.doDBRetry(() -> chirperMapper.update(null, new LambdaUpdateWrapper<Chirper>()
-                        .eq(Chirper::getId, chirperId)
-                        .setSql(STR."quote_count=quote_count+\{count}")));
-            } catch (ExecutionException e) {
-                log.error("修改引用数时发生无法成功的错误，推文id:{}", chirperId, e);
-            } catch (RetryException e) {
-                log.error("修改引用数失败,推文id:{}，数量:{},错误:", chirperId, count, e);
-                for (Action<Long, Long> action : actionList) {
-                    log.warn("尝试重发:{}", action);
-                    kafkaTemplate.send(QUOTE_INCREMENT_COUNT_TOPIC, action);
-                }
-            }
-        });
+    public void modifyQuoteCount(List<Action<Long, Long>> actions, List<Integer> partitions, List<Long> offsets) {
+        chirperCounterService.add(ChirperCounter.QUOTE, actions, partitions, offsets);
     }
 
 
 
 
     @Override
-    @ParseMentioned
     public List<ChirperDto> getById(List<Long> chirperIds) {
         if (chirperIds == null || chirperIds.isEmpty()) {
             throw new ChirpException(Code.ERR_BUSINESS, "未提供id");
         }
-        Map<Long, ChirperDto> chirperDtoMap = chirperMapper.selectList(new LambdaQueryWrapper<Chirper>()
-                        .in(Chirper::getId, chirperIds)
-                        .eq(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus()))
+        //缓存按照给出的推文id顺序返回
+        Map<Long, ChirperDto> chirperDtoMap = chirperCacheService.getBodies(chirperIds).values()
                 .stream()
-                .map(chirper -> chirperConvertor.pojoToDto(chirper))
-                //按照给出的推文id顺序排序
-                .sorted(Comparator.comparing(chirperDto -> chirperIds.indexOf(chirperDto.getId())))
+                .filter(chirperDto -> ChirperStatus.ACTIVE.getStatus() == chirperDto.getStatus())
                 .collect(Collectors.toMap(ChirperDto::getId, Function.identity(), (k1, k2) -> k1, LinkedHashMap::new));
         Map<Long, Long> referMap = chirperDtoMap.values().stream()
                 .filter(chirperDto -> ChirperType.QUOTE.name().equals(chirperDto.getType()))
@@ -443,11 +423,82 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
     }
 
     @Override
-    @Cacheable(value = "chirper:page#4", key = "#chirperQueryDto.page+':'+#chirperQueryDto.chirperId+':'+#chirperQueryDto.userIds+':'+#chirperQueryDto.type+':'+#chirperQueryDto.media+':'+#chirperQueryDto.order")
     public List<ChirperDto> getPage(ChirperQueryDto chirperQueryDto) {
         chirperQueryDto.withDefault();
+        //热度排序优先读取热度排行，排行无法满足的查询条件仍由数据库排序
+        LinkedHashMap<Long, Double> hotScores = OrderEnum.HOT == OrderEnum.findAndDefault(chirperQueryDto.getOrder())
+                ? hotRankService.getPage(chirperQueryDto)
+                : null;
+        //分页id与查看者无关，所有查看者共享同一份缓存，刚发布过推文的查看者读取带版本的分页，其中包含自己延时发布的推文
+        List<Long> ids = hotScores != null
+                ? new ArrayList<>(hotScores.keySet())
+                : chirperCacheService.getPageIds(this.getPageKey(chirperQueryDto), chirperQueryDto.getCurrentUserId(),
+                authorId -> this.selectPageIds(chirperQueryDto, authorId));
+        Long currentUserId = chirperQueryDto.getCurrentUserId();
+        //转换为map类型，为下面获取被引用推文准备
+        Map<Long, ChirperDto> chirperDtoMap = chirperCacheService.getBodies(ids).values()
+                .stream()
+                .filter(chirperDto -> {
+                    //当作者为当前用户时，将延时发布的也查出
+                    if (currentUserId != null && currentUserId.equals(chirperDto.getAuthorId())
+                            && ChirperStatus.DELAY.getStatus() == chirperDto.getStatus()) {
+                        return true;
+                    }
+                    return ChirperStatus.ACTIVE.getStatus() == chirperDto.getStatus();
+                })
+                .collect(Collectors.toMap(ChirperDto::getId, Function.identity(), (k1, k2) -> k1, LinkedHashMap::new));
+        if (hotScores != null) {
+            chirperDtoMap.values().forEach(chirperDto -> chirperDto.setHotScore(hotScores.get(chirperDto.getId())));
+        }
+        //引用推文
+        Map<Long, Long> referMap = chirperDtoMap.values().stream().filter(chirperDto ->
+                        ChirperType.FORWARD.name().equals(chirperDto.getType())
+                                || ChirperType.QUOTE.name().equals(chirperDto.getType()))
+                .collect(Collectors.toMap(ChirperDto::getId, ChirperDto::getReferencedChirperId));
+        if (!referMap.isEmpty()) {
+            //被引用推文
+            Map<Long, ChirperDto> fetchReference = this.fetchReference(referMap.values());
+            referMap.forEach((k, v) -> {
+                ChirperDto refer = chirperDtoMap.get(k);
+                refer.setReferenced(fetchReference.get(v));
+                chirperDtoMap.put(k, refer);
+            });
+        }
+        return this.combine(chirperDtoMap.values());
+    }
+
+    /**
+     * 由与查看者无关的查询条件组成分页缓存的键
+     */
+    private String getPageKey(ChirperQueryDto chirperQueryDto) {
+        String userIds = chirperQueryDto.getUserIds() == null ? "" : chirperQueryDto.getUserIds()
+                .stream()
+                .sorted()
+                .map(String::valueOf)
+                .collect(Collectors.joining(","));
+        return STR."\{chirperQueryDto.getPage()}:\{chirperQueryDto.getPageSize()}:\{chirperQueryDto.getChirperId()}:\{userIds}:\{chirperQueryDto.getType()}:\{chirperQueryDto.getMedia()}:\{chirperQueryDto.getCommunityId()}:\{chirperQueryDto.getKeyword()}:\{chirperQueryDto.getOrder()}";
+    }
+
+    /**
+     * 查询分页推文id，共享的分页只包含已激活的推文，其他作者延时发布的推文不会占用分页位置
+     * @param authorId 同时查出该作者延时发布的推文，为空时只查询已激活的推文
+     */
+    private List<Long> selectPageIds(ChirperQueryDto chirperQueryDto, Long authorId) {
+        //关键词查询走全文索引
+        if (!StringUtil.isBlank(chirperQueryDto.getKeyword())) {
+            return chirperSearchService.search(chirperQueryDto);
+        }
         Page<Chirper> pageSelector = new Page<>(chirperQueryDto.getPage(), chirperQueryDto.getPageSize(), false);
-        LambdaQueryWrapper<Chirper> wrapper = new LambdaQueryWrapper<>();
+        //只查询id，推文主体从缓存获取
+        LambdaQueryWrapper<Chirper> wrapper = new LambdaQueryWrapper<Chirper>()
+                .select(Chirper::getId);
+        if (authorId == null) {
+            wrapper.eq(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus());
+        } else {
+            wrapper.and(condition -> condition.eq(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus())
+                    .or(delay -> delay.eq(Chirper::getStatus, ChirperStatus.DELAY.getStatus())
+                            .eq(Chirper::getAuthorId, authorId)));
+        }
         if (chirperQueryDto.getChirperId() != null) {
             wrapper.eq(Chirper::getInReplyToChirperId, chirperQueryDto.getChirperId());
         }
@@ -463,82 +514,152 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
         if (chirperQueryDto.getCommunityId() != null) {
             wrapper.eq(Chirper::getCommunityId, chirperQueryDto.getCommunityId());
         }
-        if (!StringUtil.isBlank(chirperQueryDto.getKeyword())) {
-            wrapper.like(Chirper::getText, chirperQueryDto.getKeyword());
-        }
         OrderEnum orderEnum = OrderEnum.findAndDefault(chirperQueryDto.getOrder());
         switch (orderEnum) {
             case ASC -> wrapper.orderByAsc(Chirper::getCreateTime);
             case DESC -> wrapper.orderByDesc(Chirper::getCreateTime);
             case HOT -> wrapper.orderByDesc(Chirper::getViewCount);
         }
-        //转换为map类型，为下面获取被引用推文准备
-        Map<Long, ChirperDto> chirperDtoMap = chirperMapper.selectPage(pageSelector, wrapper).getRecords()
+        return chirperMapper.selectPage(pageSelector, wrapper).getRecords()
                 .stream()
-                .filter(chirper -> {
-                    //当作者为当前用户时，将延时发布的也查出
-                    Long currentUserId = chirperQueryDto.getCurrentUserId();
-                    if (currentUserId != null) {
-                        if (currentUserId.equals(chirper.getAuthorId()) && ChirperStatus.DELETE.getStatus() != chirper.getStatus()) {
-                            return true;
-                        }
-                    }
-                    return ChirperStatus.ACTIVE.getStatus() == chirper.getStatus();
-                })
-                .map(chirper -> chirperConvertor.pojoToDto(chirper))
-                .collect(Collectors.toMap(ChirperDto::getId, Function.identity(), (k1, k2) -> k1, LinkedHashMap::new));
-        //引用推文
-        Map<Long, Long> referMap = chirperDtoMap.values().stream().filter(chirperDto ->
-                        ChirperType.FORWARD.name().equals(chirperDto.getType())
-                                || ChirperType.QUOTE.name().equals(chirperDto.getType()))
-                .collect(Collectors.toMap(ChirperDto::getId, ChirperDto::getReferencedChirperId));
-        if (!referMap.isEmpty()) {
-            //被引用推文
-            Map<Long, ChirperDto> fetchReference = this.fetchReference(referMap.values());
-            referMap.forEach((k, v) -> {
-                ChirperDto refer = chirperDtoMap.get(k);
-                refer.setReferenced(fetchReference.get(v));
-                chirperDtoMap.put(k, refer);
-            });
-        }
-        return this.combine(chirperDtoMap.values());
+                .map(Chirper::getId)
+                .toList();
     }
 
 
     @Override
-    @Cacheable(cacheNames = "chirper:like#2", key = "#userId+':'+#page")
-    public List<ChirperDto> getLikeRecordByUserId(Long userId, Integer page) {
-        List<Like> likeRecord = likeService.getLikeRecord(userId, page);
-        System.out.println(likeRecord);
-        if (!likeRecord.isEmpty()) {
-            List<Long> chirperIds = likeRecord.stream().map(Like::getChirperId).toList();
-            return this.getById(chirperIds);
+    public ThreadNodeDto getThread(Long chirperId, Long cursor) {
+        ChirperDto rootDto = chirperCacheService.getBodies(List.of(chirperId)).get(chirperId);
+        if (rootDto == null || ChirperStatus.ACTIVE.getStatus() != rootDto.getStatus()) {
+            throw new ChirpException(Code.ERR_BUSINESS, "推文不存在或已被删除");
+        }
+        long after = cursor != null ? Math.max(cursor, chirperId) : chirperId;
+        //从要展开的推文开始逐层读取回复结构，每层一次查询，每条推文只多读一条用于判断是否还有更多，
+        //对话中其他分支的回复再多也不会挤占该推文的回复；回复的id总是大于被回复的推文，游标对每一层同样适用
+        Map<Long, List<Long>> children = new HashMap<>();
+        Map<Long, List<Long>> shownChildren = new HashMap<>();
+        List<Long> shown = new ArrayList<>();
+        List<Long> frontier = List.of(chirperId);
+        for (int depth = 0; depth <= threadMaxDepth && !frontier.isEmpty(); depth++) {
+            //最后一层只用于判断上一层的推文是否还有回复，不返回
+            int limit = depth < threadMaxDepth ? threadChildrenSize + 1 : 1;
+            chirperMapper.selectReplies(frontier, after, limit).forEach(chirper ->
+                    children.computeIfAbsent(chirper.getInReplyToChirperId(), k -> new ArrayList<>()).add(chirper.getId()));
+            if (depth == threadMaxDepth) {
+                break;
+            }
+            List<Long> next = new ArrayList<>();
+            for (Long parentId : frontier) {
+                List<Long> replies = children.getOrDefault(parentId, List.of());
+                int size = Math.min(Math.min(replies.size(), threadChildrenSize), Math.max(threadMaxNodes - shown.size(), 0));
+                List<Long> part = replies.subList(0, size);
+                shownChildren.put(parentId, part);
+                shown.addAll(part);
+                next.addAll(part);
+            }
+            frontier = next;
         }
-        return List.of();
+        Map<Long, ChirperDto> chirperDtoMap = new HashMap<>(chirperCacheService.getBodies(shown));
+        chirperDtoMap.put(chirperId, rootDto);
+        this.combine(chirperDtoMap.values());
+        return this.buildThreadNode(chirperId, chirperDtoMap, children, shownChildren);
+    }
+
+    private ThreadNodeDto buildThreadNode(Long chirperId, Map<Long, ChirperDto> chirperDtoMap,
+                                          Map<Long, List<Long>> children, Map<Long, List<Long>> shownChildren) {
+        ChirperDto chirperDto = chirperDtoMap.get(chirperId);
+        List<Long> loaded = children.getOrDefault(chirperId, List.of());
+        List<Long> shown = shownChildren.getOrDefault(chirperId, List.of());
+        List<ThreadNodeDto> replies = shown.stream()
+                .filter(chirperDtoMap::containsKey)
+                .map(id -> this.buildThreadNode(id, chirperDtoMap, children, shownChildren))
+                .toList();
+        //读到的回复未全部返回
+        boolean hasMore = loaded.size() > shown.size();
+        return ThreadNodeDto.builder()
+                .chirper(chirperDto)
+                .replies(replies)
+                .cursor(shown.isEmpty() ? null : shown.getLast())
+                .hasMore(hasMore)
+                .build();
+    }
+
+    @Override
+    public CursorPageDto<ChirperDto> getLikeTimeline(Long userId, String cursor) {
+        Like after = null;
+        if (cursor != null) {
+            long[] position = CursorUtil.decode(cursor, 2);
+            after = new Like(position[1], userId, new Timestamp(position[0]));
+        }
+        //多取一条用于判断是否还有下一页
+        List<Like> likes = likeService.getLikeTimeline(userId, after, pageSize + 1);
+        boolean hasMore = likes.size() > pageSize;
+        List<Like> page = hasMore ? likes.subList(0, pageSize) : likes;
+        if (page.isEmpty()) {
+            return CursorPageDto.<ChirperDto>builder().records(List.of()).hasMore(false).build();
+        }
+        Like last = page.getLast();
+        return CursorPageDto.<ChirperDto>builder()
+                .records(this.getById(page.stream().map(Like::getChirperId).toList()))
+                .cursor(hasMore ? CursorUtil.encode(last.getCreateTime().getTime(), last.getChirperId()) : null)
+                .hasMore(hasMore)
+                .build();
     }
 
     @Override
     public void updateStatus(Long chirperId, ChirperStatus chirperStatus) {
         try {
-            chirperMapper.update(null, new LambdaUpdateWrapper<Chirper>()
-                    .set(Chirper::getStatus, chirperStatus.getStatus())
-                    .eq(Chirper::getId, chirperId));
-        } catch (Exception e) {
-            updateStatus(chirperId, chirperStatus);
-        }
+            RetryUtil.doDBRetry(() -> transactionTemplate.execute(status -> {
+                chirperMapper.update(null, new LambdaUpdateWrapper<Chirper>()
+                        .set(Chirper::getStatus, chirperStatus.getStatus())
+                        .eq(Chirper::getId, chirperId));
+                outboxService.save(CHANGED_TOPIC, null, this.getChangedMessage(List.of(chirperId), null, chirperStatus.getStatus()));
+                return null;
+            }));
+        } catch (ExecutionException | RetryException e) {
+            log.error("修改推文状态失败，推文=>{}，状态=>{}，错误=>", chirperId, chirperStatus, e);
+            throw new ChirpException(Code.ERR_SYSTEM, "修改推文状态失败", e);
+        }
+        this.afterStatusChanged(List.of(chirperId), null, chirperStatus.getStatus(), true);
     }
 
+    /**
+     * 状态修改提交后更新缓存、元数据、互动位图、排行与搜索索引，
+     * 每一步单独捕获异常，失败时由推文变化消息与各自的过期时间兜底，不影响已提交的修改
+     */
+    private void afterStatusChanged(Collection<Long> chirperIds, Integer expect, Integer status, boolean evictCache) {
+        if (evictCache) {
+            this.bestEffort("清除推文缓存", chirperIds, () -> chirperCacheService.evict(chirperIds));
+        }
+        this.bestEffort("更新推文元数据", chirperIds, () -> chirperMetaService.updateStatus(chirperIds, expect, status));
+        this.bestEffort("清除互动位图", chirperIds, () -> this.evictInteraction(chirperIds));
+        this.bestEffort("刷新热度排行", chirperIds, () -> hotRankService.refresh(chirperIds));
+        this.bestEffort("刷新搜索索引", chirperIds, () -> chirperSearchService.refresh(chirperIds));
+    }
 
-
+    private void bestEffort(String step, Collection<Long> chirperIds, Runnable runnable) {
+        try {
+            runnable.run();
+        } catch (Exception e) {
+            log.warn("{}失败，推文=>{}，错误=>", step, chirperIds, e);
+        }
+    }
 
     @Override
     public List<ChirperDto> getBasicInfo(Collection<Long> chirperIds) {
-        return chirperMapper.selectList(new LambdaQueryWrapper<Chirper>()
-                        .select(Chirper::getId, Chirper::getAuthorId, Chirper::getType, Chirper::getCommunityId)
-                        .in(Chirper::getId, chirperIds))
-                .stream()
-                .map(chirper -> chirperConvertor.pojoToDto(chirper))
-                .toList();
+        return chirperMetaService.getBasicInfo(chirperIds);
+    }
+
+    /**
+     * 转发、引用推文的状态变化后删除作者的互动位图，下次读取时从数据库重建
+     */
+    private void evictInteraction(Collection<Long> chirperIds) {
+        chirperMetaService.getBasicInfo(chirperIds).forEach(chirperDto -> {
+            InteractionType type = InteractionType.find(chirperDto.getType());
+            if (type != null) {
+                interactionService.evict(type, List.of(chirperDto.getAuthorId()));
+            }
+        });
     }
 
     @Override
@@ -547,27 +668,27 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
             if (chirperDtos == null || chirperDtos.isEmpty()) {
                 return List.of();
             }
+            //展开所有层级的引用推文，整页只发起一次用户查询和一次媒体查询
+            List<ChirperDto> flattened = this.flatten(chirperDtos, chirperDto -> true);
             //提取出所有的媒体信息
-            Map<Long, List<Integer>> map = chirperDtos.stream()
+            Map<Long, List<Integer>> map = flattened.stream()
                     .map(chirperDto -> {
                         try {
-                            //递归获取引用推文的媒体信息
-                            if (chirperDto.getReferenced() != null) {
-                                chirperDto.setReferenced(this.combine(List.of(chirperDto.getReferenced())).get(0));
-                            }
                             List<Integer> mediaKeys = chirperDto.getMediaKeys().stream().map(MediaDto::getId).toList();
                             return Map.entry(chirperDto.getId(), mediaKeys);
                         } catch (NullPointerException e) {
                             return Map.entry(chirperDto.getId(), List.<Integer>of());
                         }
-                    }).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+                    }).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (k1, k2) -> k1));
             Map<Long, List<MediaDto>> mediaMap = new HashMap<>();
             Map<Long, UserDto> userDtoMap = new HashMap<>();
+            //在请求线程中获取上下文，同一请求内已查询过的用户与媒体不再远程查询
+            LookupContext context = LookupContext.current();
             CountDownLatch latch = new CountDownLatch(2);
             Thread.ofVirtual().start(() -> {
                 try {
-                    List<Long> userIds = chirperDtos.stream().map(ChirperDto::getAuthorId).toList();
-                    Map<Long, UserDto> userCollect = userClient.getBasicInfo(userIds).getBody().stream().collect(Collectors.toMap(UserDto::getId, Function.identity()));
+                    Set<Long> userIds = flattened.stream().map(ChirperDto::getAuthorId).collect(Collectors.toSet());
+                    Map<Long, UserDto> userCollect = context.getBasicInfo(userIds, ids -> userClient.getBasicInfo(ids).getBody());
                     userDtoMap.putAll(userCollect);
                 } catch (Exception e) {
                     log.error("", e);
@@ -578,7 +699,7 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
             });
             Thread.ofVirtual().start(() -> {
                 try {
-                    Map<Long, List<MediaDto>> medias = mediaClient.getCombine(map).getBody();
+                    Map<Long, List<MediaDto>> medias = context.getMedia(map, keys -> mediaClient.getCombine(keys).getBody());
                     mediaMap.putAll(medias);
                 } catch (Exception e) {
                     log.error("", e);
@@ -587,14 +708,14 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
                 }
             });
             latch.await();
-            chirperDtos.forEach(chirperDto -> {
+            flattened.forEach(chirperDto -> {
                 if (!mediaMap.isEmpty()) {
                     List<MediaDto> mediaDtos = mediaMap.get(chirperDto.getId());
                     mediaDtos = mediaDtos != null ? mediaDtos : List.of();
                     chirperDto.setMediaKeys(mediaDtos);
                 }
-                if (!userDtoMap.isEmpty()) {
-                    UserDto userDto = userDtoMap.get(chirperDto.getAuthorId());
+                UserDto userDto = userDtoMap.get(chirperDto.getAuthorId());
+                if (userDto != null) {
                     chirperDto.setUsername(userDto.getUsername());
                     chirperDto.setNickname(userDto.getNickname());
                     chirperDto.setAvatar(userDto.getSmallAvatarUrl());
@@ -606,33 +727,34 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
         return new ArrayList<>(chirperDtos);
     }
 
-    @Override
-    public Map<Object, Map<String, Object>> getTrend(Integer page, String type) {
-        try {
-            int offset = PageUtil.getOffset(page, pageSize);
-            ZSetOperations<String, Object> opsForZSet = redisTemplate.opsForZSet();
-            Set<ZSetOperations.TypedTuple<Object>> tend = opsForZSet.reverseRangeWithScores(
-                    CacheKey.TEND_TAG_BOUND_KEY.getKey(), offset, (long) page * pageSize);
-            Map<Object, Map<String, Object>> tendMap = new LinkedHashMap<>();
-            if (tend != null && !tend.isEmpty()) {
-                tend.forEach(tuple -> {
-                    if (tuple.getValue() != null) {
-                        Map<String, Object> trend = new HashMap<>();
-                        trend.put("score", tuple.getScore());
-                        Double score = opsForZSet.score(CacheKey.TEND_POST_BOUND_KEY.getKey(), tuple.getValue());
-                        if (score != null) {
-                            trend.put("post", score);
-                        }
-                        tendMap.put(tuple.getValue(), trend);
-                    }
-
-                });
+    /**
+     * 按层展开推文及其引用的推文
+     *
+     * @param chirperDtos 推文列表
+     * @param expandable  是否继续展开该推文引用的推文
+     * @return 所有层级的推文，同一对象只出现一次
+     */
+    private List<ChirperDto> flatten(Collection<ChirperDto> chirperDtos, Predicate<ChirperDto> expandable) {
+        List<ChirperDto> flattened = new ArrayList<>();
+        Set<ChirperDto> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<ChirperDto> queue = new ArrayDeque<>();
+        chirperDtos.stream().filter(Objects::nonNull).forEach(queue::add);
+        while (!queue.isEmpty()) {
+            ChirperDto chirperDto = queue.poll();
+            if (!visited.add(chirperDto)) {
+                continue;
+            }
+            flattened.add(chirperDto);
+            if (chirperDto.getReferenced() != null && expandable.test(chirperDto)) {
+                queue.add(chirperDto.getReferenced());
             }
-            return tendMap;
-        } catch (NullPointerException e) {
-            throw new ChirpException(Code.ERR_BUSINESS, "没有相关数据");
         }
+        return flattened;
+    }
 
+    @Override
+    public Map<Object, Map<String, Object>> getTrend(Integer page, String type) {
+        return trendService.getPage(page, pageSize);
     }
 
     @Override
@@ -676,51 +798,45 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
 
     @Override
     public List<ChirperDto> getInteractionStatus(List<ChirperDto> chirperDtos, Long userId) {
-        Set<Long> authors = chirperDtos.stream()
-                .map(ChirperDto::getAuthorId)
-                .collect(Collectors.toSet());
-        authors.add(userId);
-        //获取作者的信息以及与目标用户的关系
-        ResponseEntity<List<UserDto>> response = userClient.getUsernameAndRelation(authors, userId);
-        Map<Long, UserDto> userDtoMap = new HashMap<>();
-        if (response.getStatusCode().is2xxSuccessful()) {
-            List<UserDto> userDtoList = response.getBody();
-            if (userDtoList != null && !userDtoList.isEmpty()) {
-                userDtoMap = userDtoList.stream().collect(Collectors.toMap(UserDto::getId, Function.identity()));
-            }
-        }
-        UserDto targetUser = userDtoMap.get(userId);
-        for (ChirperDto chirperDto : chirperDtos) {
-            boolean isMentioned = false;
-            if (targetUser != null && !StringUtil.isBlank(chirperDto.getText())) {
-                isMentioned = TextUtil.getIsMentioned(chirperDto.getText(), targetUser.getUsername());
-            }
-            //如果是该推文的作者，又或者被提及，则全部允许
-            if (chirperDto.getAuthorId().equals(userId) || isMentioned) {
-                chirperDto.setAllInteractionAllow();
-                continue;
-            }
-            UserDto author = userDtoMap.get(chirperDto.getAuthorId());
-            if (RelationType.BLOCK.getRelation() == author.getRelation()) {
-                chirperDto.setAllInteractionDeny();
-                continue;
-            }
-            //点赞、转发、引用只受作者是否拉黑用户影响
-            chirperDto.setAllInteractionAllow();
-            Integer replyRange = chirperDto.getReplyRange();
-            replyRange = replyRange != null ? replyRange : ReplyRangeEnums.EVERYONE.getCode();
-            if (ReplyRangeEnums.EVERYONE.getCode() == replyRange) {
-                chirperDto.setReplyable(true);
-            } else {
-                    if (ReplyRangeEnums.FOLLOWING.getCode() == replyRange) {
-                        boolean able = RelationType.FOLLOWING.getRelation() == author.getRelation();
-                        chirperDto.setReplyable(able);
-                    } else if (ReplyRangeEnums.MENTION.getCode() == replyRange) {
-                        chirperDto.setReplyable(false);
-                    }
-            }
+        return replyPermissionService.evaluate(chirperDtos, userId);
+    }
+
+    /**
+     * 构建推文已写入的消息，@通知、Feed流推送与话题统计由消费者按批处理；
+     * 延时发布的推文同时登记调度，与推文在同一个事务中写入，不会因进程在提交后退出而漏掉
+     *
+     * @param chirperDto 推文数据，id已生成
+     * @return 可继续追加的消息列表
+     */
+    private List<OutboxMessage> getPublishMessages(ChirperDto chirperDto) {
+        Message<ChirperDto> message = new Message<>();
+        message.setBody(chirperDto);
+        List<OutboxMessage> messages = new ArrayList<>();
+        messages.add(outboxService.build(PUBLISHED_TOPIC, chirperDto.getId().toString(), message));
+        if (ChirperStatus.DELAY.getStatus() == chirperDto.getStatus()) {
+            messages.add(outboxService.build(DELAY_TOPIC, chirperDto.getId().toString(), message));
         }
-        return chirperDtos;
+        return messages;
+    }
+
+    /**
+     * 延时发布推文的激活时间，立即发布时为空
+     */
+    private Timestamp getDelayActiveTime(ChirperDto chirperDto) {
+        return ChirperStatus.DELAY.getStatus() == chirperDto.getStatus() ? chirperDto.getActiveTime() : null;
+    }
+
+    /**
+     * 构建推文变化消息，与状态修改在同一个事务中写入，每个实例据此清除本地缓存
+     *
+     * @param chirperIds 变化的推文
+     * @param expect     变化前的状态，为空时不校验
+     * @param status     变化后的状态，为空表示已删除
+     */
+    private Message<ChirperChangedDto> getChangedMessage(Collection<Long> chirperIds, Integer expect, Integer status) {
+        Message<ChirperChangedDto> message = new Message<>();
+        message.setBody(new ChirperChangedDto(List.copyOf(chirperIds), expect, status));
+        return message;
     }
 
     @Override
@@ -728,6 +844,9 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
         if (chirperDto.isEmpty()) {
             throw new ChirpException(Code.ERR_BUSINESS, "推文内容不能为空");
         }
+        //发布时解析一次正文中的实体与被提及用户的id，读取时不再解析
+        chirperDto.setEntities(TextEntityUtil.parse(chirperDto.getText()));
+        replyPermissionService.resolveMentioned(chirperDto.getEntities());
         ReplyRangeEnums rangeEnums = ReplyRangeEnums.findByCodeWithDefault(chirperDto.getReplyRange());
         chirperDto.setReplyRange(rangeEnums.getCode());
         chirperDto.setCreateTime(new Timestamp(System.currentTimeMillis()));
@@ -743,40 +862,33 @@ public class ChirperServiceImpl extends ServiceImpl<ChirperMapper, Chirper> impl
 
     @Override
     public void postDelay(ChirperDto chirperDto) {
-        String key = STR."\{CacheKey.DELAY_POST_KEY.getKey()}:\{chirperDto.getId()}";
-        long between = chirperDto.getActiveTime().getTime() - chirperDto.getCreateTime().getTime();
-        if (between > 0) {
-            redisTemplate.opsForValue().set(key, 1, Duration.ofMillis(between));
-        }
+        delayPublishService.schedule(chirperDto.getId(), chirperDto.getActiveTime().getTime());
     }
 
     @Override
-    public void activeDelay(Collection<Long> chirperIds) {
+    public boolean activeDelay(Collection<Long> chirperIds) {
         try {
-            RetryUtil.doDBRetry(() ->
-                    chirperMapper.update(null, new LambdaUpdateWrapper<Chirper>()
-                            .set(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus())
-                            .ne(Chirper::getStatus, ChirperStatus.DELETE.getStatus())
-                            .ne(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus())
-                            .eq(Chirper::getStatus, ChirperStatus.DELAY.getStatus())
-                            .in(Chirper::getId, chirperIds))
-            );
+            RetryUtil.doDBRetry(() -> transactionTemplate.execute(status -> {
+                int rows = chirperMapper.update(null, new LambdaUpdateWrapper<Chirper>()
+                        .set(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus())
+                        .ne(Chirper::getStatus, ChirperStatus.DELETE.getStatus())
+                        .ne(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus())
+                        .eq(Chirper::getStatus, ChirperStatus.DELAY.getStatus())
+                        .in(Chirper::getId, chirperIds));
+                if (rows > 0) {
+                    outboxService.save(CHANGED_TOPIC, null, this.getChangedMessage(chirperIds,
+                            ChirperStatus.DELAY.getStatus(), ChirperStatus.ACTIVE.getStatus()));
+                }
+                return rows;
+            }));
+            this.afterStatusChanged(chirperIds, ChirperStatus.DELAY.getStatus(), ChirperStatus.ACTIVE.getStatus(), false);
+            return true;
         } catch (ExecutionException e) {
             log.error("激活延时推文时发生无法成功的错误，推文=>{}，错误=>", chirperIds, e);
         } catch (RetryException e) {
             log.error("激活延时推文失败，推文=>{}，错误=>", chirperIds, e);
         }
-
-    }
-
-    @Override
-    public void activeDelayAuto() {
-        chirperMapper.update(null, new LambdaUpdateWrapper<Chirper>()
-                .set(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus())
-                .ne(Chirper::getStatus, ChirperStatus.DELETE.getStatus())
-                .ne(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus())
-                .eq(Chirper::getStatus, ChirperStatus.DELAY.getStatus())
-                .le(Chirper::getActiveTime, new Timestamp(System.currentTimeMillis())));
+        return false;
     }
 
 }
@@ -0,0 +1,177 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.zyq.chirp.chirperserver.domain.pojo.Chirper;
+import com.zyq.chirp.chirperserver.mapper.ChirperMapper;
+import com.zyq.chirp.chirperserver.service.ChirperWriteService;
+import com.zyq.chirp.common.domain.exception.ChirpException;
+import com.zyq.chirp.common.domain.model.Code;
+import com.zyq.chirp.common.mq.model.OutboxMessage;
+import com.zyq.chirp.common.mq.service.OutboxService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 推文写入服务实现类
+ * 写入线程取出第一条请求后，在等待时间内继续收集请求直到达到批次上限，整批在一个事务中插入；
+ * 批量插入失败时逐条重试，只让出错的请求失败。排队超时的请求由写入线程在写入前判定失败，
+ * 已开始写入的请求一定等到提交结果，调用方不会在推文提交后收到失败；
+ * 推文的发件箱消息与推文在同一个事务中写入
+ */
+@Service
+@Slf4j
+public class ChirperWriteServiceImpl implements ChirperWriteService {
+    @Resource
+    ChirperMapper chirperMapper;
+    @Resource
+    OutboxService outboxService;
+    @Resource
+    TransactionTemplate transactionTemplate;
+    @Resource
+    MeterRegistry meterRegistry;
+    @Value("${default-config.group-commit.linger}")
+    Long linger;
+    @Value("${default-config.group-commit.max-batch}")
+    Integer maxBatch;
+    @Value("${default-config.group-commit.queue-size}")
+    Integer queueSize;
+    @Value("${default-config.group-commit.writers}")
+    Integer writers;
+    @Value("${default-config.group-commit.timeout}")
+    Long timeout;
+    private BlockingQueue<Pending> queue;
+    private final List<Thread> threads = new ArrayList<>();
+    private DistributionSummary batchSummary;
+    private Timer commitTimer;
+
+    @PostConstruct
+    public void init() {
+        queue = new LinkedBlockingQueue<>(queueSize);
+        batchSummary = DistributionSummary.builder("chirper.write.batch")
+                .description("每次提交写入的推文数")
+                .register(meterRegistry);
+        commitTimer = Timer.builder("chirper.write.commit")
+                .description("一批推文从插入到提交的耗时")
+                .register(meterRegistry);
+        for (int i = 0; i < writers; i++) {
+            threads.add(Thread.ofPlatform().name(STR."chirper-writer-\{i}").daemon().start(this::run));
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        threads.forEach(Thread::interrupt);
+        List<Pending> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.forEach(pending -> pending.future().completeExceptionally(new ChirpException(Code.ERR_SYSTEM, "服务正在关闭")));
+    }
+
+    @Override
+    public CompletableFuture<Long> submit(Chirper chirper, List<OutboxMessage> messages) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        if (!queue.offer(new Pending(chirper, messages, future, deadline))) {
+            throw new ChirpException(Code.ERR_SYSTEM, "发布繁忙，请稍后重试");
+        }
+        return future;
+    }
+
+    @Override
+    public Long insert(Chirper chirper, List<OutboxMessage> messages) {
+        //超时由写入线程判定，这里不设超时也不响应中断，避免推文已提交但发布后的处理被跳过
+        try {
+            return this.submit(chirper, messages).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ChirpException chirpException) {
+                throw chirpException;
+            }
+            throw new ChirpException(Code.ERR_SYSTEM, "发布失败", e.getCause());
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(linger);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    //等待时间已过时仍取走已在队列中的请求
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                this.commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(pending -> pending.future().completeExceptionally(new ChirpException(Code.ERR_SYSTEM, "服务正在关闭")));
+            } catch (Exception e) {
+                log.error("写入推文失败，错误:", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        long now = System.nanoTime();
+        List<Pending> live = new ArrayList<>(batch.size());
+        batch.forEach(pending -> {
+            if (pending.deadline() - now < 0) {
+                pending.future().completeExceptionally(new ChirpException(Code.ERR_SYSTEM, "发布超时，请稍后重试"));
+            } else {
+                live.add(pending);
+            }
+        });
+        if (live.isEmpty()) {
+            return;
+        }
+        try {
+            commitTimer.record(() -> transactionTemplate.executeWithoutResult(status -> {
+                chirperMapper.insertBatch(live.stream().map(Pending::chirper).toList());
+                outboxService.save(live.stream().flatMap(pending -> pending.messages().stream()).toList());
+            }));
+            batchSummary.record(live.size());
+            live.forEach(pending -> pending.future().complete(pending.chirper().getId()));
+        } catch (Exception e) {
+            if (live.size() == 1) {
+                live.getFirst().future().completeExceptionally(e);
+                return;
+            }
+            log.warn("批量写入{}条推文失败，逐条重试，错误:", live.size(), e);
+            live.forEach(pending -> {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        chirperMapper.insertBatch(List.of(pending.chirper()));
+                        outboxService.save(pending.messages());
+                    });
+                    batchSummary.record(1);
+                    pending.future().complete(pending.chirper().getId());
+                } catch (Exception ex) {
+                    pending.future().completeExceptionally(ex);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param deadline 开始写入的最晚时间(System.nanoTime)
+     */
+    private record Pending(Chirper chirper, List<OutboxMessage> messages, CompletableFuture<Long> future, long deadline) {
+    }
+}
@@ -0,0 +1,298 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zyq.chirp.chirperserver.domain.enums.CacheKey;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperCounter;
+import com.zyq.chirp.chirperserver.domain.pojo.Chirper;
+import com.zyq.chirp.chirperserver.mapper.ChirperMapper;
+import com.zyq.chirp.chirperserver.mapper.CounterShardMapper;
+import com.zyq.chirp.chirperserver.service.ChirperCacheService;
+import com.zyq.chirp.chirperserver.service.CounterReconcileService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 计数校对服务实现类
+ * 按id顺序分批读取推文计数，与点赞表、转发/引用、回复的分组统计结果以及尚未合并的计数分片比较。
+ * 计数消息从发送到写入数据库存在延迟，发现的偏差先记为待确认，等待一段时间后再次统计，偏差不变时才修正，
+ * 修正以增量的方式写入，不覆盖期间到达的计数。
+ * 校对进度保存在Redis中，持有租约的实例变化后从上次的位置继续；每次执行校对的推文数不超过预算
+ */
+@Service
+@Slf4j
+public class CounterReconcileServiceImpl implements CounterReconcileService {
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+    /**
+     * 由消息累加、可以从记录数统计的计数
+     */
+    private static final List<ChirperCounter> RECONCILED = List.of(
+            ChirperCounter.LIKE, ChirperCounter.FORWARD, ChirperCounter.QUOTE, ChirperCounter.REPLY);
+    private static final String CURSOR_FIELD = "cursor";
+    private static final String NEXT_FIELD = "next";
+    private static final String STARTED_FIELD = "started";
+    private static final String SCANNED_FIELD = "scanned";
+    private static final String REPAIRED_FIELD = "repaired";
+    /**
+     * 实际数大于计数，即有计数消息丢失
+     */
+    private static final String UNDER = "under";
+    /**
+     * 实际数小于计数
+     */
+    private static final String OVER = "over";
+    @Resource
+    ChirperMapper chirperMapper;
+    @Resource
+    CounterShardMapper counterShardMapper;
+    @Resource
+    ChirperCacheService chirperCacheService;
+    @Resource
+    RedisTemplate<String, Object> redisTemplate;
+    @Resource
+    MeterRegistry meterRegistry;
+    @Value("${default-config.reconcile.interval}")
+    Long interval;
+    @Value("${default-config.reconcile.budget}")
+    Long budget;
+    @Value("${default-config.reconcile.batch-size}")
+    Integer batchSize;
+    @Value("${default-config.reconcile.pass-delay}")
+    Long passDelay;
+    @Value("${default-config.reconcile.confirm-delay}")
+    Long confirmDelay;
+    @Value("${default-config.reconcile.max-suspects}")
+    Integer maxSuspects;
+    @Value("${default-config.reconcile.lease}")
+    Long lease;
+    /**
+     * 待确认的偏差，只在持有租约时读写，实例变化后丢失的记录会在下一轮重新发现
+     */
+    private final Map<Long, Suspect> suspects = new ConcurrentHashMap<>();
+    private Counter scannedCounter;
+
+    @PostConstruct
+    public void init() {
+        scannedCounter = Counter.builder("chirper.counter.reconcile.scanned")
+                .description("已校对的推文数")
+                .register(meterRegistry);
+        Gauge.builder("chirper.counter.reconcile.suspects", suspects, Map::size)
+                .description("等待确认偏差的推文数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${default-config.reconcile.interval}")
+    public void reconcile() {
+        String leaseKey = CacheKey.COUNTER_RECONCILE_LEASE_KEY.getKey();
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(leaseKey, token, Duration.ofMillis(lease));
+        if (!Boolean.TRUE.equals(acquired)) {
+            return;
+        }
+        try {
+            long allowance = Math.max(1, budget * interval / 1000) - this.confirm();
+            String key = CacheKey.COUNTER_RECONCILE_BOUND_KEY.getKey();
+            Map<Object, Object> progress = redisTemplate.opsForHash().entries(key);
+            if (System.currentTimeMillis() < this.toLong(progress.get(NEXT_FIELD))) {
+                return;
+            }
+            if (!progress.containsKey(STARTED_FIELD)) {
+                redisTemplate.opsForHash().put(key, STARTED_FIELD, System.currentTimeMillis());
+            }
+            long cursor = this.toLong(progress.get(CURSOR_FIELD));
+            while (allowance > 0 && suspects.size() < maxSuspects) {
+                int limit = (int) Math.min(batchSize, allowance);
+                List<Chirper> chunk = chirperMapper.selectPage(new Page<>(1, limit, false),
+                        this.counterQuery().gt(Chirper::getId, cursor).orderByAsc(Chirper::getId)).getRecords();
+                if (!chunk.isEmpty()) {
+                    long foundAt = System.currentTimeMillis();
+                    this.measure(chunk).forEach((chirperId, drift) -> suspects.putIfAbsent(chirperId, new Suspect(drift, foundAt)));
+                    cursor = chunk.getLast().getId();
+                    redisTemplate.opsForHash().put(key, CURSOR_FIELD, cursor);
+                    redisTemplate.opsForHash().increment(key, SCANNED_FIELD, chunk.size());
+                    scannedCounter.increment(chunk.size());
+                    allowance -= chunk.size();
+                }
+                if (chunk.size() < limit) {
+                    this.finishPass();
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("校对计数失败，错误:", e);
+        } finally {
+            redisTemplate.execute(RELEASE_SCRIPT, redisTemplate.getValueSerializer(),
+                    new GenericToStringSerializer<>(Long.class), List.of(leaseKey), token);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        redisTemplate.opsForHash().entries(CacheKey.COUNTER_RECONCILE_BOUND_KEY.getKey())
+                .forEach((field, value) -> stats.put(String.valueOf(field), value));
+        stats.put("suspects", suspects.size());
+        return stats;
+    }
+
+    /**
+     * 再次统计已到确认时间的推文，偏差与上次相同的修正，偏差变化的重新等待确认
+     * @return 再次统计的推文数，计入本次的预算
+     */
+    private long confirm() {
+        long now = System.currentTimeMillis();
+        List<Long> due = suspects.entrySet().stream()
+                .filter(entry -> entry.getValue().foundAt() + confirmDelay <= now)
+                .map(Map.Entry::getKey)
+                .limit(batchSize)
+                .toList();
+        if (due.isEmpty()) {
+            return 0;
+        }
+        Map<Long, Map<ChirperCounter, Long>> drifts = this.measure(chirperMapper.selectList(this.counterQuery().in(Chirper::getId, due)));
+        Map<Long, Map<ChirperCounter, Long>> confirmed = new HashMap<>();
+        due.forEach(chirperId -> {
+            Suspect suspect = suspects.remove(chirperId);
+            Map<ChirperCounter, Long> drift = drifts.get(chirperId);
+            if (drift == null) {
+                return;
+            }
+            if (drift.equals(suspect.drift())) {
+                confirmed.put(chirperId, drift);
+            } else {
+                suspects.put(chirperId, new Suspect(drift, now));
+            }
+        });
+        this.repair(confirmed);
+        return due.size();
+    }
+
+    /**
+     * 统计实际记录数并与计数比较，计数包括尚未合并的分片
+     * @return 存在偏差的推文id到各计数偏差(实际数-计数)的映射
+     */
+    private Map<Long, Map<ChirperCounter, Long>> measure(List<Chirper> chirpers) {
+        if (chirpers.isEmpty()) {
+            return Map.of();
+        }
+        List<Long> ids = chirpers.stream().map(Chirper::getId).toList();
+        Map<Long, Map<ChirperCounter, Long>> actual = new HashMap<>();
+        chirperMapper.tallyLikes(ids).forEach(tally -> this.put(actual, tally.getId(), ChirperCounter.LIKE, tally.getLikeCount()));
+        chirperMapper.tallyReferences(ids).forEach(tally -> {
+            this.put(actual, tally.getId(), ChirperCounter.FORWARD, tally.getForwardCount());
+            this.put(actual, tally.getId(), ChirperCounter.QUOTE, tally.getQuoteCount());
+        });
+        chirperMapper.tallyReplies(ids).forEach(tally -> this.put(actual, tally.getId(), ChirperCounter.REPLY, tally.getReplyCount()));
+        Map<Long, Map<ChirperCounter, Long>> unfolded = new HashMap<>();
+        counterShardMapper.sumUnfolded(ids).forEach(shard ->
+                this.put(unfolded, shard.getChirperId(), ChirperCounter.valueOf(shard.getCounter()), shard.getDelta()));
+        Map<Long, Map<ChirperCounter, Long>> drifts = new HashMap<>();
+        chirpers.forEach(chirper -> {
+            Map<ChirperCounter, Long> counts = actual.getOrDefault(chirper.getId(), Map.of());
+            Map<ChirperCounter, Long> pending = unfolded.getOrDefault(chirper.getId(), Map.of());
+            for (ChirperCounter counter : RECONCILED) {
+                long drift = counts.getOrDefault(counter, 0L) - counter.get(chirper) - pending.getOrDefault(counter, 0L);
+                if (drift != 0) {
+                    this.put(drifts, chirper.getId(), counter, drift);
+                }
+            }
+        });
+        return drifts;
+    }
+
+    /**
+     * 以增量的方式修正已确认的偏差，同步计数缓存并记录偏差统计
+     */
+    private void repair(Map<Long, Map<ChirperCounter, Long>> confirmed) {
+        if (confirmed.isEmpty()) {
+            return;
+        }
+        Map<ChirperCounter, Map<Long, Long>> byCounter = new EnumMap<>(ChirperCounter.class);
+        confirmed.forEach((chirperId, drift) -> drift.forEach((counter, delta) ->
+                byCounter.computeIfAbsent(counter, key -> new HashMap<>()).put(chirperId, delta)));
+        Map<String, Long> stats = new HashMap<>();
+        byCounter.forEach((counter, deltas) -> {
+            chirperMapper.incrementCounters(counter.getColumn(), deltas);
+            deltas.forEach((chirperId, delta) -> {
+                chirperCacheService.incrementCounter(chirperId, counter, delta);
+                String direction = delta > 0 ? UNDER : OVER;
+                stats.merge(STR."\{counter.name()}:\{direction}", Math.abs(delta), Long::sum);
+                stats.merge(STR."\{counter.name()}:\{direction}:rows", 1L, Long::sum);
+                meterRegistry.counter("chirper.counter.reconcile.repaired", "counter", counter.name(), "direction", direction).increment();
+                meterRegistry.counter("chirper.counter.reconcile.drift", "counter", counter.name(), "direction", direction).increment(Math.abs(delta));
+            });
+        });
+        stats.put(REPAIRED_FIELD, (long) confirmed.size());
+        String key = CacheKey.COUNTER_RECONCILE_BOUND_KEY.getKey();
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                stats.forEach((field, value) -> ops.opsForHash().increment(key, field, value));
+                return null;
+            }
+        });
+        log.info("修正计数偏差，推文数:{}，偏差:{}", confirmed.size(), confirmed);
+    }
+
+    /**
+     * 一轮校对完成，记录统计并等待下一轮
+     */
+    private void finishPass() {
+        String key = CacheKey.COUNTER_RECONCILE_BOUND_KEY.getKey();
+        Map<Object, Object> stats = redisTemplate.opsForHash().entries(key);
+        log.info("完成一轮计数校对，统计:{}", stats);
+        redisTemplate.delete(key);
+        redisTemplate.opsForHash().putAll(key, Map.of(
+                CURSOR_FIELD, 0L,
+                NEXT_FIELD, System.currentTimeMillis() + Duration.ofMinutes(passDelay).toMillis()));
+    }
+
+    private LambdaQueryWrapper<Chirper> counterQuery() {
+        return new LambdaQueryWrapper<Chirper>()
+                .select(Chirper::getId, Chirper::getLikeCount, Chirper::getForwardCount,
+                        Chirper::getQuoteCount, Chirper::getReplyCount);
+    }
+
+    private void put(Map<Long, Map<ChirperCounter, Long>> target, Long chirperId, ChirperCounter counter, Number value) {
+        if (value != null) {
+            target.computeIfAbsent(chirperId, id -> new EnumMap<>(ChirperCounter.class)).put(counter, value.longValue());
+        }
+    }
+
+    private long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+
+    /**
+     * 待确认的偏差
+     * @param drift 各计数的偏差
+     * @param foundAt 发现时间
+     */
+    private record Suspect(Map<ChirperCounter, Long> drift, long foundAt) {
+    }
+}
@@ -0,0 +1,346 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zyq.chirp.chirperserver.domain.enums.CacheKey;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperStatus;
+import com.zyq.chirp.chirperserver.domain.pojo.Chirper;
+import com.zyq.chirp.chirperserver.mapper.ChirperMapper;
+import com.zyq.chirp.chirperserver.service.DelayPublishService;
+import com.zyq.chirp.chirperserver.util.TimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * 定时发布调度服务实现类
+ * 每个分片一个有序集合，使用不同的hash tag分布到集群的各个槽；实例定时续期持有的分片租约，
+ * 并装载持有分片中即将到期的推文，新登记的推文属于本实例持有的分片时直接放入时间轮。
+ * 时间轮由单独的线程按刻度推进，到期的推文在虚拟线程中激活，激活成功后从有序集合中移除，
+ * 失败时保留在有序集合中，下次装载时重试。
+ * 登记消息或有序集合丢失时，由一个实例定时扫描数据库中超过发布时间仍未激活的推文并直接激活
+ */
+@Service
+@Slf4j
+public class DelayPublishServiceImpl implements DelayPublishService {
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            end
+            return 0
+            """, Long.class);
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+    @Resource
+    RedisTemplate<String, Object> redisTemplate;
+    @Resource
+    ChirperMapper chirperMapper;
+    @Resource
+    MeterRegistry meterRegistry;
+    @Value("${default-config.delay-publish.shards}")
+    Integer shards;
+    @Value("${default-config.delay-publish.tick}")
+    Long tick;
+    @Value("${default-config.delay-publish.wheel-size}")
+    Integer wheelSize;
+    @Value("${default-config.delay-publish.horizon}")
+    Long horizon;
+    @Value("${default-config.delay-publish.load-batch}")
+    Integer loadBatch;
+    @Value("${default-config.delay-publish.lease}")
+    Long lease;
+    @Value("${default-config.delay-publish.recover-batch}")
+    Integer recoverBatch;
+    @Value("${default-config.delay-publish.sweep-interval}")
+    Long sweepInterval;
+    @Value("${default-config.delay-publish.sweep-grace}")
+    Long sweepGrace;
+    private final String token = UUID.randomUUID().toString();
+    private final Set<Integer> owned = ConcurrentHashMap.newKeySet();
+    /**
+     * 已放入时间轮、尚未激活完成的推文id，避免重复装载
+     */
+    private final Set<Long> loaded = ConcurrentHashMap.newKeySet();
+    /**
+     * 等待放入时间轮的推文id与发布时间，时间轮只由推进线程访问
+     */
+    private final Queue<Map.Entry<Long, Long>> incoming = new ConcurrentLinkedQueue<>();
+    private TimingWheel<Long> wheel;
+    private ScheduledExecutorService ticker;
+    private volatile Predicate<Collection<Long>> activator;
+    private Counter activatedCounter;
+    private Counter sweptCounter;
+
+    @PostConstruct
+    public void init() {
+        wheel = new TimingWheel<>(tick, wheelSize, System.currentTimeMillis());
+        ticker = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("delay-publish-wheel").daemon().factory());
+        ticker.scheduleAtFixedRate(this::advance, tick, tick, TimeUnit.MILLISECONDS);
+        activatedCounter = Counter.builder("chirper.delay.activated")
+                .description("按时激活的定时发布推文数")
+                .register(meterRegistry);
+        sweptCounter = Counter.builder("chirper.delay.swept")
+                .description("超过发布时间后由扫描激活的推文数")
+                .register(meterRegistry);
+        Gauge.builder("chirper.delay.loaded", loaded, Set::size)
+                .description("已装载到时间轮等待激活的推文数")
+                .register(meterRegistry);
+        Gauge.builder("chirper.delay.shards", owned, Set::size)
+                .description("本实例持有的分片数")
+                .register(meterRegistry);
+        Thread.ofVirtual().start(this::recover);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        ticker.shutdownNow();
+        owned.forEach(shard -> redisTemplate.execute(RELEASE_SCRIPT, redisTemplate.getValueSerializer(),
+                new GenericToStringSerializer<>(Long.class), List.of(this.getLeaseKey(shard)), token));
+        owned.clear();
+    }
+
+    @Override
+    public void schedule(Long chirperId, long activeTime) {
+        int shard = this.getShard(chirperId);
+        redisTemplate.opsForZSet().add(this.getKey(shard), chirperId.toString(), activeTime);
+        if (owned.contains(shard) && activeTime <= System.currentTimeMillis() + horizon
+                && loaded.add(chirperId)) {
+            incoming.add(Map.entry(chirperId, activeTime));
+        }
+    }
+
+    @Override
+    public void onDue(Predicate<Collection<Long>> activator) {
+        this.activator = activator;
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${default-config.delay-publish.load-interval}")
+    public void load() {
+        for (int shard = 0; shard < shards; shard++) {
+            try {
+                if (this.hold(shard)) {
+                    this.loadShard(shard);
+                }
+            } catch (Exception e) {
+                log.warn("装载定时发布分片{}失败，错误:", shard, e);
+            }
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${default-config.delay-publish.sweep-interval}", initialDelayString = "${default-config.delay-publish.sweep-interval}")
+    public void sweep() {
+        String leaseKey = CacheKey.DELAY_SWEEP_LEASE_KEY.getKey();
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(leaseKey, token, Duration.ofMillis(sweepInterval));
+        if (!Boolean.TRUE.equals(acquired)) {
+            return;
+        }
+        try {
+            List<Long> overdue = chirperMapper.selectPage(new Page<>(1, recoverBatch, false),
+                            new LambdaQueryWrapper<Chirper>()
+                                    .select(Chirper::getId)
+                                    .eq(Chirper::getStatus, ChirperStatus.DELAY.getStatus())
+                                    .lt(Chirper::getActiveTime, new Timestamp(System.currentTimeMillis() - sweepGrace)))
+                    .getRecords()
+                    .stream()
+                    .map(Chirper::getId)
+                    .toList();
+            if (overdue.isEmpty()) {
+                return;
+            }
+            log.warn("{}条推文超过发布时间仍未激活，直接激活:{}", overdue.size(), overdue);
+            Predicate<Collection<Long>> current = activator;
+            if (current == null || !current.test(overdue)) {
+                log.warn("激活超时的定时发布推文失败，下次扫描重试，推文:{}", overdue);
+                return;
+            }
+            this.remove(overdue);
+            sweptCounter.increment(overdue.size());
+        } catch (Exception e) {
+            log.error("扫描超时的定时发布推文失败，错误:", e);
+        } finally {
+            redisTemplate.execute(RELEASE_SCRIPT, redisTemplate.getValueSerializer(),
+                    new GenericToStringSerializer<>(Long.class), List.of(leaseKey), token);
+        }
+    }
+
+    /**
+     * 续期已持有的租约，或尝试获取未被持有的租约
+     * @return 本实例是否持有该分片
+     */
+    private boolean hold(int shard) {
+        String leaseKey = this.getLeaseKey(shard);
+        if (owned.contains(shard)) {
+            Long renewed = redisTemplate.execute(RENEW_SCRIPT, redisTemplate.getValueSerializer(),
+                    new GenericToStringSerializer<>(Long.class), List.of(leaseKey), token, lease);
+            if (Long.valueOf(1).equals(renewed)) {
+                return true;
+            }
+            owned.remove(shard);
+            log.warn("定时发布分片{}的租约已失效", shard);
+            return false;
+        }
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(leaseKey, token, Duration.ofMillis(lease));
+        if (Boolean.TRUE.equals(acquired)) {
+            owned.add(shard);
+            log.info("获得定时发布分片{}的租约", shard);
+            return true;
+        }
+        return false;
+    }
+
+    private void loadShard(int shard) {
+        Set<ZSetOperations.TypedTuple<Object>> tuples = redisTemplate.opsForZSet()
+                .rangeByScoreWithScores(this.getKey(shard), Double.NEGATIVE_INFINITY,
+                        System.currentTimeMillis() + horizon, 0, loadBatch);
+        if (tuples == null) {
+            return;
+        }
+        tuples.forEach(tuple -> {
+            Long chirperId = Long.valueOf(String.valueOf(tuple.getValue()));
+            if (tuple.getScore() != null && loaded.add(chirperId)) {
+                incoming.add(Map.entry(chirperId, tuple.getScore().longValue()));
+            }
+        });
+    }
+
+    /**
+     * 推进时间轮，只在推进线程中执行
+     */
+    private void advance() {
+        try {
+            Map.Entry<Long, Long> entry;
+            while ((entry = incoming.poll()) != null) {
+                wheel.add(entry.getKey(), entry.getValue());
+            }
+            List<Long> due = new ArrayList<>();
+            wheel.advance(System.currentTimeMillis(), due::add);
+            if (!due.isEmpty()) {
+                Thread.ofVirtual().start(() -> this.activate(due));
+            }
+        } catch (Exception e) {
+            log.error("推进定时发布时间轮失败，错误:", e);
+        }
+    }
+
+    private void activate(List<Long> due) {
+        //租约已失效的分片由新的持有者重新装载
+        List<Long> chirperIds = due.stream().filter(chirperId -> owned.contains(this.getShard(chirperId))).toList();
+        try {
+            if (chirperIds.isEmpty()) {
+                return;
+            }
+            Predicate<Collection<Long>> current = activator;
+            if (current == null || !current.test(chirperIds)) {
+                log.warn("激活定时发布推文失败，稍后重试，推文:{}", chirperIds);
+                return;
+            }
+            this.remove(chirperIds);
+            activatedCounter.increment(chirperIds.size());
+        } catch (Exception e) {
+            log.error("激活定时发布推文失败，稍后重试，推文:{}，错误:", chirperIds, e);
+        } finally {
+            due.forEach(loaded::remove);
+        }
+    }
+
+    /**
+     * 从各自分片的有序集合中移除已激活的推文
+     */
+    private void remove(List<Long> chirperIds) {
+        Map<Integer, List<Long>> byShard = chirperIds.stream().collect(Collectors.groupingBy(this::getShard));
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                byShard.forEach((shard, ids) -> ops.opsForZSet().remove(getKey(shard), ids.stream().map(String::valueOf).toArray()));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 将数据库中所有待发布的推文登记到有序集合，同一次部署只由一个实例执行，
+     * 用于从旧的过期键调度迁移以及Redis数据丢失后的恢复
+     */
+    private void recover() {
+        Boolean acquired = redisTemplate.opsForValue()
+                .setIfAbsent(CacheKey.DELAY_RECOVER_LEASE_KEY.getKey(), token, Duration.ofMinutes(10));
+        if (!Boolean.TRUE.equals(acquired)) {
+            return;
+        }
+        try {
+            long after = 0;
+            long count = 0;
+            List<Chirper> chirpers;
+            do {
+                chirpers = chirperMapper.selectPage(new Page<>(1, recoverBatch, false),
+                        new LambdaQueryWrapper<Chirper>()
+                                .select(Chirper::getId, Chirper::getActiveTime)
+                                .eq(Chirper::getStatus, ChirperStatus.DELAY.getStatus())
+                                .gt(Chirper::getId, after)
+                                .orderByAsc(Chirper::getId)).getRecords();
+                if (!chirpers.isEmpty()) {
+                    List<Chirper> batch = chirpers;
+                    redisTemplate.executePipelined(new SessionCallback<Object>() {
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                            RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                            batch.forEach(chirper -> ops.opsForZSet().add(getKey(getShard(chirper.getId())), chirper.getId().toString(),
+                                    chirper.getActiveTime() != null ? chirper.getActiveTime().getTime() : System.currentTimeMillis()));
+                            return null;
+                        }
+                    });
+                    after = chirpers.getLast().getId();
+                    count += chirpers.size();
+                }
+            } while (chirpers.size() >= recoverBatch);
+            log.info("登记待发布推文{}条", count);
+        } catch (Exception e) {
+            log.error("登记待发布推文失败，错误:", e);
+        }
+    }
+
+    private int getShard(Long chirperId) {
+        return (int) Math.floorMod(chirperId, (long) shards);
+    }
+
+    /**
+     * 每个分片使用不同的hash tag，分布到集群的不同槽
+     */
+    private String getKey(int shard) {
+        return STR."\{CacheKey.DELAY_POST_KEY.getKey()}:{\{shard}}";
+    }
+
+    private String getLeaseKey(int shard) {
+        return STR."\{CacheKey.DELAY_LEASE_KEY.getKey()}:{\{shard}}";
+    }
+}
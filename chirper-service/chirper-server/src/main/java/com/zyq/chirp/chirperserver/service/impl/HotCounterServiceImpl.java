@@ -0,0 +1,276 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zyq.chirp.chirperserver.domain.enums.CacheKey;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperCounter;
+import com.zyq.chirp.chirperserver.domain.pojo.CounterShard;
+import com.zyq.chirp.chirperserver.mapper.ChirperMapper;
+import com.zyq.chirp.chirperserver.mapper.CounterShardMapper;
+import com.zyq.chirp.chirperserver.service.HotCounterService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.CollectionUtils;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 热门推文计数分片服务实现类
+ * 每个实例统计一个窗口内各推文的计数变化量，速率超过阈值的推文写入Redis有序集合，分数为热门状态的过期时间，
+ * 所有实例定时同步该集合。热门推文的每次变化随机写入其中一个分片行，
+ * 合并时在事务中锁定并读取分片行，将总和加到tb_chirper后只清零读取过的行。
+ * 读取计数缓存未命中时，热门推文需加上尚未合并的变化，这部分通过短时间的本地缓存读取
+ */
+@Service
+@Slf4j
+public class HotCounterServiceImpl implements HotCounterService {
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+    @Resource
+    ChirperMapper chirperMapper;
+    @Resource
+    CounterShardMapper counterShardMapper;
+    @Resource
+    RedisTemplate<String, Object> redisTemplate;
+    @Resource
+    TransactionTemplate transactionTemplate;
+    @Resource
+    MeterRegistry meterRegistry;
+    @Value("${default-config.hot-counter.shards}")
+    Integer shards;
+    @Value("${default-config.hot-counter.threshold}")
+    Double threshold;
+    @Value("${default-config.hot-counter.detect-window}")
+    Long detectWindow;
+    @Value("${default-config.hot-counter.ttl}")
+    Long ttl;
+    @Value("${default-config.hot-counter.fold-batch}")
+    Integer foldBatch;
+    @Value("${default-config.hot-counter.lease}")
+    Long lease;
+    @Value("${default-config.hot-counter.read-expire}")
+    Long readExpire;
+    /**
+     * 当前统计窗口内各推文的计数变化量
+     */
+    private volatile ConcurrentHashMap<Long, LongAdder> window = new ConcurrentHashMap<>();
+    private volatile Set<Long> hot = Set.of();
+    private Cache<Long, Map<ChirperCounter, Long>> unfoldedCache;
+    private Counter promotedCounter;
+    private Counter foldedCounter;
+    private Timer foldTimer;
+
+    @PostConstruct
+    public void init() {
+        unfoldedCache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(readExpire))
+                .build();
+        Gauge.builder("chirper.counter.hot", this, service -> service.hot.size())
+                .description("计数写入分片的热门推文数")
+                .register(meterRegistry);
+        promotedCounter = Counter.builder("chirper.counter.hot.promoted")
+                .description("新标记为热门的推文数")
+                .register(meterRegistry);
+        foldedCounter = Counter.builder("chirper.counter.shard.folded")
+                .description("从分片合并回推文的计数变化量")
+                .register(meterRegistry);
+        foldTimer = Timer.builder("chirper.counter.shard.fold")
+                .description("一轮分片合并的耗时")
+                .register(meterRegistry);
+        try {
+            this.refresh();
+        } catch (Exception e) {
+            log.warn("同步热门推文失败，错误:", e);
+        }
+    }
+
+    @Override
+    @Transactional
+    public void increment(ChirperCounter counter, Map<Long, Long> deltas) {
+        if (CollectionUtils.isEmpty(deltas)) {
+            return;
+        }
+        Set<Long> hotIds = hot;
+        Map<Long, Long> normal = new HashMap<>();
+        List<CounterShard> shardDeltas = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        deltas.forEach((chirperId, delta) -> {
+            if (hotIds.contains(chirperId)) {
+                shardDeltas.add(new CounterShard(chirperId, counter.name(), random.nextInt(shards), delta));
+            } else {
+                normal.put(chirperId, delta);
+            }
+        });
+        if (!normal.isEmpty()) {
+            chirperMapper.incrementCounters(counter.getColumn(), normal);
+        }
+        if (!shardDeltas.isEmpty()) {
+            counterShardMapper.incrementShards(shardDeltas);
+        }
+        ConcurrentHashMap<Long, LongAdder> current = window;
+        deltas.forEach((chirperId, delta) -> current.computeIfAbsent(chirperId, id -> new LongAdder()).add(Math.abs(delta)));
+    }
+
+    @Override
+    public Map<Long, Map<ChirperCounter, Long>> getUnfolded(Collection<Long> chirperIds) {
+        Set<Long> hotIds = hot;
+        if (hotIds.isEmpty() || CollectionUtils.isEmpty(chirperIds)) {
+            return Map.of();
+        }
+        List<Long> targets = chirperIds.stream().filter(hotIds::contains).distinct().toList();
+        if (targets.isEmpty()) {
+            return Map.of();
+        }
+        return unfoldedCache.getAll(targets, ids -> {
+            Map<Long, Map<ChirperCounter, Long>> loaded = new HashMap<>();
+            ids.forEach(id -> loaded.put(id, new EnumMap<>(ChirperCounter.class)));
+            counterShardMapper.sumUnfolded(ids).forEach(row ->
+                    loaded.get(row.getChirperId()).put(ChirperCounter.valueOf(row.getCounter()), row.getDelta()));
+            return loaded;
+        });
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${default-config.hot-counter.detect-window}")
+    public void detect() {
+        ConcurrentHashMap<Long, LongAdder> drained = window;
+        window = new ConcurrentHashMap<>();
+        double seconds = detectWindow / 1000.0;
+        List<Long> over = drained.entrySet().stream()
+                .filter(entry -> entry.getValue().sum() / seconds >= threshold)
+                .map(Map.Entry::getKey)
+                .toList();
+        if (over.isEmpty()) {
+            return;
+        }
+        //仍然热门的推文一并延长过期时间
+        String key = CacheKey.HOT_COUNTER_BOUND_KEY.getKey();
+        double expireAt = System.currentTimeMillis() + Duration.ofSeconds(ttl).toMillis();
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                over.forEach(chirperId -> ops.opsForZSet().add(key, chirperId.toString(), expireAt));
+                return null;
+            }
+        });
+        Set<Long> hotIds = hot;
+        List<Long> promoted = over.stream().filter(chirperId -> !hotIds.contains(chirperId)).toList();
+        if (!promoted.isEmpty()) {
+            Set<Long> merged = new HashSet<>(hotIds);
+            merged.addAll(promoted);
+            hot = Set.copyOf(merged);
+            promotedCounter.increment(promoted.size());
+            log.info("推文计数变化速率超过{}/s，转为分片写入:{}", threshold, promoted);
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${default-config.hot-counter.refresh-interval}")
+    public void refresh() {
+        Set<Object> members = redisTemplate.opsForZSet()
+                .rangeByScore(CacheKey.HOT_COUNTER_BOUND_KEY.getKey(), System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        hot = members == null ? Set.of() : members.stream()
+                .map(member -> Long.valueOf(String.valueOf(member)))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${default-config.hot-counter.fold-interval}")
+    public void fold() {
+        String leaseKey = CacheKey.SHARD_FOLD_LEASE_KEY.getKey();
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(leaseKey, token, Duration.ofMillis(lease));
+        if (!Boolean.TRUE.equals(acquired)) {
+            return;
+        }
+        try {
+            foldTimer.record(() -> {
+                long after = 0;
+                List<Long> chirperIds;
+                do {
+                    chirperIds = counterShardMapper.selectUnfoldedIds(after, foldBatch);
+                    if (!chirperIds.isEmpty()) {
+                        this.foldChunk(chirperIds);
+                        after = chirperIds.getLast();
+                    }
+                } while (chirperIds.size() >= foldBatch);
+                this.demote();
+            });
+        } catch (Exception e) {
+            log.error("合并计数分片失败，错误:", e);
+        } finally {
+            redisTemplate.execute(RELEASE_SCRIPT, redisTemplate.getValueSerializer(),
+                    new GenericToStringSerializer<>(Long.class), List.of(leaseKey), token);
+        }
+    }
+
+    private void foldChunk(List<Long> chirperIds) {
+        Long folded = transactionTemplate.execute(status -> {
+            List<CounterShard> rows = counterShardMapper.selectUnfoldedForUpdate(chirperIds);
+            if (rows.isEmpty()) {
+                return 0L;
+            }
+            Map<ChirperCounter, Map<Long, Long>> sums = new EnumMap<>(ChirperCounter.class);
+            rows.forEach(row -> sums.computeIfAbsent(ChirperCounter.valueOf(row.getCounter()), counter -> new HashMap<>())
+                    .merge(row.getChirperId(), row.getDelta(), Long::sum));
+            sums.forEach((counter, deltas) -> {
+                deltas.values().removeIf(delta -> delta == 0);
+                if (!deltas.isEmpty()) {
+                    chirperMapper.incrementCounters(counter.getColumn(), deltas);
+                }
+            });
+            counterShardMapper.resetShards(rows);
+            return rows.stream().mapToLong(row -> Math.abs(row.getDelta())).sum();
+        });
+        unfoldedCache.invalidateAll(chirperIds);
+        if (folded != null) {
+            foldedCounter.increment(folded);
+        }
+    }
+
+    /**
+     * 移除已过期的热门推文，并删除其已清零的分片行
+     */
+    private void demote() {
+        String key = CacheKey.HOT_COUNTER_BOUND_KEY.getKey();
+        long now = System.currentTimeMillis();
+        Set<Object> expired = redisTemplate.opsForZSet().rangeByScore(key, 0, now);
+        if (CollectionUtils.isEmpty(expired)) {
+            return;
+        }
+        redisTemplate.opsForZSet().removeRangeByScore(key, 0, now);
+        List<Long> chirperIds = expired.stream().map(member -> Long.valueOf(String.valueOf(member))).toList();
+        counterShardMapper.delete(new LambdaQueryWrapper<CounterShard>()
+                .in(CounterShard::getChirperId, chirperIds)
+                .eq(CounterShard::getDelta, 0));
+        log.info("推文计数恢复直接写入:{}", chirperIds);
+    }
+}
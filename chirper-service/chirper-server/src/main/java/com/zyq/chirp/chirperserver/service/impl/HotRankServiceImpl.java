@@ -0,0 +1,403 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirpclient.dto.ChirperQueryDto;
+import com.zyq.chirp.chirperserver.domain.enums.CacheKey;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperStatus;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperType;
+import com.zyq.chirp.chirperserver.domain.pojo.Chirper;
+import com.zyq.chirp.chirperserver.mapper.ChirperMapper;
+import com.zyq.chirp.chirperserver.service.ChirperCacheService;
+import com.zyq.chirp.chirperserver.service.HotRankService;
+import com.zyq.chirp.common.util.StringUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 推文热度排行服务实现类
+ * 热度 = log2(1 + 加权互动数) + (发布时间 - 基准时间) / 半衰期，
+ * 互动数每翻一倍，相当于晚发布一个半衰期，已入榜的推文无需随时间重新计算。
+ * 转发推文本身没有互动，不参与排行。
+ * 全站排行由一个实例在租约下从数据库装载，装载完成前以及超出排行保留范围的分页由数据库按相同的热度排序，
+ * 相同热度的推文按id降序排列，游标由热度与id共同组成。
+ * 作者与社区排行数量随用户增长，不随全站排行装载，写入时续期，长期无人发布或互动时自然过期；
+ * 读取时重建完成标记不存在则从数据库读取前size条重建，重建前写入的推文仍保留在排行中
+ */
+@Service
+@Slf4j
+public class HotRankServiceImpl implements HotRankService {
+    /**
+     * 热度计算的基准时间 2023-01-01 00:00:00 UTC，单位秒
+     */
+    private static final long EPOCH_SECOND = 1672531200L;
+    /**
+     * 数据库与Redis分别计算热度，比较时允许的误差
+     */
+    private static final double SCORE_EPSILON = 1e-9;
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+    @Resource
+    RedisTemplate<String, Object> redisTemplate;
+    @Resource
+    ChirperCacheService chirperCacheService;
+    @Resource
+    ChirperMapper chirperMapper;
+    @Value("${default-config.hot-rank.half-life}")
+    Long halfLife;
+    @Value("${default-config.hot-rank.size}")
+    Long size;
+    @Value("${default-config.hot-rank.scope-expire}")
+    Long scopeExpire;
+    @Value("${default-config.hot-rank.weight.like}")
+    Double likeWeight;
+    @Value("${default-config.hot-rank.weight.reply}")
+    Double replyWeight;
+    @Value("${default-config.hot-rank.weight.forward}")
+    Double forwardWeight;
+    @Value("${default-config.hot-rank.weight.quote}")
+    Double quoteWeight;
+    @Value("${default-config.hot-rank.warm-batch}")
+    Integer warmBatch;
+    @Value("${default-config.hot-rank.warm-lease}")
+    Long warmLease;
+
+    @PostConstruct
+    public void init() {
+        Thread.ofVirtual().start(this::warm);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${default-config.hot-rank.warm-interval}", initialDelayString = "${default-config.hot-rank.warm-interval}")
+    public void warm() {
+        String readyKey = CacheKey.HOT_RANK_READY_KEY.getKey();
+        String leaseKey = CacheKey.HOT_RANK_WARM_LEASE_KEY.getKey();
+        String token = UUID.randomUUID().toString();
+        try {
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(readyKey))
+                    || !Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(leaseKey, token, Duration.ofMillis(warmLease)))) {
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("获取热度排行装载租约失败，错误:", e);
+            return;
+        }
+        try {
+            long after = 0;
+            long count = 0;
+            List<Chirper> chirpers;
+            do {
+                chirpers = chirperMapper.selectPage(new Page<>(1, warmBatch, false),
+                        new LambdaQueryWrapper<Chirper>()
+                                .select(Chirper::getId, Chirper::getAuthorId, Chirper::getCommunityId, Chirper::getCreateTime,
+                                        Chirper::getLikeCount, Chirper::getReplyCount, Chirper::getForwardCount, Chirper::getQuoteCount)
+                                .eq(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus())
+                                .ne(Chirper::getType, ChirperType.FORWARD.name())
+                                .gt(Chirper::getId, after)
+                                .orderByAsc(Chirper::getId)).getRecords();
+                if (!chirpers.isEmpty()) {
+                    this.addAll(chirpers);
+                    after = chirpers.getLast().getId();
+                    count += chirpers.size();
+                }
+            } while (chirpers.size() >= warmBatch);
+            redisTemplate.opsForValue().set(readyKey, System.currentTimeMillis());
+            log.info("热度排行装载完成，推文{}条", count);
+        } catch (Exception e) {
+            log.error("装载热度排行失败，稍后重试，错误:", e);
+        } finally {
+            redisTemplate.execute(RELEASE_SCRIPT, redisTemplate.getValueSerializer(),
+                    new GenericToStringSerializer<>(Long.class), List.of(leaseKey), token);
+        }
+    }
+
+    /**
+     * 将从数据库读取的一批推文加入全站排行并裁剪，作者与社区排行在读取时重建
+     */
+    private void addAll(List<Chirper> chirpers) {
+        String key = this.getGlobalKey();
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                chirpers.forEach(chirper -> ops.opsForZSet().add(key, chirper.getId().toString(),
+                        getScore(chirper.getLikeCount(), chirper.getReplyCount(),
+                                chirper.getForwardCount(), chirper.getQuoteCount(), chirper.getCreateTime())));
+                ops.opsForZSet().removeRange(key, 0, -size - 1);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 从数据库读取作者或社区的前size条推文重建排行，并与重建标记一同续期
+     */
+    private void rebuild(Scope scope) {
+        LinkedHashMap<Long, Double> top = this.selectPage(scope, null, null, 0, size.intValue());
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                top.forEach((chirperId, score) -> ops.opsForZSet().add(scope.key(), chirperId.toString(), score));
+                ops.opsForZSet().removeRange(scope.key(), 0, -size - 1);
+                //标记先于排行设置过期时间，不会出现标记存在而排行已过期的情况
+                ops.opsForValue().set(getLoadedKey(scope.key()), 1, Duration.ofMillis(scopeExpire));
+                ops.expire(scope.key(), Duration.ofMillis(scopeExpire));
+                return null;
+            }
+        });
+        log.info("重建热度排行{}，推文{}条", scope.key(), top.size());
+    }
+
+    @Override
+    public void add(Collection<ChirperDto> chirperDtos) {
+        if (CollectionUtils.isEmpty(chirperDtos)) {
+            return;
+        }
+        List<ChirperDto> ranked = chirperDtos.stream().filter(this::isRankable).toList();
+        if (ranked.isEmpty()) {
+            return;
+        }
+        try {
+            Set<String> keys = new HashSet<>();
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                    ranked.forEach(chirperDto -> {
+                        double score = getScore(chirperDto);
+                        getScopeKeys(chirperDto.getAuthorId(), chirperDto.getCommunityId()).forEach(key -> {
+                            ops.opsForZSet().add(key, chirperDto.getId().toString(), score);
+                            keys.add(key);
+                        });
+                    });
+                    //只保留每个排行的前size条，作者与社区排行连同重建标记一起续期，标记已过期时续期不生效
+                    keys.forEach(key -> {
+                        ops.opsForZSet().removeRange(key, 0, -size - 1);
+                        if (!getGlobalKey().equals(key)) {
+                            ops.expire(getLoadedKey(key), Duration.ofMillis(scopeExpire));
+                            ops.expire(key, Duration.ofMillis(scopeExpire));
+                        }
+                    });
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.error("更新热度排行失败，推文:{}，错误:", ranked.stream().map(ChirperDto::getId).toList(), e);
+        }
+    }
+
+    @Override
+    public void refresh(Collection<Long> chirperIds) {
+        if (CollectionUtils.isEmpty(chirperIds)) {
+            return;
+        }
+        try {
+            Collection<ChirperDto> chirperDtos = chirperCacheService.getBodies(chirperIds).values();
+            List<ChirperDto> removed = chirperDtos.stream().filter(chirperDto -> !this.isRankable(chirperDto)).toList();
+            if (!removed.isEmpty()) {
+                redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                        RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                        removed.forEach(chirperDto -> getScopeKeys(chirperDto.getAuthorId(), chirperDto.getCommunityId())
+                                .forEach(key -> ops.opsForZSet().remove(key, chirperDto.getId().toString())));
+                        return null;
+                    }
+                });
+            }
+            this.add(chirperDtos);
+        } catch (Exception e) {
+            log.error("刷新热度排行失败，推文:{}，错误:", chirperIds, e);
+        }
+    }
+
+    @Override
+    public LinkedHashMap<Long, Double> getPage(ChirperQueryDto chirperQueryDto) {
+        Scope scope = this.getScope(chirperQueryDto);
+        if (scope == null) {
+            return null;
+        }
+        int pageSize = chirperQueryDto.getPageSize();
+        Double cursor = chirperQueryDto.getHotCursor();
+        Long cursorId = chirperQueryDto.getHotCursorId();
+        long offset = cursor != null ? 0 : (long) (chirperQueryDto.getPage() - 1) * pageSize;
+        if (this.getGlobalKey().equals(scope.key())) {
+            //全站排行尚未装载完成时交由数据库排序
+            if (!Boolean.TRUE.equals(redisTemplate.hasKey(CacheKey.HOT_RANK_READY_KEY.getKey()))) {
+                return this.selectPage(scope, cursor, cursorId, offset, pageSize);
+            }
+        } else if (!Boolean.TRUE.equals(redisTemplate.hasKey(this.getLoadedKey(scope.key())))) {
+            try {
+                this.rebuild(scope);
+            } catch (Exception e) {
+                log.warn("重建热度排行{}失败，交由数据库排序，错误:", scope.key(), e);
+                return this.selectPage(scope, cursor, cursorId, offset, pageSize);
+            }
+        }
+        ZSetOperations<String, Object> operations = redisTemplate.opsForZSet();
+        LinkedHashMap<Long, Double> page = new LinkedHashMap<>();
+        if (cursor != null) {
+            //键集分页：从上一页最后一条的热度与id之后继续读取，相同热度的推文按成员降序排列
+            String cursorMember = cursorId != null ? cursorId.toString() : null;
+            long start = 0;
+            while (page.size() < pageSize) {
+                Set<ZSetOperations.TypedTuple<Object>> tuples = operations.reverseRangeByScoreWithScores(scope.key(),
+                        Double.NEGATIVE_INFINITY, cursor, start, pageSize);
+                if (tuples == null || tuples.isEmpty()) {
+                    break;
+                }
+                for (ZSetOperations.TypedTuple<Object> tuple : tuples) {
+                    String member = String.valueOf(tuple.getValue());
+                    if (Objects.equals(tuple.getScore(), cursor) && (cursorMember == null || member.compareTo(cursorMember) >= 0)) {
+                        continue;
+                    }
+                    if (page.size() < pageSize) {
+                        page.put(Long.valueOf(member), tuple.getScore());
+                    }
+                }
+                start += tuples.size();
+            }
+        } else {
+            Set<ZSetOperations.TypedTuple<Object>> tuples = operations.reverseRangeWithScores(scope.key(), offset, offset + pageSize - 1);
+            if (tuples != null) {
+                tuples.forEach(tuple -> page.put(Long.valueOf(String.valueOf(tuple.getValue())), tuple.getScore()));
+            }
+        }
+        if (page.size() >= pageSize) {
+            return page;
+        }
+        //排行已满说明有推文被裁剪，超出保留范围的部分由数据库继续读取
+        Long card = operations.zCard(scope.key());
+        if (card == null || card < size) {
+            return page;
+        }
+        if (page.isEmpty() && cursor == null) {
+            return this.selectPage(scope, null, null, offset, pageSize);
+        }
+        if (!page.isEmpty()) {
+            Map.Entry<Long, Double> last = page.lastEntry();
+            cursor = last.getValue();
+            cursorId = last.getKey();
+        }
+        page.putAll(this.selectPage(scope, cursor, cursorId, 0, pageSize - page.size()));
+        return page;
+    }
+
+    /**
+     * 由数据库按热度读取一页推文，排序与排行相同
+     */
+    private LinkedHashMap<Long, Double> selectPage(Scope scope, Double cursor, Long cursorId, long offset, int limit) {
+        List<Chirper> chirpers = chirperMapper.selectHotPage(scope.authorId(), scope.communityId(),
+                likeWeight, replyWeight, forwardWeight, quoteWeight, EPOCH_SECOND, halfLife,
+                cursor, cursorId != null ? cursorId : Long.MIN_VALUE, SCORE_EPSILON, offset, limit);
+        LinkedHashMap<Long, Double> page = new LinkedHashMap<>();
+        chirpers.forEach(chirper -> page.put(chirper.getId(), this.getScore(chirper.getLikeCount(), chirper.getReplyCount(),
+                chirper.getForwardCount(), chirper.getQuoteCount(), chirper.getCreateTime())));
+        return page;
+    }
+
+    /**
+     * 查询条件对应的排行，只有全站、单个作者、单个社区三种范围且无其他过滤条件时可用
+     */
+    private Scope getScope(ChirperQueryDto chirperQueryDto) {
+        if (chirperQueryDto.getChirperId() != null
+                || chirperQueryDto.getType() != null
+                || Boolean.TRUE.equals(chirperQueryDto.getMedia())
+                || !StringUtil.isBlank(chirperQueryDto.getKeyword())) {
+            return null;
+        }
+        List<Long> userIds = chirperQueryDto.getUserIds();
+        Long communityId = chirperQueryDto.getCommunityId();
+        if (CollectionUtils.isEmpty(userIds)) {
+            return communityId == null
+                    ? new Scope(this.getGlobalKey(), null, null)
+                    : new Scope(this.getCommunityKey(communityId), null, communityId);
+        }
+        if (userIds.size() == 1 && communityId == null) {
+            return new Scope(this.getAuthorKey(userIds.getFirst()), userIds.getFirst(), null);
+        }
+        return null;
+    }
+
+    private List<String> getScopeKeys(Long authorId, Long communityId) {
+        List<String> keys = new ArrayList<>();
+        keys.add(this.getGlobalKey());
+        keys.add(this.getAuthorKey(authorId));
+        if (communityId != null) {
+            keys.add(this.getCommunityKey(communityId));
+        }
+        return keys;
+    }
+
+    private boolean isRankable(ChirperDto chirperDto) {
+        return Objects.equals(ChirperStatus.ACTIVE.getStatus(), chirperDto.getStatus())
+                && !ChirperType.FORWARD.name().equals(chirperDto.getType());
+    }
+
+    private double getScore(ChirperDto chirperDto) {
+        return this.getScore(chirperDto.getLikeCount(), chirperDto.getReplyCount(),
+                chirperDto.getForwardCount(), chirperDto.getQuoteCount(), chirperDto.getCreateTime());
+    }
+
+    private double getScore(Integer likeCount, Integer replyCount, Integer forwardCount, Integer quoteCount, Timestamp createTime) {
+        double engagement = likeWeight * Optional.ofNullable(likeCount).orElse(0)
+                + replyWeight * Optional.ofNullable(replyCount).orElse(0)
+                + forwardWeight * Optional.ofNullable(forwardCount).orElse(0)
+                + quoteWeight * Optional.ofNullable(quoteCount).orElse(0);
+        long createSecond = createTime != null
+                ? createTime.getTime() / 1000
+                : System.currentTimeMillis() / 1000;
+        return Math.log1p(Math.max(engagement, 0)) / Math.log(2) + (double) (createSecond - EPOCH_SECOND) / halfLife;
+    }
+
+    private String getGlobalKey() {
+        return STR."\{CacheKey.HOT_RANK_BOUND_KEY.getKey()}:global";
+    }
+
+    private String getAuthorKey(Long authorId) {
+        return STR."\{CacheKey.HOT_RANK_BOUND_KEY.getKey()}:author:\{authorId}";
+    }
+
+    private String getCommunityKey(Long communityId) {
+        return STR."\{CacheKey.HOT_RANK_BOUND_KEY.getKey()}:community:\{communityId}";
+    }
+
+    /**
+     * 作者或社区排行对应的重建标记
+     */
+    private String getLoadedKey(String scopeKey) {
+        return CacheKey.HOT_RANK_LOADED_BOUND_KEY.getKey() + scopeKey.substring(CacheKey.HOT_RANK_BOUND_KEY.getKey().length());
+    }
+
+    /**
+     * 排行的范围，作者与社区同时为null时为全站
+     */
+    private record Scope(String key, Long authorId, Long communityId) {
+    }
+}
@@ -0,0 +1,268 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirperserver.domain.enums.CacheKey;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperStatus;
+import com.zyq.chirp.chirperserver.domain.enums.InteractionType;
+import com.zyq.chirp.chirperserver.domain.pojo.Chirper;
+import com.zyq.chirp.chirperserver.domain.pojo.Like;
+import com.zyq.chirp.chirperserver.mapper.ChirperMapper;
+import com.zyq.chirp.chirperserver.mapper.LikeMapper;
+import com.zyq.chirp.chirperserver.service.InteractionService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 用户互动状态服务实现类
+ * 位图以序列化后的字节存放在Redis中，同一用户的三个位图使用相同的hash tag，一次MGET即可读出；
+ * 最近活跃用户的位图保留在本地LRU缓存中，本地缓存中的位图只读，修改时替换为新的对象。
+ * 修改时读出位图、修改后以Lua脚本比较并替换，Redis中的值已被其他实例修改时重试，多次失败则删除缓存，
+ * 下次读取时从数据库重建。
+ * 位图未缓存时的修改、删除缓存都会递增该位图的版本号，从数据库重建的位图只有在版本号与重建前相同时才写回，
+ * 避免重建期间发生的互动被旧的位图覆盖
+ */
+@Service
+@Slf4j
+public class InteractionServiceImpl implements InteractionService {
+    private static final int MAX_RETRIES = 3;
+    /**
+     * 值与读取时相同才写入，ARGV[3]为过期时间(毫秒)
+     */
+    private static final DefaultRedisScript<Long> COMPARE_AND_SET_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3])
+                return 1
+            end
+            return 0
+            """, Long.class);
+    /**
+     * 位图不存在且版本号与重建前读取的相同才写入，版本号已变化返回-1，ARGV[3]为过期时间(毫秒)
+     */
+    private static final DefaultRedisScript<Long> SET_IF_VERSION_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                return 0
+            end
+            if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then
+                return -1
+            end
+            redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3])
+            return 1
+            """, Long.class);
+    private static final byte[] INITIAL_VERSION = "0".getBytes(StandardCharsets.UTF_8);
+    @Resource
+    RedisTemplate<String, byte[]> byteRedisTemplate;
+    @Resource
+    LikeMapper likeMapper;
+    @Resource
+    ChirperMapper chirperMapper;
+    @Value("${default-config.interaction.expire}")
+    Long expire;
+    @Value("${default-config.interaction.local-size}")
+    Long localSize;
+    @Value("${default-config.interaction.local-expire}")
+    Long localExpire;
+    private Cache<Long, Map<InteractionType, Roaring64Bitmap>> nearCache;
+
+    @PostConstruct
+    public void init() {
+        nearCache = Caffeine.newBuilder()
+                .maximumSize(localSize)
+                .expireAfterWrite(Duration.ofSeconds(localExpire))
+                .build();
+    }
+
+    @Override
+    public void add(InteractionType type, Long userId, Collection<Long> chirperIds) {
+        if (userId == null || CollectionUtils.isEmpty(chirperIds)) {
+            return;
+        }
+        this.modify(type, userId, bitmap -> chirperIds.forEach(bitmap::addLong));
+    }
+
+    @Override
+    public void remove(InteractionType type, Long userId, Collection<Long> chirperIds) {
+        if (userId == null || CollectionUtils.isEmpty(chirperIds)) {
+            return;
+        }
+        this.modify(type, userId, bitmap -> chirperIds.forEach(bitmap::removeLong));
+    }
+
+    @Override
+    public void evict(InteractionType type, Collection<Long> userIds) {
+        if (CollectionUtils.isEmpty(userIds)) {
+            return;
+        }
+        userIds.forEach(userId -> this.incrementVersion(type, userId));
+        byteRedisTemplate.delete(userIds.stream().map(userId -> this.getKey(type, userId)).toList());
+        nearCache.invalidateAll(userIds);
+    }
+
+    @Override
+    public void fill(Collection<ChirperDto> chirperDtos, Long userId) {
+        if (CollectionUtils.isEmpty(chirperDtos) || userId == null) {
+            return;
+        }
+        Map<InteractionType, Roaring64Bitmap> bitmaps = nearCache.get(userId, this::load);
+        chirperDtos.forEach(chirperDto -> bitmaps.forEach((type, bitmap) ->
+                type.set(chirperDto, bitmap.contains(chirperDto.getId()))));
+    }
+
+    /**
+     * 一次读出用户的全部位图与版本号，不存在的位图从数据库重建并写回Redis
+     */
+    private Map<InteractionType, Roaring64Bitmap> load(Long userId) {
+        InteractionType[] types = InteractionType.values();
+        List<String> keys = new ArrayList<>();
+        Arrays.stream(types).forEach(type -> keys.add(this.getKey(type, userId)));
+        Arrays.stream(types).forEach(type -> keys.add(this.getVersionKey(type, userId)));
+        List<byte[]> values = byteRedisTemplate.opsForValue().multiGet(keys);
+        Map<InteractionType, Roaring64Bitmap> bitmaps = new EnumMap<>(InteractionType.class);
+        for (int i = 0; i < types.length; i++) {
+            byte[] value = values != null ? values.get(i) : null;
+            if (value != null) {
+                bitmaps.put(types[i], this.deserialize(value));
+            } else {
+                byte[] version = values != null ? values.get(types.length + i) : null;
+                bitmaps.put(types[i], this.rebuildAndStore(types[i], userId, version));
+            }
+        }
+        return bitmaps;
+    }
+
+    /**
+     * 从数据库重建位图，版本号未变化时写回Redis；重建期间位图被修改过则按新的版本号重新读取数据库
+     * @param version 重建前读取的版本号，为空表示从未修改过
+     */
+    private Roaring64Bitmap rebuildAndStore(InteractionType type, Long userId, byte[] version) {
+        String key = this.getKey(type, userId);
+        String versionKey = this.getVersionKey(type, userId);
+        byte[] expireMillis = String.valueOf(Duration.ofSeconds(expire).toMillis()).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; ; i++) {
+            Roaring64Bitmap bitmap = this.rebuild(type, userId);
+            Long stored = byteRedisTemplate.execute(SET_IF_VERSION_SCRIPT, RedisSerializer.byteArray(), new GenericToStringSerializer<>(Long.class),
+                    List.of(key, versionKey), version != null ? version : INITIAL_VERSION, this.serialize(bitmap), expireMillis);
+            //已写入，或已被其他请求按相同的版本号写入
+            if (!Long.valueOf(-1).equals(stored)) {
+                return bitmap;
+            }
+            if (i + 1 >= MAX_RETRIES) {
+                log.warn("重建互动位图时版本号多次变化，本次不写回缓存，用户:{}，类型:{}", userId, type);
+                return bitmap;
+            }
+            version = byteRedisTemplate.opsForValue().get(versionKey);
+        }
+    }
+
+    /**
+     * 递增位图的版本号，使正在进行的重建不再写回
+     */
+    private void incrementVersion(InteractionType type, Long userId) {
+        String versionKey = this.getVersionKey(type, userId);
+        byteRedisTemplate.opsForValue().increment(versionKey);
+        byteRedisTemplate.expire(versionKey, Duration.ofSeconds(expire));
+    }
+
+    private Roaring64Bitmap rebuild(InteractionType type, Long userId) {
+        Roaring64Bitmap bitmap = new Roaring64Bitmap();
+        if (InteractionType.LIKE == type) {
+            likeMapper.selectList(new LambdaQueryWrapper<Like>()
+                            .select(Like::getChirperId)
+                            .eq(Like::getUserId, userId))
+                    .forEach(like -> bitmap.addLong(like.getChirperId()));
+        } else {
+            chirperMapper.selectList(new LambdaQueryWrapper<Chirper>()
+                            .select(Chirper::getReferencedChirperId)
+                            .eq(Chirper::getAuthorId, userId)
+                            .eq(Chirper::getType, type.name())
+                            .eq(Chirper::getStatus, ChirperStatus.ACTIVE.getStatus()))
+                    .forEach(chirper -> bitmap.addLong(chirper.getReferencedChirperId()));
+        }
+        return bitmap;
+    }
+
+    private void modify(InteractionType type, Long userId, Consumer<Roaring64Bitmap> modifier) {
+        String key = this.getKey(type, userId);
+        try {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                byte[] current = byteRedisTemplate.opsForValue().get(key);
+                if (current == null) {
+                    //未缓存，下次读取时重建，本地缓存中可能是旧值；递增版本号使正在进行的重建不写回旧的位图
+                    this.incrementVersion(type, userId);
+                    nearCache.invalidate(userId);
+                    return;
+                }
+                Roaring64Bitmap bitmap = this.deserialize(current);
+                modifier.accept(bitmap);
+                Long swapped = byteRedisTemplate.execute(COMPARE_AND_SET_SCRIPT, RedisSerializer.byteArray(), new GenericToStringSerializer<>(Long.class),
+                        List.of(key), current, this.serialize(bitmap), String.valueOf(Duration.ofSeconds(expire).toMillis()).getBytes(StandardCharsets.UTF_8));
+                if (Long.valueOf(1).equals(swapped)) {
+                    nearCache.asMap().computeIfPresent(userId, (id, bitmaps) -> {
+                        Map<InteractionType, Roaring64Bitmap> replaced = new EnumMap<>(bitmaps);
+                        replaced.put(type, bitmap);
+                        return replaced;
+                    });
+                    return;
+                }
+            }
+            log.warn("修改互动位图冲突次数过多，删除缓存，用户:{}，类型:{}", userId, type);
+        } catch (Exception e) {
+            log.warn("修改互动位图失败，删除缓存，用户:{}，类型:{}，错误:", userId, type, e);
+        }
+        this.incrementVersion(type, userId);
+        byteRedisTemplate.delete(key);
+        nearCache.invalidate(userId);
+    }
+
+    private byte[] serialize(Roaring64Bitmap bitmap) {
+        bitmap.runOptimize();
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) bitmap.serializedSizeInBytes());
+        try (DataOutputStream dataOut = new DataOutputStream(out)) {
+            bitmap.serialize(dataOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private Roaring64Bitmap deserialize(byte[] value) {
+        Roaring64Bitmap bitmap = new Roaring64Bitmap();
+        try (DataInputStream dataIn = new DataInputStream(new ByteArrayInputStream(value))) {
+            bitmap.deserialize(dataIn);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 同一用户的位图使用相同的hash tag，保证在集群中位于同一个槽
+     */
+    private String getKey(InteractionType type, Long userId) {
+        return STR."\{CacheKey.INTERACTION_BOUND_KEY.getKey()}:{\{userId}}:\{type.name()}";
+    }
+
+    /**
+     * 位图的版本号，与位图位于同一个槽
+     */
+    private String getVersionKey(InteractionType type, Long userId) {
+        return STR."\{this.getKey(type, userId)}:version";
+    }
+}
@@ -5,22 +5,35 @@ import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.zyq.chirp.adviceclient.dto.NotificationDto;
 import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirpclient.dto.CursorPageDto;
 import com.zyq.chirp.chirpclient.dto.LikeDto;
 import com.zyq.chirp.chirperserver.aspect.Statistic;
+import com.zyq.chirp.chirperserver.context.LookupContext;
 import com.zyq.chirp.chirperserver.domain.enums.ActionTypeEnums;
 import com.zyq.chirp.chirperserver.domain.enums.CacheKey;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperCounter;
+import com.zyq.chirp.chirperserver.domain.enums.InteractionType;
 import com.zyq.chirp.chirperserver.domain.pojo.Like;
 import com.zyq.chirp.chirperserver.mapper.LikeMapper;
+import com.zyq.chirp.chirperserver.service.ChirperCacheService;
+import com.zyq.chirp.chirperserver.service.ChirperCounterService;
 import com.zyq.chirp.chirperserver.service.ChirperService;
+import com.zyq.chirp.chirperserver.service.InteractionService;
 import com.zyq.chirp.chirperserver.service.LikeService;
+import com.zyq.chirp.chirperserver.util.CursorUtil;
 import com.zyq.chirp.common.domain.exception.ChirpException;
 import com.zyq.chirp.common.domain.model.Code;
 import com.zyq.chirp.common.mq.enums.DefaultOperation;
 import com.zyq.chirp.common.mq.model.Action;
+import com.zyq.chirp.common.mq.model.OutboxMessage;
+import com.zyq.chirp.common.mq.service.OutboxService;
 import com.zyq.chirp.common.util.RetryUtil;
 import com.zyq.chirp.common.util.StringUtil;
 import com.zyq.chirp.communityclient.client.CommunityClient;
 import com.zyq.chirp.communityclient.dto.CommunityDto;
+import com.zyq.chirp.userclient.client.UserClient;
+import com.zyq.chirp.userclient.dto.UserDto;
+import com.zyq.chirp.userclient.enums.RelationType;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -28,12 +41,14 @@ import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
 
 import java.sql.Timestamp;
-import java.time.LocalDateTime;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
@@ -48,11 +63,17 @@ import java.util.stream.Collectors;
 @Slf4j
 @CacheConfig(cacheNames = "like:chirper")
 public class LikeServiceImpl implements LikeService {
+    private static final int FOLLOWEES_PHASE = 0;
+    private static final int OTHERS_PHASE = 1;
     @Resource
     LikeMapper likeMapper;
 
     @Resource
     KafkaTemplate<String, Object> kafkaTemplate;
+    @Resource
+    OutboxService outboxService;
+    @Resource
+    TransactionTemplate transactionTemplate;
     
     @Value("${mq.topic.site-message.like}")
     String topic;
@@ -68,13 +89,28 @@ public class LikeServiceImpl implements LikeService {
     @Value("${mq.topic.chirper.like.record}")
     String LIKE_RECORD_TOPIC;
 
+    @Resource
+    ChirperCacheService chirperCacheService;
+    @Resource
+    ChirperCounterService chirperCounterService;
+    @Resource
+    InteractionService interactionService;
+    @Resource
+    RedisTemplate<String, Object> redisTemplate;
+    @Resource
+    UserClient userClient;
+    @Value("${default-config.like-timeline.head-size}")
+    Integer headSize;
+    @Value("${default-config.like-timeline.head-expire}")
+    Long headExpire;
+
     /**
      * 添加点赞
      * 使用@Statistic注解统计浏览量
      * 使用@Cacheable注解缓存点赞状态
      */
     @Override
-    @Statistic(id = "#likeDto.chirperId", key = {CacheKey.VIEW_COUNT_BOUND_KEY})
+    @Statistic(id = "#likeDto.chirperId", viewer = "#likeDto.userId", key = {CacheKey.VIEW_COUNT_BOUND_KEY})
     @Cacheable(key = "#likeDto.userId+':'+#likeDto.chirperId")
     public void addLike(LikeDto likeDto) {
         if (likeDto.getUserId() == null || likeDto.getChirperId() == null) {
@@ -88,43 +124,50 @@ public class LikeServiceImpl implements LikeService {
                 likeDto.getChirperId(),
                 System.currentTimeMillis()
         );
-        kafkaTemplate.send(LIKE_RECORD_TOPIC, action);
+        // 以用户与推文作为消息键，同一点赞的操作进入同一分区，消费时保持顺序
+        kafkaTemplate.send(LIKE_RECORD_TOPIC, this.getKey(likeDto), action);
     }
 
     /**
      * 批量保存点赞记录
-     * 处理来自Kafka的点赞消息，更新数据库并发送通知
+     * 处理来自Kafka的点赞消息，只插入尚未点赞的记录，计数与通知只针对新增的点赞
      */
     @Override
     public void saveLike(List<Action<Long, Long>> actions) {
         // 转换为点赞实体
+        // 以点赞时间作为记录时间，取消点赞只删除早于取消操作的记录
         List<Like> likes = actions.stream().map(action -> new Like(
                 action.getTarget(),
                 action.getOperator(),
-                Timestamp.valueOf(LocalDateTime.now()))).toList();
+                new Timestamp(action.getActionTime()))).toList();
         try {
-            // 批量插入点赞记录
-            RetryUtil.doDBRetry(() -> likeMapper.insertList(likes));
-            // 统计每个推文的点赞数并发送增量消息
-            Map<Long, Long> likeCount = likes.stream().collect(Collectors.groupingBy(Like::getChirperId, Collectors.counting()));
-            likeCount.forEach((chirperId, count) -> {
-                Action<Long, Long> increLikeAction = new Action<>();
-                increLikeAction.setTarget(chirperId);
-                increLikeAction.setActionType(ActionTypeEnums.LIKE.getAction());
-                increLikeAction.setOperation(DefaultOperation.INCREMENT.getOperation());
-                increLikeAction.setActionTime(System.currentTimeMillis());
-                increLikeAction.setMulti(Math.toIntExact(count));
-                kafkaTemplate.send(LIKE_INCREMENT_COUNT_TOPIC, increLikeAction);
-            });
-
-            // 发送点赞通知
-            actions.forEach(action -> {
-                NotificationDto notificationDto = NotificationDto.builder()
-                        .sonEntity(String.valueOf(action.getTarget()))
-                        .senderId(action.getOperator())
-                        .build();
-                kafkaTemplate.send(topic, notificationDto);
-            });
+            // 同一点赞的消息只由一个消费者按顺序处理，插入前后的差集即为新增的点赞
+            Set<String> existing = this.selectExisting(likes);
+            List<Like> absent = likes.stream()
+                    .filter(like -> !existing.contains(this.getKey(like)))
+                    .toList();
+            if (absent.isEmpty()) {
+                return;
+            }
+            var ref = new Object() {
+                List<Like> newLikes = List.of();
+            };
+            // 批量插入点赞记录，推文不存在的记录不会插入；点赞数增量与通知消息在同一个事务中写入发件箱
+            RetryUtil.doDBRetry(() -> transactionTemplate.execute(status -> {
+                likeMapper.insertList(absent);
+                Set<String> inserted = this.selectExisting(absent);
+                ref.newLikes = absent.stream()
+                        .filter(like -> inserted.contains(this.getKey(like)))
+                        .toList();
+                outboxService.save(this.getLikeMessages(ref.newLikes));
+                return true;
+            }));
+            List<Like> newLikes = ref.newLikes;
+            // 同步用户的点赞位图
+            newLikes.stream()
+                    .collect(Collectors.groupingBy(Like::getUserId, Collectors.mapping(Like::getChirperId, Collectors.toList())))
+                    .forEach((userId, chirperIds) -> interactionService.add(InteractionType.LIKE, userId, chirperIds));
+            this.evictHead(newLikes.stream().map(Like::getUserId).toList());
         } catch (ExecutionException e) {
             log.error("插入点赞时发生无法成功的错误，点赞信息:{},错误:", likes, e);
         } catch (Exception e) {
@@ -132,7 +175,7 @@ public class LikeServiceImpl implements LikeService {
             // 失败重试
             actions.forEach(action -> {
                 log.info("尝试重发:{}", action);
-                kafkaTemplate.send(LIKE_RECORD_TOPIC, action);
+                kafkaTemplate.send(LIKE_RECORD_TOPIC, STR."\{action.getOperator()}:\{action.getTarget()}", action);
             });
         }
     }
@@ -155,7 +198,34 @@ public class LikeServiceImpl implements LikeService {
                 likeDto.getChirperId(),
                 System.currentTimeMillis()
         );
-        kafkaTemplate.send(LIKE_RECORD_TOPIC, action);
+        kafkaTemplate.send(LIKE_RECORD_TOPIC, this.getKey(likeDto), action);
+    }
+
+    /**
+     * 构建新增点赞对应的点赞数增量与点赞通知消息
+     */
+    private List<OutboxMessage> getLikeMessages(List<Like> newLikes) {
+        List<OutboxMessage> messages = new ArrayList<>();
+        // 统计每个推文的点赞数并发送增量消息
+        newLikes.stream().collect(Collectors.groupingBy(Like::getChirperId, Collectors.counting()))
+                .forEach((chirperId, count) -> {
+                    Action<Long, Long> increLikeAction = new Action<>();
+                    increLikeAction.setTarget(chirperId);
+                    increLikeAction.setActionType(ActionTypeEnums.LIKE.getAction());
+                    increLikeAction.setOperation(DefaultOperation.INCREMENT.getOperation());
+                    increLikeAction.setActionTime(System.currentTimeMillis());
+                    increLikeAction.setMulti(Math.toIntExact(count));
+                    messages.add(outboxService.build(LIKE_INCREMENT_COUNT_TOPIC, null, increLikeAction));
+                });
+        // 点赞通知
+        newLikes.forEach(like -> {
+            NotificationDto notificationDto = NotificationDto.builder()
+                    .sonEntity(String.valueOf(like.getChirperId()))
+                    .senderId(like.getUserId())
+                    .build();
+            messages.add(outboxService.build(topic, null, notificationDto));
+        });
+        return messages;
     }
 
     /**
@@ -174,24 +244,24 @@ public class LikeServiceImpl implements LikeService {
                 var ref = new Object() {
                     int affectRows = 0;
                 };
-                // 批量删除点赞记录
-                RetryUtil.doDBRetry(() ->
-                {
+                // 批量删除点赞记录，如果删除成功，在同一个事务中写入减少点赞数的消息
+                RetryUtil.doDBRetry(() -> transactionTemplate.execute(status -> {
                     ref.affectRows = likeMapper.deleteList(likes);
+                    if (ref.affectRows > 0) {
+                        Action<Long, Long> action = new Action<>(
+                                ActionTypeEnums.LIKE.getAction(),
+                                DefaultOperation.DECREMENT.getOperation(),
+                                ref.affectRows,
+                                null,
+                                chirperId,
+                                System.currentTimeMillis()
+                        );
+                        outboxService.save(LIKE_INCREMENT_COUNT_TOPIC, null, action);
+                    }
                     return true;
-                });
-                // 如果删除成功，发送减少点赞数的消息
-                if (ref.affectRows > 0) {
-                    Action<Long, Long> action = new Action<>(
-                            ActionTypeEnums.LIKE.getAction(),
-                            DefaultOperation.DECREMENT.getOperation(),
-                            ref.affectRows,
-                            null,
-                            chirperId,
-                            System.currentTimeMillis()
-                    );
-                    kafkaTemplate.send(LIKE_INCREMENT_COUNT_TOPIC, action);
-                }
+                }));
+                likes.forEach(like -> interactionService.remove(InteractionType.LIKE, like.getUserId(), List.of(chirperId)));
+                this.evictHead(likes.stream().map(Like::getUserId).toList());
             } catch (ExecutionException e) {
                 log.error("删除点赞时发生无法成功的错误，点赞信息:{},错误:", likes, e);
             } catch (Exception e) {
@@ -206,7 +276,7 @@ public class LikeServiceImpl implements LikeService {
                             System.currentTimeMillis()
                     );
                     log.warn("尝试重发:{}", action);
-                    kafkaTemplate.send(LIKE_RECORD_TOPIC, action);
+                    kafkaTemplate.send(LIKE_RECORD_TOPIC, this.getKey(like), action);
                 });
             }
         });
@@ -217,24 +287,8 @@ public class LikeServiceImpl implements LikeService {
      * 处理来自Kafka的点赞数量变更消息
      */
     @Override
-    public void modifyLikeCount(List<Action<Long, Long>> actions) {
-        Map<Long, List<Action<Long, Long>>> collect =
-                actions.stream().collect(Collectors.groupingBy(Action::getTarget));
-        collect.forEach((chirperId, actionList) -> {
-            int count = Action.getIncCount(actionList);
-            try {
-                RetryUtil.doDBRetry(() -> likeMapper.updateChirperLikeCount(chirperId, count));
-            } catch (ExecutionException e) {
-                log.error("修改点赞数时发生无法成功的错误，推文id:{}", chirperId, e);
-            } catch (Exception e) {
-                log.error("修改点赞数失败,推文id:{}，数量:{},错误:", chirperId, count, e);
-                // 失败重试
-                for (Action<Long, Long> action : actionList) {
-                    log.warn("尝试重发:{}", action);
-                    kafkaTemplate.send(LIKE_INCREMENT_COUNT_TOPIC, action);
-                }
-            }
-        });
+    public void modifyLikeCount(List<Action<Long, Long>> actions, List<Integer> partitions, List<Long> offsets) {
+        chirperCounterService.add(ChirperCounter.LIKE, actions, partitions, offsets);
     }
 
     /**
@@ -254,17 +308,151 @@ public class LikeServiceImpl implements LikeService {
     }
 
     /**
-     * 获取用户的点赞记录
-     * 分页查询
+     * 获取用户的点赞时间线
+     * 优先从缓存的最近点赞中读取，超出缓存范围时按(user_id, create_time, chirper_id)索引定位游标位置，
+     * 任意深度的分页代价都与第一页相同
      */
     @Override
-    public List<Like> getLikeRecord(Long userId, Integer page) {
-        Page<Like> likePage = new Page<>(page, pageSize);
-        likePage.setSearchCount(false);
-        return likeMapper.selectPage(likePage, new LambdaQueryWrapper<Like>()
-                        .eq(Like::getUserId, userId)
-                        .orderByDesc(Like::getCreateTime))
-                .getRecords();
+    public List<Like> getLikeTimeline(Long userId, Like after, int limit) {
+        List<Like> head = this.getHead(userId);
+        List<Like> rest = after == null ? head : head.stream().filter(like -> this.isBefore(like, after)).toList();
+        //缓存中已是用户的全部点赞，或缓存中剩余的记录足够一页
+        if (head.size() < headSize || rest.size() >= limit) {
+            return rest.subList(0, Math.min(limit, rest.size()));
+        }
+        return this.selectTimeline(userId, after, limit);
+    }
+
+    /**
+     * 获取用户最近的点赞，不存在时从数据库加载
+     */
+    private List<Like> getHead(Long userId) {
+        String key = this.getHeadKey(userId);
+        if (redisTemplate.opsForValue().get(key) instanceof List<?> entries) {
+            return entries.stream().map(entry -> {
+                String[] parts = String.valueOf(entry).split(":");
+                return new Like(Long.valueOf(parts[1]), userId, new Timestamp(Long.parseLong(parts[0])));
+            }).toList();
+        }
+        List<Like> head = this.selectTimeline(userId, null, headSize);
+        redisTemplate.opsForValue().set(key,
+                head.stream().map(like -> STR."\{like.getCreateTime().getTime()}:\{like.getChirperId()}").toList(),
+                Duration.ofSeconds(headExpire));
+        return head;
+    }
+
+    /**
+     * 按点赞时间倒序查询游标之后的点赞，时间相同时按推文id倒序
+     */
+    private List<Like> selectTimeline(Long userId, Like after, int limit) {
+        LambdaQueryWrapper<Like> wrapper = new LambdaQueryWrapper<Like>()
+                .select(Like::getChirperId, Like::getUserId, Like::getCreateTime)
+                .eq(Like::getUserId, userId);
+        if (after != null) {
+            wrapper.and(condition -> condition.lt(Like::getCreateTime, after.getCreateTime())
+                    .or(tie -> tie.eq(Like::getCreateTime, after.getCreateTime())
+                            .lt(Like::getChirperId, after.getChirperId())));
+        }
+        wrapper.orderByDesc(Like::getCreateTime).orderByDesc(Like::getChirperId);
+        return likeMapper.selectPage(new Page<>(1, limit, false), wrapper).getRecords();
+    }
+
+    @Override
+    public CursorPageDto<UserDto> getLikedBy(Long chirperId, Long viewerId, boolean followeesFirst, String cursor) {
+        //关注的用户一次取出，只用于点赞记录的过滤，不逐个查询关系
+        Set<Long> followees = followeesFirst && viewerId != null
+                ? new HashSet<>(Objects.requireNonNullElse(userClient.getFollowingIds(viewerId).getBody(), List.of()))
+                : Set.of();
+        //游标依次为所处阶段、点赞时间、用户id，阶段0为关注的用户，阶段1为其余用户
+        int phase = followees.isEmpty() ? OTHERS_PHASE : FOLLOWEES_PHASE;
+        Like after = null;
+        if (cursor != null) {
+            long[] position = CursorUtil.decode(cursor, 3);
+            phase = (int) position[0];
+            after = new Like(chirperId, position[2], new Timestamp(position[1]));
+            //不优先展示关注、未登录或翻页期间取关了所有用户时，关注阶段的游标直接进入其余用户阶段
+            if (phase == FOLLOWEES_PHASE && followees.isEmpty()) {
+                phase = OTHERS_PHASE;
+                after = null;
+            }
+        }
+        //多取一条用于判断是否还有下一页
+        int limit = pageSize + 1;
+        List<Like> likes = new ArrayList<>(limit);
+        int followeeCount = 0;
+        if (phase == FOLLOWEES_PHASE) {
+            likes.addAll(this.selectLikers(chirperId, followees, after, limit));
+            followeeCount = likes.size();
+            after = null;
+        }
+        //其余用户按索引顺序读取，跳过已在关注阶段展示过的用户，跳过的数量不超过关注的用户数
+        while (likes.size() < limit) {
+            int batchSize = limit - likes.size();
+            List<Like> batch = this.selectLikers(chirperId, null, after, batchSize);
+            batch.stream().filter(like -> !followees.contains(like.getUserId())).forEach(likes::add);
+            if (batch.size() < batchSize) {
+                break;
+            }
+            after = batch.getLast();
+        }
+        boolean hasMore = likes.size() > pageSize;
+        List<Like> page = hasMore ? likes.subList(0, pageSize) : likes;
+        if (page.isEmpty()) {
+            return CursorPageDto.<UserDto>builder().records(List.of()).hasMore(false).build();
+        }
+        Like last = page.getLast();
+        int lastPhase = page.size() <= followeeCount ? FOLLOWEES_PHASE : OTHERS_PHASE;
+        //一次批量获取用户名与头像
+        Map<Long, UserDto> userDtoMap = LookupContext.current().getBasicInfo(page.stream().map(Like::getUserId).toList(),
+                ids -> userClient.getBasicInfo(ids).getBody());
+        List<UserDto> userDtos = page.stream()
+                .map(like -> userDtoMap.get(like.getUserId()))
+                .filter(Objects::nonNull)
+                .toList();
+        userDtos.stream()
+                .filter(userDto -> followees.contains(userDto.getId()))
+                .forEach(userDto -> userDto.setRelation(RelationType.FOLLOWING.getRelation()));
+        return CursorPageDto.<UserDto>builder()
+                .records(userDtos)
+                .cursor(hasMore ? CursorUtil.encode(lastPhase, last.getCreateTime().getTime(), last.getUserId()) : null)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    /**
+     * 按点赞时间倒序查询推文在游标之后的点赞，时间相同时按用户id倒序
+     * @param userIds 限定的用户，为null时不限定，为空集合时没有结果
+     */
+    private List<Like> selectLikers(Long chirperId, Collection<Long> userIds, Like after, int limit) {
+        LambdaQueryWrapper<Like> wrapper = new LambdaQueryWrapper<Like>()
+                .select(Like::getChirperId, Like::getUserId, Like::getCreateTime)
+                .eq(Like::getChirperId, chirperId);
+        if (userIds != null) {
+            if (userIds.isEmpty()) {
+                return List.of();
+            }
+            wrapper.in(Like::getUserId, userIds);
+        }
+        if (after != null) {
+            wrapper.and(condition -> condition.lt(Like::getCreateTime, after.getCreateTime())
+                    .or(tie -> tie.eq(Like::getCreateTime, after.getCreateTime())
+                            .lt(Like::getUserId, after.getUserId())));
+        }
+        wrapper.orderByDesc(Like::getCreateTime).orderByDesc(Like::getUserId);
+        return likeMapper.selectPage(new Page<>(1, limit, false), wrapper).getRecords();
+    }
+
+    private boolean isBefore(Like like, Like after) {
+        int compare = like.getCreateTime().compareTo(after.getCreateTime());
+        return compare < 0 || (compare == 0 && like.getChirperId() < after.getChirperId());
+    }
+
+    private void evictHead(Collection<Long> userIds) {
+        redisTemplate.delete(userIds.stream().distinct().map(this::getHeadKey).toList());
+    }
+
+    private String getHeadKey(Long userId) {
+        return STR."\{CacheKey.LIKE_HEAD_BOUND_KEY.getKey()}:\{userId}";
     }
 
     /**
@@ -275,6 +463,20 @@ public class LikeServiceImpl implements LikeService {
         return likeDto.getUserId() + ":" + likeDto.getChirperId();
     }
 
+    private String getKey(Like like) {
+        return like.getUserId() + ":" + like.getChirperId();
+    }
+
+    /**
+     * 查询已存在的点赞记录
+     * @return 已存在记录的键
+     */
+    private Set<String> selectExisting(List<Like> likes) {
+        return likeMapper.selectExisting(likes).stream()
+                .map(this::getKey)
+                .collect(Collectors.toSet());
+    }
+
     /**
      * 批量添加点赞记录
      */
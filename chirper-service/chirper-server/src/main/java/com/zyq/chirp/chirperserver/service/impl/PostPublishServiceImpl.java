@@ -0,0 +1,237 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.zyq.chirp.adviceclient.dto.NotificationDto;
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirperserver.domain.enums.CacheKey;
+import com.zyq.chirp.chirperserver.service.PostPublishService;
+import com.zyq.chirp.chirperserver.service.ReplyPermissionService;
+import com.zyq.chirp.chirperserver.service.TrendService;
+import com.zyq.chirp.chirperserver.util.TextEntityUtil;
+import com.zyq.chirp.common.domain.exception.ChirpException;
+import com.zyq.chirp.common.domain.model.Code;
+import com.zyq.chirp.common.mq.model.Message;
+import com.zyq.chirp.feedclient.dto.FeedBatchDto;
+import com.zyq.chirp.feedclient.dto.FeedDto;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * 推文发布后处理服务实现类
+ * 每条推文的处理分为@通知、Feed推送、话题计数三个阶段，完成的阶段记录在Redis中，
+ * 只有未完成的推文会被重发，重发或重复投递时跳过已完成的阶段，不会重复通知、推送或计数
+ */
+@Service
+@Slf4j
+public class PostPublishServiceImpl implements PostPublishService {
+    @Resource
+    TrendService trendService;
+    @Resource
+    ReplyPermissionService replyPermissionService;
+    @Resource
+    KafkaTemplate<String, Object> kafkaTemplate;
+    @Resource
+    MeterRegistry meterRegistry;
+    @Resource
+    RedisTemplate<String, Object> redisTemplate;
+    @Value("${mq.topic.site-message.mentioned}")
+    String MENTIONED_MSG_TOPIC;
+    @Value("${mq.topic.publish}")
+    String PUBLISH_TOPIC;
+    @Value("${default-config.post-publish.send-timeout}")
+    Long sendTimeout;
+    @Value("${default-config.post-publish.done-expire}")
+    Long doneExpire;
+    private DistributionSummary batchSummary;
+    private Timer processTimer;
+
+    @PostConstruct
+    public void init() {
+        batchSummary = DistributionSummary.builder("chirper.post-publish.batch")
+                .description("每批发布后处理的推文数")
+                .register(meterRegistry);
+        processTimer = Timer.builder("chirper.post-publish.process")
+                .description("一批推文发布后处理的耗时")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<Long> process(List<ChirperDto> chirperDtos) {
+        if (chirperDtos.isEmpty()) {
+            return List.of();
+        }
+        long start = System.nanoTime();
+        Map<Long, Set<Stage>> done = this.getDone(chirperDtos);
+        Map<Long, CompletableFuture<?>> mentionFutures = this.sendMentioned(chirperDtos.stream()
+                .filter(chirperDto -> !done.get(chirperDto.getId()).contains(Stage.MENTION))
+                .toList());
+        List<ChirperDto> feedPending = chirperDtos.stream()
+                .filter(chirperDto -> !done.get(chirperDto.getId()).contains(Stage.FEED))
+                .toList();
+        CompletableFuture<?> feedFuture = feedPending.isEmpty()
+                ? CompletableFuture.completedFuture(null)
+                : this.sendPublish(feedPending);
+        List<CompletableFuture<?>> futures = new ArrayList<>(mentionFutures.values());
+        futures.add(feedFuture);
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(sendTimeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("部分推文发布消息发送失败，只重发未完成的推文，错误:", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ChirpException(Code.ERR_SYSTEM, "发送推文发布消息失败", e);
+        }
+        //逐条推文记录发送成功的阶段，失败的推文重发时只执行未完成的阶段
+        Map<Long, List<Stage>> sent = new HashMap<>();
+        List<Long> failed = new ArrayList<>();
+        chirperDtos.forEach(chirperDto -> {
+            List<Stage> stages = new ArrayList<>();
+            boolean mentioned = !mentionFutures.containsKey(chirperDto.getId()) || this.isSucceeded(mentionFutures.get(chirperDto.getId()));
+            boolean fed = done.get(chirperDto.getId()).contains(Stage.FEED) || this.isSucceeded(feedFuture);
+            if (mentioned && mentionFutures.containsKey(chirperDto.getId())) {
+                stages.add(Stage.MENTION);
+            }
+            if (fed && !done.get(chirperDto.getId()).contains(Stage.FEED)) {
+                stages.add(Stage.FEED);
+            }
+            if (!stages.isEmpty()) {
+                sent.put(chirperDto.getId(), stages);
+            }
+            if (!mentioned || !fed) {
+                failed.add(chirperDto.getId());
+            }
+        });
+        this.markDone(sent);
+        //话题计数与消息发送相互独立，每条推文只统计一次
+        List<ChirperDto> trendPending = chirperDtos.stream()
+                .filter(chirperDto -> !done.get(chirperDto.getId()).contains(Stage.TREND))
+                .toList();
+        if (!trendPending.isEmpty()) {
+            trendService.recordBatch(trendPending.stream().map(TextEntityUtil::getTags).toList());
+            this.markDone(trendPending.stream()
+                    .collect(Collectors.toMap(ChirperDto::getId, chirperDto -> List.of(Stage.TREND), (k1, k2) -> k1)));
+        }
+        batchSummary.record(chirperDtos.size());
+        processTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return failed;
+    }
+
+    /**
+     * 向每条推文中被@的用户发送通知，被@的用户id发布时已随推文实体解析，
+     * 同时登记到互动权限服务的本地缓存，读取回复权限时无需再次解析
+     * @return 推文id到该推文全部通知发送结果的映射
+     */
+    private Map<Long, CompletableFuture<?>> sendMentioned(List<ChirperDto> chirperDtos) {
+        if (chirperDtos.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, Set<Long>> mentionedIds = replyPermissionService.getMentioned(chirperDtos);
+        Map<Long, CompletableFuture<?>> futures = new HashMap<>();
+        chirperDtos.forEach(chirperDto -> futures.put(chirperDto.getId(), CompletableFuture.allOf(
+                mentionedIds.getOrDefault(chirperDto.getId(), Set.of()).stream()
+                        .map(id -> {
+                            NotificationDto messageDto = NotificationDto.builder()
+                                    .senderId(chirperDto.getAuthorId())
+                                    .receiverId(id)
+                                    .sonEntity(chirperDto.getId().toString())
+                                    .build();
+                            return kafkaTemplate.send(MENTIONED_MSG_TOPIC, messageDto);
+                        })
+                        .toArray(CompletableFuture[]::new))));
+        return futures;
+    }
+
+    /**
+     * 整批推文合并为一条发布消息，用于更新粉丝的Feed流
+     */
+    private CompletableFuture<?> sendPublish(List<ChirperDto> chirperDtos) {
+        List<FeedDto> feeds = chirperDtos.stream().map(chirperDto -> FeedDto.builder()
+                .publisher(chirperDto.getAuthorId().toString())
+                .contentId(chirperDto.getId().toString())
+                .score((double) chirperDto.getCreateTime().getTime())
+                .build()).toList();
+        Message<FeedBatchDto> message = new Message<>();
+        message.setBody(FeedBatchDto.builder().feeds(feeds).build());
+        return kafkaTemplate.send(PUBLISH_TOPIC, message);
+    }
+
+    /**
+     * 读取每条推文已完成的处理阶段
+     */
+    private Map<Long, Set<Stage>> getDone(List<ChirperDto> chirperDtos) {
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                chirperDtos.forEach(chirperDto -> ops.opsForHash().keys(getDoneKey(chirperDto.getId())));
+                return null;
+            }
+        });
+        Map<Long, Set<Stage>> done = new HashMap<>();
+        for (int i = 0; i < chirperDtos.size(); i++) {
+            Set<Stage> stages = EnumSet.noneOf(Stage.class);
+            if (results.get(i) instanceof Collection<?> fields) {
+                fields.forEach(field -> stages.add(Stage.valueOf(field.toString())));
+            }
+            done.put(chirperDtos.get(i).getId(), stages);
+        }
+        return done;
+    }
+
+    /**
+     * 记录已完成的处理阶段
+     */
+    private void markDone(Map<Long, List<Stage>> stages) {
+        if (stages.isEmpty()) {
+            return;
+        }
+        Duration expire = Duration.ofSeconds(doneExpire);
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                stages.forEach((chirperId, finished) -> {
+                    String key = getDoneKey(chirperId);
+                    finished.forEach(stage -> ops.opsForHash().put(key, stage.name(), 1));
+                    ops.expire(key, expire);
+                });
+                return null;
+            }
+        });
+    }
+
+    private boolean isSucceeded(CompletableFuture<?> future) {
+        return future.isDone() && !future.isCompletedExceptionally();
+    }
+
+    private String getDoneKey(Long chirperId) {
+        return STR."\{CacheKey.POST_PUBLISH_BOUND_KEY.getKey()}:\{chirperId}";
+    }
+
+    /**
+     * 发布后处理的阶段
+     */
+    private enum Stage {
+        MENTION, FEED, TREND
+    }
+}
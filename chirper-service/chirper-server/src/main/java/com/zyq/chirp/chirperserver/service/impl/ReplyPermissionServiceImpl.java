@@ -0,0 +1,222 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirpclient.dto.TextEntity;
+import com.zyq.chirp.chirperserver.domain.enums.ReplyRangeEnums;
+import com.zyq.chirp.chirperserver.domain.pojo.Chirper;
+import com.zyq.chirp.chirperserver.mapper.ChirperMapper;
+import com.zyq.chirp.chirperserver.service.ReplyPermissionService;
+import com.zyq.chirp.chirperserver.util.TextEntityUtil;
+import com.zyq.chirp.common.util.StringUtil;
+import com.zyq.chirp.userclient.client.UserClient;
+import com.zyq.chirp.userclient.dto.RelationDto;
+import com.zyq.chirp.userclient.dto.UserDto;
+import com.zyq.chirp.userclient.enums.RelationType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 互动权限服务实现类
+ * 关系缓存的键为作者id:查看者id，值为作者对查看者的关系，缺失的关系合并为一次查询；
+ * 其他实例上发生的关系变化由每个实例独立消费的关系事件清除，过期时间作为兜底；
+ * 被提及的用户id随推文实体保存，本地缓存缺失时从实体读取，任何实例上的结果都相同
+ */
+@Service
+@Slf4j
+public class ReplyPermissionServiceImpl implements ReplyPermissionService {
+    @Resource
+    UserClient userClient;
+    @Resource
+    MeterRegistry meterRegistry;
+    @Resource
+    ChirperMapper chirperMapper;
+    @Value("${default-config.reply-permission.relation-size}")
+    Long relationSize;
+    @Value("${default-config.reply-permission.relation-expire}")
+    Long relationExpire;
+    @Value("${default-config.reply-permission.mention-size}")
+    Long mentionSize;
+    @Value("${default-config.reply-permission.mention-expire}")
+    Long mentionExpire;
+    private Cache<String, Integer> relations;
+    private Cache<Long, Set<Long>> mentions;
+
+    @PostConstruct
+    public void init() {
+        relations = Caffeine.newBuilder()
+                .maximumSize(relationSize)
+                .expireAfterWrite(Duration.ofSeconds(relationExpire))
+                .recordStats()
+                .build();
+        mentions = Caffeine.newBuilder()
+                .maximumSize(mentionSize)
+                .expireAfterWrite(Duration.ofSeconds(mentionExpire))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, relations, "reply-permission.relation");
+        CaffeineCacheMetrics.monitor(meterRegistry, mentions, "reply-permission.mention");
+    }
+
+    @Override
+    public List<ChirperDto> evaluate(List<ChirperDto> chirperDtos, Long viewerId) {
+        if (CollectionUtils.isEmpty(chirperDtos)) {
+            return chirperDtos;
+        }
+        if (viewerId == null) {
+            chirperDtos.forEach(ChirperDto::setAllInteractionDeny);
+            return chirperDtos;
+        }
+        List<ChirperDto> others = chirperDtos.stream()
+                .filter(chirperDto -> !viewerId.equals(chirperDto.getAuthorId()))
+                .toList();
+        Map<Long, Integer> relationMap = this.getRelations(others.stream().map(ChirperDto::getAuthorId).collect(Collectors.toSet()), viewerId);
+        Map<Long, Set<Long>> mentionMap = this.getMentioned(others);
+        for (ChirperDto chirperDto : chirperDtos) {
+            //如果是该推文的作者，又或者被提及，则全部允许
+            if (viewerId.equals(chirperDto.getAuthorId())
+                    || mentionMap.getOrDefault(chirperDto.getId(), Set.of()).contains(viewerId)) {
+                chirperDto.setAllInteractionAllow();
+                continue;
+            }
+            int relation = relationMap.getOrDefault(chirperDto.getAuthorId(), RelationType.UNFOLLOWED.getRelation());
+            if (RelationType.BLOCK.getRelation() == relation) {
+                chirperDto.setAllInteractionDeny();
+                continue;
+            }
+            //点赞、转发、引用只受作者是否拉黑用户影响
+            chirperDto.setAllInteractionAllow();
+            chirperDto.setReplyable(switch (ReplyRangeEnums.findByCodeWithDefault(chirperDto.getReplyRange())) {
+                case EVERYONE -> true;
+                case FOLLOWING -> RelationType.FOLLOWING.getRelation() == relation;
+                case MENTION -> false;
+            });
+        }
+        return chirperDtos;
+    }
+
+    @Override
+    public void resolveMentioned(List<TextEntity> entities) {
+        if (CollectionUtils.isEmpty(entities)) {
+            return;
+        }
+        Set<String> usernames = entities.stream()
+                .filter(entity -> TextEntityUtil.MENTION.equals(entity.getType()))
+                .map(TextEntity::getValue)
+                .collect(Collectors.toSet());
+        if (usernames.isEmpty()) {
+            return;
+        }
+        Map<String, Long> userIds = Objects.requireNonNullElse(userClient.getIdMapByUsername(usernames).getBody(), Map.of());
+        entities.stream()
+                .filter(entity -> TextEntityUtil.MENTION.equals(entity.getType()))
+                .forEach(entity -> entity.setUserId(userIds.get(entity.getValue())));
+    }
+
+    @Override
+    public void evict(Collection<RelationDto> relationDtos) {
+        if (CollectionUtils.isEmpty(relationDtos)) {
+            return;
+        }
+        //拉黑会同时删除对方的关注，两个方向都清除
+        relations.invalidateAll(relationDtos.stream()
+                .flatMap(relationDto -> Stream.of(
+                        StringUtil.combineKey(relationDto.getFromId(), relationDto.getToId()),
+                        StringUtil.combineKey(relationDto.getToId(), relationDto.getFromId())))
+                .toList());
+    }
+
+    /**
+     * 获取作者对查看者的关系，缺失的作者合并为一次查询
+     * @return 作者id到关系的映射
+     */
+    private Map<Long, Integer> getRelations(Set<Long> authorIds, Long viewerId) {
+        if (authorIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, Integer> cached = relations.getAll(
+                authorIds.stream().map(authorId -> StringUtil.combineKey(authorId, viewerId)).toList(),
+                keys -> {
+                    Set<Long> missing = keys.stream()
+                            .map(key -> Long.valueOf(StringUtil.divideKey(key)[0]))
+                            .collect(Collectors.toSet());
+                    List<UserDto> userDtos = Objects.requireNonNullElse(userClient.getUsernameAndRelation(missing, viewerId).getBody(), List.of());
+                    Map<String, Integer> loaded = new HashMap<>();
+                    missing.forEach(authorId -> loaded.put(StringUtil.combineKey(authorId, viewerId), RelationType.UNFOLLOWED.getRelation()));
+                    userDtos.stream()
+                            .filter(userDto -> userDto.getRelation() != null)
+                            .forEach(userDto -> loaded.put(StringUtil.combineKey(userDto.getId(), viewerId), userDto.getRelation()));
+                    return loaded;
+                });
+        return cached.entrySet().stream()
+                .collect(Collectors.toMap(entry -> Long.valueOf(StringUtil.divideKey(entry.getKey())[0]), Map.Entry::getValue));
+    }
+
+    @Override
+    public Map<Long, Set<Long>> getMentioned(List<ChirperDto> chirperDtos) {
+        Map<Long, ChirperDto> chirperMap = chirperDtos.stream()
+                .filter(chirperDto -> chirperDto.getId() != null)
+                .collect(Collectors.toMap(ChirperDto::getId, Function.identity(), (k1, k2) -> k1));
+        if (chirperMap.isEmpty()) {
+            return Map.of();
+        }
+        return mentions.getAll(chirperMap.keySet(), missing -> {
+            Map<Long, List<TextEntity>> entities = this.getEntities(missing.stream().map(chirperMap::get).toList());
+            //旧推文的实体中没有用户id，合并为一次用户名查询
+            Set<String> unresolved = entities.values().stream()
+                    .flatMap(List::stream)
+                    .filter(entity -> TextEntityUtil.MENTION.equals(entity.getType()) && entity.getUserId() == null)
+                    .map(TextEntity::getValue)
+                    .collect(Collectors.toSet());
+            Map<String, Long> userIds = unresolved.isEmpty()
+                    ? Map.of()
+                    : Objects.requireNonNullElse(userClient.getIdMapByUsername(unresolved).getBody(), Map.of());
+            return entities.entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().stream()
+                            .filter(entity -> TextEntityUtil.MENTION.equals(entity.getType()))
+                            .map(entity -> entity.getUserId() != null ? entity.getUserId() : userIds.get(entity.getValue()))
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toUnmodifiableSet())));
+        });
+    }
+
+    /**
+     * 获取推文实体，只查询了部分字段、没有正文与实体的推文从数据库读取，避免缓存空的提及用户
+     * @return 推文id到实体的映射
+     */
+    private Map<Long, List<TextEntity>> getEntities(List<ChirperDto> chirperDtos) {
+        Map<Long, List<TextEntity>> entities = new HashMap<>();
+        List<Long> incomplete = new ArrayList<>();
+        chirperDtos.forEach(chirperDto -> {
+            if (chirperDto.getEntities() == null && chirperDto.getText() == null) {
+                incomplete.add(chirperDto.getId());
+            } else {
+                entities.put(chirperDto.getId(), TextEntityUtil.getEntities(chirperDto));
+            }
+        });
+        if (!incomplete.isEmpty()) {
+            chirperMapper.selectList(new LambdaQueryWrapper<Chirper>()
+                            .select(Chirper::getId, Chirper::getText, Chirper::getEntities)
+                            .in(Chirper::getId, incomplete))
+                    .forEach(chirper -> entities.put(chirper.getId(), chirper.getEntities() != null
+                            ? chirper.getEntities()
+                            : TextEntityUtil.parse(chirper.getText())));
+            incomplete.forEach(id -> entities.putIfAbsent(id, List.of()));
+        }
+        return entities;
+    }
+}
@@ -0,0 +1,202 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.zyq.chirp.chirperserver.domain.enums.CacheKey;
+import com.zyq.chirp.chirperserver.service.TrendService;
+import com.zyq.chirp.common.util.PageUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.*;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 话题趋势服务实现类
+ * 每分钟一个计数桶，桶在窗口结束后自动过期；快照只读取每个桶的前bucketTop个话题，
+ * 按桶的时间以半衰期衰减后合并，保留前size个，因此快照的开销与Redis占用都与历史数据量无关。
+ * 快照写入临时键后重命名，多个实例之间通过租约保证同一周期只有一个实例生成快照
+ */
+@Service
+@Slf4j
+public class TrendServiceImpl implements TrendService {
+    private static final long MINUTE = 60000L;
+    @Resource
+    RedisTemplate<String, Object> redisTemplate;
+    @Value("${default-config.trend.window}")
+    Integer window;
+    @Value("${default-config.trend.half-life}")
+    Double halfLife;
+    @Value("${default-config.trend.bucket-top}")
+    Integer bucketTop;
+    @Value("${default-config.trend.size}")
+    Integer size;
+    @Value("${default-config.trend.snapshot-interval}")
+    Long snapshotInterval;
+
+    /**
+     * 清理旧版本中只增不减的话题计数
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            redisTemplate.delete("trend:tag");
+            redisTemplate.delete("trend:post");
+        } catch (Exception e) {
+            log.warn("清理旧的话题计数失败，错误:", e);
+        }
+    }
+
+    @Override
+    public void record(Collection<String> tags) {
+        this.recordBatch(List.of(tags == null ? List.of() : tags));
+    }
+
+    @Override
+    public void recordBatch(Collection<? extends Collection<String>> tagGroups) {
+        //同一推文中重复的话题只计一次
+        Map<String, Long> counts = tagGroups.stream()
+                .filter(tags -> !CollectionUtils.isEmpty(tags))
+                .flatMap(tags -> new HashSet<>(tags).stream())
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        if (counts.isEmpty()) {
+            return;
+        }
+        String key = this.getBucketKey(System.currentTimeMillis() / MINUTE);
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                    counts.forEach((tag, count) -> ops.opsForZSet().incrementScore(key, tag, count));
+                    //桶在窗口结束后多保留一分钟，保证快照读取时仍然存在
+                    ops.expire(key, Duration.ofMinutes(window + 1));
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.error("记录话题趋势失败，话题:{}，错误:", counts, e);
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${default-config.trend.snapshot-interval}")
+    public void snapshot() {
+        try {
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(CacheKey.TREND_LEASE_KEY.getKey(), 1,
+                    Duration.ofMillis(snapshotInterval));
+            if (!Boolean.TRUE.equals(acquired)) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            long currentMinute = start / MINUTE;
+            List<Object> buckets = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                    for (int age = 0; age < window; age++) {
+                        ops.opsForZSet().reverseRangeWithScores(getBucketKey(currentMinute - age), 0, bucketTop - 1);
+                    }
+                    return null;
+                }
+            });
+            //话题 -> [衰减后的热度, 窗口内的发布数]
+            Map<String, double[]> merged = new HashMap<>();
+            for (int age = 0; age < buckets.size(); age++) {
+                if (!(buckets.get(age) instanceof Set<?> tuples)) {
+                    continue;
+                }
+                double weight = Math.pow(0.5, age / halfLife);
+                for (Object item : tuples) {
+                    ZSetOperations.TypedTuple<?> tuple = (ZSetOperations.TypedTuple<?>) item;
+                    if (tuple.getValue() == null || tuple.getScore() == null) {
+                        continue;
+                    }
+                    double[] stat = merged.computeIfAbsent(String.valueOf(tuple.getValue()), tag -> new double[2]);
+                    stat[0] += tuple.getScore() * weight;
+                    stat[1] += tuple.getScore();
+                }
+            }
+            List<Map.Entry<String, double[]>> top = merged.entrySet().stream()
+                    .sorted((e1, e2) -> Double.compare(e2.getValue()[0], e1.getValue()[0]))
+                    .limit(size)
+                    .toList();
+            this.write(top);
+            log.debug("话题趋势快照完成，合并{}个话题，耗时{}ms", merged.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("生成话题趋势快照失败，错误:", e);
+        }
+    }
+
+    @Override
+    public Map<Object, Map<String, Object>> getPage(Integer page, Integer pageSize) {
+        int offset = PageUtil.getOffset(page, pageSize);
+        ZSetOperations<String, Object> operations = redisTemplate.opsForZSet();
+        Set<ZSetOperations.TypedTuple<Object>> tuples = operations.reverseRangeWithScores(
+                CacheKey.TEND_TAG_BOUND_KEY.getKey(), offset, offset + pageSize - 1);
+        Map<Object, Map<String, Object>> trendMap = new LinkedHashMap<>();
+        if (CollectionUtils.isEmpty(tuples)) {
+            return trendMap;
+        }
+        List<ZSetOperations.TypedTuple<Object>> tupleList = tuples.stream().filter(tuple -> tuple.getValue() != null).toList();
+        List<Double> posts = operations.score(CacheKey.TEND_POST_BOUND_KEY.getKey(),
+                tupleList.stream().map(ZSetOperations.TypedTuple::getValue).toArray());
+        for (int i = 0; i < tupleList.size(); i++) {
+            Map<String, Object> trend = new HashMap<>();
+            trend.put("score", tupleList.get(i).getScore());
+            if (posts != null && posts.get(i) != null) {
+                trend.put("post", posts.get(i));
+            }
+            trendMap.put(tupleList.get(i).getValue(), trend);
+        }
+        return trendMap;
+    }
+
+    /**
+     * 写入临时键后重命名为快照，读取方不会看到写了一半的快照
+     */
+    private void write(List<Map.Entry<String, double[]>> top) {
+        String tagKey = CacheKey.TEND_TAG_BOUND_KEY.getKey();
+        String postKey = CacheKey.TEND_POST_BOUND_KEY.getKey();
+        if (top.isEmpty()) {
+            redisTemplate.delete(tagKey);
+            redisTemplate.delete(postKey);
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<Object>> tagTuples = new HashSet<>();
+        Set<ZSetOperations.TypedTuple<Object>> postTuples = new HashSet<>();
+        top.forEach(entry -> {
+            tagTuples.add(new DefaultTypedTuple<>(entry.getKey(), entry.getValue()[0]));
+            postTuples.add(new DefaultTypedTuple<>(entry.getKey(), entry.getValue()[1]));
+        });
+        String tagTemp = STR."\{tagKey}:tmp";
+        String postTemp = STR."\{postKey}:tmp";
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                ops.delete(tagTemp);
+                ops.delete(postTemp);
+                ops.opsForZSet().add(tagTemp, tagTuples);
+                ops.opsForZSet().add(postTemp, postTuples);
+                ops.rename(tagTemp, tagKey);
+                ops.rename(postTemp, postKey);
+                return null;
+            }
+        });
+    }
+
+    private String getBucketKey(long minute) {
+        return STR."\{CacheKey.TREND_BUCKET_BOUND_KEY.getKey()}:\{minute}";
+    }
+}
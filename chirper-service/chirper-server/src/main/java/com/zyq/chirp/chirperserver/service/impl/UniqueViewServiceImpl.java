@@ -0,0 +1,109 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.zyq.chirp.chirperserver.domain.enums.CacheKey;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperCounter;
+import com.zyq.chirp.chirperserver.mapper.ChirperMapper;
+import com.zyq.chirp.chirperserver.service.ChirperCacheService;
+import com.zyq.chirp.chirperserver.service.UniqueViewService;
+import com.zyq.chirp.common.util.RetryUtil;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 去重浏览人数服务实现类
+ * 键使用推文id作为hash tag，同一推文的总计数与各天的计数桶位于同一个槽，可以在一个脚本中合并。
+ * 计数桶在每次持久化时并入总计数后立即删除，只存在一个写入周期，始终保持Redis的稀疏编码；
+ * 每条推文常驻的只有一个总计数，稠密编码下约12KB，超过保留天数未被浏览时过期
+ */
+@Service
+@Slf4j
+public class UniqueViewServiceImpl implements UniqueViewService {
+    /**
+     * KEYS[1]为总计数，其余为计数桶，合并后删除计数桶并返回估算值
+     */
+    private static final DefaultRedisScript<Long> MERGE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('PFMERGE', unpack(KEYS))
+            for i = 2, #KEYS do
+                redis.call('DEL', KEYS[i])
+            end
+            redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            return redis.call('PFCOUNT', KEYS[1])
+            """, Long.class);
+    @Resource
+    RedisTemplate<String, Object> redisTemplate;
+    @Resource
+    ChirperMapper chirperMapper;
+    @Resource
+    ChirperCacheService chirperCacheService;
+    @Value("${default-config.unique-view.retention}")
+    Long retention;
+
+    @Override
+    public void record(String chirperId, String viewerId) {
+        try {
+            String key = this.getBucketKey(chirperId, LocalDate.now());
+            redisTemplate.opsForHyperLogLog().add(key, viewerId);
+            //计数桶正常情况下会在下一次持久化时被删除，过期时间只用于清理无人持久化的桶
+            redisTemplate.expire(key, Duration.ofDays(2));
+        } catch (Exception e) {
+            log.warn("记录去重浏览失败，推文id:{}，错误:", chirperId, e);
+        }
+    }
+
+    @Override
+    public void persist(Collection<Long> chirperIds) {
+        if (CollectionUtils.isEmpty(chirperIds)) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        String expire = String.valueOf(Duration.ofDays(retention).toMillis());
+        Map<Long, Long> counts = new HashMap<>();
+        for (Long chirperId : chirperIds) {
+            String id = String.valueOf(chirperId);
+            try {
+                //跨天时前一天的计数桶可能还有未合并的浏览
+                Long count = redisTemplate.execute(MERGE_SCRIPT, new StringRedisSerializer(), new GenericToStringSerializer<>(Long.class),
+                        List.of(this.getTotalKey(id), this.getBucketKey(id, today), this.getBucketKey(id, today.minusDays(1))),
+                        expire);
+                if (count != null && count > 0) {
+                    counts.put(chirperId, count);
+                }
+            } catch (Exception e) {
+                log.warn("合并去重浏览失败，推文id:{}，错误:", chirperId, e);
+            }
+        }
+        if (counts.isEmpty()) {
+            return;
+        }
+        try {
+            RetryUtil.doDBRetry(() -> chirperMapper.updateUniqueViewCounts(counts));
+            counts.forEach((chirperId, count) -> chirperCacheService.setCounter(chirperId, ChirperCounter.UNIQUE_VIEW, count));
+        } catch (Exception e) {
+            //总计数仍在Redis中，下次持久化时会重新写入
+            log.error("写入去重浏览人数失败，推文:{}，错误:", counts.keySet(), e);
+        }
+    }
+
+    private String getTotalKey(String chirperId) {
+        return STR."\{CacheKey.UNIQUE_VIEW_BOUND_KEY.getKey()}:{\{chirperId}}";
+    }
+
+    private String getBucketKey(String chirperId, LocalDate date) {
+        return STR."\{this.getTotalKey(chirperId)}:\{date.format(DateTimeFormatter.BASIC_ISO_DATE)}";
+    }
+}
@@ -0,0 +1,236 @@
+package com.zyq.chirp.chirperserver.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.zyq.chirp.chirperserver.domain.enums.CacheKey;
+import com.zyq.chirp.chirperserver.domain.enums.ChirperCounter;
+import com.zyq.chirp.chirperserver.domain.pojo.ViewFlush;
+import com.zyq.chirp.chirperserver.mapper.ViewFlushMapper;
+import com.zyq.chirp.chirperserver.service.ChirperCacheService;
+import com.zyq.chirp.chirperserver.service.HotCounterService;
+import com.zyq.chirp.chirperserver.service.UniqueViewService;
+import com.zyq.chirp.chirperserver.service.ViewCountService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 浏览数持久化服务实现类
+ * 用HSCAN遍历浏览数hash，每批字段由Lua脚本原子地取出并改名为"~批次id:推文id"暂存在同一个hash中，
+ * 再在一个事务中插入批次记录并以CASE WHEN批量更新浏览数，最后删除暂存字段。
+ * 批次记录的主键保证同一批次只会写入一次：进程在写入数据库前后崩溃时，暂存字段会在下一轮重新写入，
+ * 已写入过的批次因主键冲突而跳过，浏览数不会丢失也不会重复累加
+ */
+@Service
+@Slf4j
+public class ViewCountServiceImpl implements ViewCountService {
+    private static final String STAGED_PREFIX = "~";
+    /**
+     * ARGV[1]为批次id，其余为推文id，返回实际取出的推文id与浏览数
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> STAGE_SCRIPT = new DefaultRedisScript<>("""
+            local result = {}
+            for i = 2, #ARGV do
+                local value = redis.call('HGET', KEYS[1], ARGV[i])
+                if value then
+                    redis.call('HDEL', KEYS[1], ARGV[i])
+                    redis.call('HSET', KEYS[1], '~' .. ARGV[1] .. ':' .. ARGV[i], value)
+                    table.insert(result, ARGV[i])
+                    table.insert(result, value)
+                end
+            end
+            return result
+            """, List.class);
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+    @Resource
+    RedisTemplate<String, Object> redisTemplate;
+    @Resource
+    HotCounterService hotCounterService;
+    @Resource
+    ViewFlushMapper viewFlushMapper;
+    @Resource
+    ChirperCacheService chirperCacheService;
+    @Resource
+    UniqueViewService uniqueViewService;
+    @Resource
+    TransactionTemplate transactionTemplate;
+    @Resource
+    MeterRegistry meterRegistry;
+    @Value("${default-config.view-flush.lease}")
+    Long lease;
+    @Value("${default-config.view-flush.batch-size}")
+    Integer batchSize;
+    @Value("${default-config.view-flush.max-batches}")
+    Integer maxBatches;
+    @Value("${default-config.view-flush.marker-retention}")
+    Long markerRetention;
+    private Counter viewCounter;
+    private Counter rowCounter;
+    private Timer flushTimer;
+    /**
+     * 上一次完整遍历浏览数hash的时间
+     */
+    private volatile long lastDrained = System.currentTimeMillis();
+
+    @PostConstruct
+    public void init() {
+        viewCounter = Counter.builder("chirper.view.flush.views")
+                .description("写入数据库的浏览数")
+                .register(meterRegistry);
+        rowCounter = Counter.builder("chirper.view.flush.rows")
+                .description("更新浏览数的推文数")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("chirper.view.flush.duration")
+                .description("一轮浏览数写入的耗时")
+                .register(meterRegistry);
+        Gauge.builder("chirper.view.flush.lag", this, service -> (System.currentTimeMillis() - service.lastDrained) / 1000.0)
+                .description("距上一次完整写入浏览数的时间")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void flush() {
+        String leaseKey = CacheKey.VIEW_FLUSH_LEASE_KEY.getKey();
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(leaseKey, token, Duration.ofMillis(lease));
+        if (!Boolean.TRUE.equals(acquired)) {
+            return;
+        }
+        try {
+            flushTimer.record(() -> {
+                this.recover();
+                if (this.drain()) {
+                    lastDrained = System.currentTimeMillis();
+                }
+                viewFlushMapper.delete(new LambdaQueryWrapper<ViewFlush>()
+                        .lt(ViewFlush::getCreateTime, new Timestamp(System.currentTimeMillis() - Duration.ofHours(markerRetention).toMillis())));
+            });
+        } catch (Exception e) {
+            log.error("持久化浏览量失败，错误:", e);
+        } finally {
+            //租约的值由值序列化器写入，比较时使用相同的序列化方式
+            redisTemplate.execute(RELEASE_SCRIPT, redisTemplate.getValueSerializer(),
+                    new GenericToStringSerializer<>(Long.class), List.of(leaseKey), token);
+        }
+    }
+
+    /**
+     * 重新写入上一轮遗留的暂存字段
+     */
+    private void recover() {
+        Map<Long, Map<Long, Long>> batches = new HashMap<>();
+        ScanOptions options = ScanOptions.scanOptions().match(STR."\{STAGED_PREFIX}*").count(batchSize).build();
+        try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(CacheKey.VIEW_COUNT_BOUND_KEY.getKey(), options)) {
+            while (cursor.hasNext()) {
+                Map.Entry<Object, Object> entry = cursor.next();
+                String[] parts = String.valueOf(entry.getKey()).substring(STAGED_PREFIX.length()).split(":");
+                batches.computeIfAbsent(Long.valueOf(parts[0]), batchId -> new HashMap<>())
+                        .put(Long.valueOf(parts[1]), Long.valueOf(String.valueOf(entry.getValue())));
+            }
+        }
+        if (!batches.isEmpty()) {
+            log.info("重新写入遗留的浏览量批次:{}", batches.keySet());
+            batches.forEach(this::apply);
+        }
+    }
+
+    /**
+     * 遍历浏览数hash，最多写入maxBatches批
+     * @return 是否完整遍历
+     */
+    private boolean drain() {
+        ScanOptions options = ScanOptions.scanOptions().count(batchSize).build();
+        int batches = 0;
+        try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(CacheKey.VIEW_COUNT_BOUND_KEY.getKey(), options)) {
+            List<String> fields = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                String field = String.valueOf(cursor.next().getKey());
+                if (field.startsWith(STAGED_PREFIX)) {
+                    continue;
+                }
+                fields.add(field);
+                if (fields.size() >= batchSize) {
+                    this.stageAndApply(fields);
+                    fields.clear();
+                    if (++batches >= maxBatches) {
+                        return false;
+                    }
+                }
+            }
+            if (!fields.isEmpty()) {
+                this.stageAndApply(fields);
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stageAndApply(List<String> fields) {
+        long batchId = IdWorker.getId();
+        List<Object> args = new ArrayList<>(fields.size() + 1);
+        args.add(String.valueOf(batchId));
+        args.addAll(fields);
+        List<String> staged = redisTemplate.execute(STAGE_SCRIPT, new StringRedisSerializer(), new StringRedisSerializer(),
+                List.of(CacheKey.VIEW_COUNT_BOUND_KEY.getKey()), args.toArray());
+        if (staged == null || staged.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> deltas = new HashMap<>();
+        for (int i = 0; i + 1 < staged.size(); i += 2) {
+            deltas.put(Long.valueOf(staged.get(i)), Long.valueOf(staged.get(i + 1)));
+        }
+        this.apply(batchId, deltas);
+    }
+
+    /**
+     * 在一个事务中插入批次记录并更新浏览数，成功或批次已写入过时删除暂存字段
+     */
+    private void apply(Long batchId, Map<Long, Long> deltas) {
+        Boolean applied = transactionTemplate.execute(status -> {
+            try {
+                viewFlushMapper.insert(new ViewFlush(batchId, new Timestamp(System.currentTimeMillis())));
+            } catch (DuplicateKeyException e) {
+                return false;
+            }
+            Map<Long, Long> nonZero = new HashMap<>(deltas);
+            nonZero.values().removeIf(delta -> delta == 0);
+            if (!nonZero.isEmpty()) {
+                hotCounterService.increment(ChirperCounter.VIEW, nonZero);
+            }
+            return true;
+        });
+        redisTemplate.opsForHash().delete(CacheKey.VIEW_COUNT_BOUND_KEY.getKey(),
+                deltas.keySet().stream().map(chirperId -> STR."\{STAGED_PREFIX}\{batchId}:\{chirperId}").toArray());
+        if (Boolean.TRUE.equals(applied)) {
+            deltas.forEach((chirperId, delta) -> chirperCacheService.incrementCounter(chirperId, ChirperCounter.VIEW, delta));
+            viewCounter.increment(deltas.values().stream().mapToLong(Long::longValue).sum());
+            rowCounter.increment(deltas.size());
+        }
+        uniqueViewService.persist(deltas.keySet());
+    }
+}
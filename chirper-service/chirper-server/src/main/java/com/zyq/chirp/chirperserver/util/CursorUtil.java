@@ -0,0 +1,35 @@
+package com.zyq.chirp.chirperserver.util;
+
+import com.zyq.chirp.common.domain.exception.ChirpException;
+import com.zyq.chirp.common.domain.model.Code;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.stream.Collectors;
+
+/**
+ * 分页游标工具
+ * 游标由定位上一页最后一条记录所需的若干数值组成，编码后对调用方不透明，调用方只需原样传回
+ */
+public class CursorUtil {
+    public static String encode(long... values) {
+        String joined = Arrays.stream(values).mapToObj(String::valueOf).collect(Collectors.joining(":"));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(joined.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param length 游标应包含的数值个数
+     */
+    public static long[] decode(String cursor, int length) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if (parts.length != length) {
+                throw new IllegalArgumentException(cursor);
+            }
+            return Arrays.stream(parts).mapToLong(Long::parseLong).toArray();
+        } catch (IllegalArgumentException e) {
+            throw new ChirpException(Code.ERR_BUSINESS, "无效的游标");
+        }
+    }
+}
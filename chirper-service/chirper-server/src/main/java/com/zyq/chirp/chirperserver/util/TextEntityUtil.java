@@ -0,0 +1,62 @@
+package com.zyq.chirp.chirperserver.util;
+
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirpclient.dto.TextEntity;
+import com.zyq.chirp.common.util.TextUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 推文实体工具
+ * 读取时优先使用发布时保存的实体，没有保存实体的旧推文再解析正文
+ */
+public class TextEntityUtil {
+    public static final String MENTION = "mention";
+    public static final String TAG = "tag";
+    public static final String URL = "url";
+
+    /**
+     * 解析正文中的实体
+     */
+    public static List<TextEntity> parse(String text) {
+        List<TextEntity> entities = new ArrayList<>();
+        TextUtil.scan(text, (type, start, end) -> {
+            switch (type) {
+                case MENTION -> entities.add(new TextEntity(MENTION, text.substring(start + 1, end), start, end));
+                case TAG -> entities.add(new TextEntity(TAG, text.substring(start + 1, end), start, end));
+                case URL -> entities.add(new TextEntity(URL, text.substring(start, end), start, end));
+            }
+        });
+        return entities;
+    }
+
+    public static List<TextEntity> getEntities(ChirperDto chirperDto) {
+        return chirperDto.getEntities() != null ? chirperDto.getEntities() : parse(chirperDto.getText());
+    }
+
+    /**
+     * 被提及的用户名
+     */
+    public static List<String> getMentioned(ChirperDto chirperDto) {
+        return getEntities(chirperDto).stream()
+                .filter(entity -> MENTION.equals(entity.getType()))
+                .map(TextEntity::getValue)
+                .toList();
+    }
+
+    /**
+     * 话题，带#前缀
+     */
+    public static List<String> getTags(ChirperDto chirperDto) {
+        return getEntities(chirperDto).stream()
+                .filter(entity -> TAG.equals(entity.getType()))
+                .map(entity -> STR."#\{entity.getValue()}")
+                .toList();
+    }
+
+    public static boolean isMentioned(ChirperDto chirperDto, String username) {
+        return username != null && getEntities(chirperDto).stream()
+                .anyMatch(entity -> MENTION.equals(entity.getType()) && username.equals(entity.getValue()));
+    }
+}
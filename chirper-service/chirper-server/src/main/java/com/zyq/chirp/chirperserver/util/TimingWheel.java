@@ -0,0 +1,103 @@
+package com.zyq.chirp.chirperserver.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮，非线程安全，需由同一个线程添加和推进
+ * 最底层每个槽位代表一个刻度，槽位的时间结束后其中的元素全部到期，因此元素不会提前到期，最多延迟一个刻度；
+ * 超出本层范围的元素放入上一层，上一层每个刻度为本层一圈，槽位开始时元素降级到本层
+ */
+public class TimingWheel<T> {
+    private final long tickMs;
+    private final int wheelSize;
+    private final List<Entry<T>>[] buckets;
+    /**
+     * 最早一个未处理的槽位的开始时间
+     */
+    private long currentTime;
+    private TimingWheel<T> overflow;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.buckets = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.currentTime = startMs - startMs % tickMs;
+    }
+
+    /**
+     * 添加元素，已到期的元素在下次推进时到期
+     * @param dueAt 到期时间(毫秒)
+     */
+    public void add(T item, long dueAt) {
+        this.place(new Entry<>(item, dueAt));
+        size++;
+    }
+
+    /**
+     * 推进到指定时间
+     * @param now 当前时间(毫秒)
+     * @param expired 接收到期的元素
+     */
+    public void advance(long now, Consumer<T> expired) {
+        while (now >= currentTime + tickMs) {
+            this.drain(currentTime, entry -> {
+                size--;
+                expired.accept(entry.item());
+            });
+            currentTime += tickMs;
+            if (overflow != null && currentTime % overflow.tickMs == 0) {
+                overflow.cascade(currentTime, this::place);
+            }
+        }
+    }
+
+    /**
+     * 所有层中尚未到期的元素数
+     */
+    public int size() {
+        return size;
+    }
+
+    private void place(Entry<T> entry) {
+        long slot = Math.max(entry.dueAt(), currentTime) / tickMs;
+        if (slot < currentTime / tickMs + wheelSize) {
+            buckets[(int) (slot % wheelSize)].add(entry);
+        } else {
+            if (overflow == null) {
+                overflow = new TimingWheel<>(tickMs * wheelSize, wheelSize, currentTime);
+            }
+            overflow.place(entry);
+        }
+    }
+
+    /**
+     * 下一层进入本层的一个新槽位，先接收上一层降级的元素，再将该槽位的元素降级到下一层
+     */
+    private void cascade(long time, Consumer<Entry<T>> lower) {
+        currentTime = time;
+        if (overflow != null && time % overflow.tickMs == 0) {
+            overflow.cascade(time, this::place);
+        }
+        this.drain(time, lower);
+    }
+
+    private void drain(long time, Consumer<Entry<T>> consumer) {
+        List<Entry<T>> bucket = buckets[(int) (time / tickMs % wheelSize)];
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Entry<T>> entries = new ArrayList<>(bucket);
+        bucket.clear();
+        entries.forEach(consumer);
+    }
+
+    private record Entry<T>(T item, long dueAt) {
+    }
+}
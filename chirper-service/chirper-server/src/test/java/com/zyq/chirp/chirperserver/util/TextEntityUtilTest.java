@@ -0,0 +1,37 @@
+package com.zyq.chirp.chirperserver.util;
+
+import com.zyq.chirp.chirpclient.dto.ChirperDto;
+import com.zyq.chirp.chirpclient.dto.TextEntity;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TextEntityUtilTest {
+
+    @Test
+    public void parsesEntitiesWithPositions() {
+        assertEquals(List.of(
+                        new TextEntity(TextEntityUtil.MENTION, "bob", 3, 7),
+                        new TextEntity(TextEntityUtil.TAG, "java", 12, 17),
+                        new TextEntity(TextEntityUtil.URL, "https://a.com/x", 18, 33)),
+                TextEntityUtil.parse("hi @bob see #java https://a.com/x"));
+        assertEquals(List.of(), TextEntityUtil.parse(null));
+    }
+
+    @Test
+    public void prefersSavedEntities() {
+        ChirperDto chirperDto = new ChirperDto();
+        chirperDto.setText("@alice #old");
+        assertEquals(List.of("alice"), TextEntityUtil.getMentioned(chirperDto));
+        assertEquals(List.of("#old"), TextEntityUtil.getTags(chirperDto));
+        chirperDto.setEntities(List.of(
+                new TextEntity(TextEntityUtil.MENTION, "bob", 0, 4),
+                new TextEntity(TextEntityUtil.TAG, "new", 5, 9)));
+        assertEquals(List.of("bob"), TextEntityUtil.getMentioned(chirperDto));
+        assertEquals(List.of("#new"), TextEntityUtil.getTags(chirperDto));
+        assertTrue(TextEntityUtil.isMentioned(chirperDto, "bob"));
+        assertFalse(TextEntityUtil.isMentioned(chirperDto, "alice"));
+    }
+}
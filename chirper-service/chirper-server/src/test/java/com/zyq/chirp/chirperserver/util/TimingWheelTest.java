@@ -0,0 +1,91 @@
+package com.zyq.chirp.chirperserver.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+    private static final long TICK = 1000;
+    private static final int WHEEL_SIZE = 60;
+
+    @Test
+    public void neverEarlyAndAtMostOneTickLate() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, 0);
+        Random random = new Random(42);
+        Map<Long, Long> dueAts = new HashMap<>();
+        //覆盖三层时间轮：60秒、1小时以及更远
+        for (long id = 0; id < 5000; id++) {
+            long dueAt = random.nextLong(2 * 3600 * 1000L);
+            dueAts.put(id, dueAt);
+            wheel.add(id, dueAt);
+        }
+        Map<Long, Long> firedAt = new HashMap<>();
+        for (long now = 0; now <= 2 * 3600 * 1000L + TICK; now += 100) {
+            long current = now;
+            wheel.advance(now, id -> assertNull(firedAt.put(id, current), "重复到期"));
+        }
+        assertEquals(dueAts.keySet(), firedAt.keySet());
+        dueAts.forEach((id, dueAt) -> {
+            long fired = firedAt.get(id);
+            assertTrue(fired > dueAt, STR."提前到期 dueAt=\{dueAt} fired=\{fired}");
+            assertTrue(fired <= dueAt + TICK, STR."延迟超过一个刻度 dueAt=\{dueAt} fired=\{fired}");
+        });
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cascadesFromUpperLevels() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, 0);
+        //第二层的范围为1小时，该元素先放入第三层
+        long dueAt = 3 * 3600 * 1000L + 61_500;
+        wheel.add("far", dueAt);
+        List<Long> fired = new ArrayList<>();
+        for (long now = 0; now <= dueAt + TICK; now += TICK) {
+            long current = now;
+            wheel.advance(now, item -> fired.add(current));
+        }
+        assertEquals(List.of(dueAt - dueAt % TICK + TICK), fired);
+    }
+
+    @Test
+    public void itemsAddedAfterAdvancingKeepTheirDueTime() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, 0);
+        wheel.advance(90_500, item -> fail("没有元素"));
+        //当前时间之后加入，距离超过一圈
+        wheel.add("late", 90_500 + 75_000);
+        List<Long> fired = new ArrayList<>();
+        for (long now = 90_500; now <= 200_000; now += TICK) {
+            long current = now;
+            wheel.advance(now, item -> fired.add(current));
+        }
+        assertEquals(1, fired.size());
+        assertTrue(fired.getFirst() > 165_500 && fired.getFirst() <= 165_500 + TICK);
+    }
+
+    @Test
+    public void pastDueItemFiresOnNextTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, 10_000);
+        wheel.add("past", 5_000);
+        List<String> fired = new ArrayList<>();
+        wheel.advance(10_999, fired::add);
+        assertTrue(fired.isEmpty());
+        wheel.advance(11_000, fired::add);
+        assertEquals(List.of("past"), fired);
+    }
+
+    @Test
+    public void jumpFiresEverythingDueAndNothingElse() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, 0);
+        for (int i = 0; i < 1000; i++) {
+            wheel.add(i, i * 10_000L);
+        }
+        List<Integer> fired = new ArrayList<>();
+        //一次推进10分钟
+        wheel.advance(600_000, fired::add);
+        assertEquals(60, fired.size());
+        assertTrue(fired.stream().allMatch(i -> i * 10_000L < 600_000));
+        assertEquals(940, wheel.size());
+    }
+}
@@ -63,7 +63,9 @@ CREATE TABLE `tb_chirper`
     `type`                   varchar(11) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci  NULL DEFAULT NULL COMMENT '原创、回复、转发、引用',
     `referenced_chirper_id`  bigint                                                        NULL DEFAULT NULL COMMENT '引用或者转发时不为空',
     `media_keys`             json                                                          NULL,
+    `entities`               json                                                          NULL COMMENT '正文中的@用户、#话题与链接及被提及用户的id，发布时解析',
     `view_count`             int                                                           NULL DEFAULT NULL,
+    `unique_view_count`      int                                                           NOT NULL DEFAULT 0 COMMENT '去重浏览人数，由HyperLogLog估算',
     `reply_count`            int                                                           NULL DEFAULT NULL,
     `like_count`             int                                                           NULL DEFAULT NULL,
     `quote_count`            int                                                           NULL DEFAULT NULL,
@@ -72,7 +74,9 @@ CREATE TABLE `tb_chirper`
     `reply_range`            tinyint(1)                                                    NULL DEFAULT NULL,
     PRIMARY KEY (`id`) USING BTREE,
     INDEX `time_index` (`create_time` ASC) USING BTREE,
-    INDEX `status_index` (`status` ASC) USING BTREE
+    INDEX `status_index` (`status` ASC, `active_time` ASC) USING BTREE,
+    INDEX `reference_index` (`referenced_chirper_id` ASC, `type` ASC) USING BTREE,
+    INDEX `reply_index` (`in_reply_to_chirper_id` ASC) USING BTREE
 ) ENGINE = InnoDB
   CHARACTER SET = utf8mb4
   COLLATE = utf8mb4_unicode_ci
@@ -84,10 +88,58 @@ CREATE TABLE `tb_chirper`
 DROP TABLE IF EXISTS `tb_chirper_like`;
 CREATE TABLE `tb_chirper_like`
 (
-    `chirper_id`  bigint   NULL DEFAULT NULL,
-    `user_id`     bigint   NULL DEFAULT NULL,
+    `chirper_id`  bigint      NULL DEFAULT NULL,
+    `user_id`     bigint      NULL DEFAULT NULL,
+    `create_time` datetime(3) NULL DEFAULT NULL COMMENT '点击时间，精确到毫秒，取消点赞时与之比较',
+    UNIQUE INDEX `like_unique` (`chirper_id` ASC, `user_id` ASC) USING BTREE,
+    INDEX `like_user_time` (`user_id` ASC, `create_time` ASC, `chirper_id` ASC) USING BTREE,
+    INDEX `like_chirper_time` (`chirper_id` ASC, `create_time` ASC, `user_id` ASC) USING BTREE
+) ENGINE = InnoDB
+  CHARACTER SET = utf8
+  COLLATE = utf8_unicode_ci
+  ROW_FORMAT = DYNAMIC;
+
+-- ----------------------------
+-- Table structure for tb_chirper_counter_shard
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_chirper_counter_shard`;
+CREATE TABLE `tb_chirper_counter_shard`
+(
+    `chirper_id` bigint      NOT NULL,
+    `counter`    varchar(16) NOT NULL,
+    `shard`      int         NOT NULL,
+    `delta`      bigint      NOT NULL DEFAULT 0,
+    PRIMARY KEY (`chirper_id`, `counter`, `shard`) USING BTREE
+) ENGINE = InnoDB
+  CHARACTER SET = utf8
+  COLLATE = utf8_unicode_ci
+  ROW_FORMAT = DYNAMIC;
+
+-- ----------------------------
+-- Table structure for tb_counter_flush
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_counter_flush`;
+CREATE TABLE `tb_counter_flush`
+(
+    `batch_id`    bigint   NOT NULL,
+    `create_time` datetime NULL DEFAULT NULL,
+    PRIMARY KEY (`batch_id`) USING BTREE,
+    INDEX `create_time_index` (`create_time` ASC) USING BTREE
+) ENGINE = InnoDB
+  CHARACTER SET = utf8
+  COLLATE = utf8_unicode_ci
+  ROW_FORMAT = DYNAMIC;
+
+-- ----------------------------
+-- Table structure for tb_view_flush
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_view_flush`;
+CREATE TABLE `tb_view_flush`
+(
+    `batch_id`    bigint   NOT NULL,
     `create_time` datetime NULL DEFAULT NULL,
-    UNIQUE INDEX `like_unique` (`chirper_id` ASC, `user_id` ASC) USING BTREE
+    PRIMARY KEY (`batch_id`) USING BTREE,
+    INDEX `create_time_index` (`create_time` ASC) USING BTREE
 ) ENGINE = InnoDB
   CHARACTER SET = utf8
   COLLATE = utf8_unicode_ci
@@ -177,6 +229,41 @@ CREATE TABLE `tb_media_file`
   COLLATE = utf8mb4_unicode_ci
   ROW_FORMAT = DYNAMIC;
 
+-- ----------------------------
+-- Table structure for tb_outbox
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_outbox`;
+CREATE TABLE `tb_outbox`
+(
+    `id`           bigint       NOT NULL AUTO_INCREMENT,
+    `service`      varchar(64)  NOT NULL,
+    `topic`        varchar(128) NOT NULL,
+    `msg_key`      varchar(128) NULL DEFAULT NULL,
+    `payload`      mediumtext   NOT NULL,
+    `payload_type` varchar(255) NOT NULL,
+    `create_time`  datetime(3)  NOT NULL,
+    PRIMARY KEY (`id`) USING BTREE,
+    INDEX `service_index` (`service` ASC, `id` ASC) USING BTREE
+) ENGINE = InnoDB
+  CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_unicode_ci
+  ROW_FORMAT = DYNAMIC;
+
+-- ----------------------------
+-- Table structure for tb_outbox_lease
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_outbox_lease`;
+CREATE TABLE `tb_outbox_lease`
+(
+    `service`     varchar(64) NOT NULL,
+    `owner`       varchar(64) NULL DEFAULT NULL,
+    `expire_time` datetime(3) NULL DEFAULT NULL,
+    PRIMARY KEY (`service`) USING BTREE
+) ENGINE = InnoDB
+  CHARACTER SET = utf8
+  COLLATE = utf8_unicode_ci
+  ROW_FORMAT = DYNAMIC;
+
 -- ----------------------------
 -- Table structure for tb_permission
 -- ----------------------------
@@ -0,0 +1,22 @@
+package com.zyq.chirp.feedclient.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 一批推文的发布消息，发布者相同的推文合并推送
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class FeedBatchDto {
+    /**
+     * 未指定接收者的feed数据
+     */
+    List<FeedDto> feeds;
+}
@@ -1,6 +1,7 @@
 package com.zyq.chirp.feedserver.mq.consumer;
 
 import com.zyq.chirp.common.mq.model.Message;
+import com.zyq.chirp.feedclient.dto.FeedBatchDto;
 import com.zyq.chirp.feedclient.dto.FeedDto;
 import com.zyq.chirp.feedserver.service.FeedService;
 import com.zyq.chirp.userclient.client.UserClient;
@@ -16,6 +17,7 @@ import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * 推文发布消息消费者
@@ -58,52 +60,29 @@ public class PublishConsumer {
      * Kafka消息模板
      */
     @Resource
-    KafkaTemplate<String, Message<FeedDto>> kafkaTemplate;
+    KafkaTemplate<String, Message<?>> kafkaTemplate;
 
     /**
      * 消费推文发布消息
-     * 将新发布的推文添加到所有粉丝的Feed流中
+     * 将新发布的推文添加到所有粉丝的Feed流中，同一批中发布者相同的推文只查询一次粉丝
      *
      * @param record Kafka消息记录
      * @param ack 消息确认对象
      */
     @KafkaListener(topics = "${mq.topic.publish}",
             batch = "false", concurrency = "4")
-    public void receiver(@Payload ConsumerRecord<String, Message<FeedDto>> record, Acknowledgment ack) {
-        Message<FeedDto> message = record.value();
+    public void receiver(@Payload ConsumerRecord<String, Message<Object>> record, Acknowledgment ack) {
+        Message<Object> message = record.value();
         try {
-            FeedDto feedDto = message.getBody();
-            long userId = Long.parseLong(feedDto.getPublisher());
-            // 获取发布者的粉丝数量
-            FollowDto followDto = userClient.getFollowerCount(userId).getBody();
-            // 分批获取粉丝ID
-            for (int i = 0; i < Math.ceilDiv(followDto.getFollower(), querySize); i++) {
-                int finalI = i;
-                Thread.ofVirtual().start(() -> {
-                    // 获取一批粉丝ID
-                    List<Long> followers = userClient.getFollowerIds(userId, finalI, querySize).getBody();
-                    if (followers != null && !followers.isEmpty()) {
-                        // 为每个粉丝添加Feed记录
-                        followers.forEach(follower -> Thread.ofVirtual().start(() -> {
-                            try {
-                                FeedDto dto = FeedDto.builder()
-                                        .receiverId(follower.toString())
-                                        .publisher(feedDto.getPublisher())
-                                        .contentId(feedDto.getContentId())
-                                        .score(feedDto.getScore())
-                                        .build();
-                                // 添加到Feed流
-                                feedService.addOne(dto);
-                                // 发送推文已发布消息
-                                Message<FeedDto> dtoMessage = Message.<FeedDto>builder().body(dto).retryTimes(0).build();
-                                kafkaTemplate.send(tweetedTopic, dtoMessage);
-                            } catch (Exception e) {
-                                log.error("", e);
-                            }
-                        }));
-                    }
-                });
-            }
+            // 兼容单条推文的发布消息
+            List<FeedDto> feeds = switch (message.getBody()) {
+                case FeedBatchDto batch -> batch.getFeeds();
+                case FeedDto feedDto -> List.of(feedDto);
+                case null, default -> List.of();
+            };
+            feeds.stream()
+                    .collect(Collectors.groupingBy(FeedDto::getPublisher))
+                    .forEach(this::push);
         } catch (Exception e) {
             log.error("推送用户推文更新通知失败,错误==>", e);
             // 消息重试处理
@@ -116,4 +95,46 @@ public class PublishConsumer {
             ack.acknowledge();
         }
     }
+
+    /**
+     * 将同一发布者的推文推送给其所有粉丝
+     *
+     * @param publisher 发布者
+     * @param feeds 该发布者的推文
+     */
+    private void push(String publisher, List<FeedDto> feeds) {
+        long userId = Long.parseLong(publisher);
+        // 获取发布者的粉丝数量
+        FollowDto followDto = userClient.getFollowerCount(userId).getBody();
+        // 分批获取粉丝ID
+        for (int i = 0; i < Math.ceilDiv(followDto.getFollower(), querySize); i++) {
+            int finalI = i;
+            Thread.ofVirtual().start(() -> {
+                // 获取一批粉丝ID
+                List<Long> followers = userClient.getFollowerIds(userId, finalI, querySize).getBody();
+                if (followers != null && !followers.isEmpty()) {
+                    // 为每个粉丝添加Feed记录
+                    followers.forEach(follower -> Thread.ofVirtual().start(() -> {
+                        try {
+                            List<FeedDto> dtos = feeds.stream().map(feedDto -> FeedDto.builder()
+                                    .receiverId(follower.toString())
+                                    .publisher(publisher)
+                                    .contentId(feedDto.getContentId())
+                                    .score(feedDto.getScore())
+                                    .build()).toList();
+                            dtos.forEach(dto -> {
+                                // 添加到Feed流
+                                feedService.addOne(dto);
+                                // 发送推文已发布消息
+                                Message<FeedDto> dtoMessage = Message.<FeedDto>builder().body(dto).retryTimes(0).build();
+                                kafkaTemplate.send(tweetedTopic, dtoMessage);
+                            });
+                        } catch (Exception e) {
+                            log.error("", e);
+                        }
+                    }));
+                }
+            });
+        }
+    }
 }
@@ -41,6 +41,9 @@ public interface UserClient {
     @PostMapping("/user/id_info")
     ResponseEntity<List<Long>> getIdByUsername(@RequestParam("username") Collection<String> username);
 
+    @PostMapping("/user/id_map")
+    ResponseEntity<Map<String, Long>> getIdMapByUsername(@RequestParam("username") Collection<String> username);
+
     @GetMapping("/rela/followers/id/{userId}/{page}/{pageSize}")
     ResponseEntity<List<Long>> getFollowerIds(@PathVariable("userId") Long userId,
                                               @PathVariable("page") Integer page,
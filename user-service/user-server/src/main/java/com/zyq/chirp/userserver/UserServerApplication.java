@@ -11,8 +11,9 @@ import org.springframework.context.annotation.EnableAspectJAutoProxy;
 @ComponentScan({"com.zyq.chirp.userserver",
         "com.zyq.chirp.common.redis",
         "com.zyq.chirp.common.db",
-        "com.zyq.chirp.common.web"})
-@MapperScan("com.zyq.chirp.userserver.mapper")
+        "com.zyq.chirp.common.web",
+        "com.zyq.chirp.common.mq"})
+@MapperScan({"com.zyq.chirp.userserver.mapper", "com.zyq.chirp.common.mq.mapper"})
 @EnableConfigurationProperties
 @EnableAspectJAutoProxy
 public class UserServerApplication {
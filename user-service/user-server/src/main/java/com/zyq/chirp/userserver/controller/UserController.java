@@ -12,6 +12,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @RestController
@@ -95,6 +96,11 @@ public class UserController {
         return ResponseEntity.ok(userService.getIdByUsername(username));
     }
 
+    @PostMapping("/id_map")
+    public ResponseEntity<Map<String, Long>> getIdMapByUsername(@RequestParam("username") Collection<String> username) {
+        return ResponseEntity.ok(userService.getIdMapByUsername(username));
+    }
+
     @GetMapping("/follower/{id}/{page}")
     public ResponseEntity<List<UserDto>> getFollower(@PathVariable("id") Long id,
                                                      @PathVariable("page") Integer page) {
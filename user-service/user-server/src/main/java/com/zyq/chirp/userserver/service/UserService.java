@@ -5,6 +5,7 @@ import com.zyq.chirp.userclient.dto.UserDto;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface UserService {
     UserDto save(UserDto userDto);
@@ -41,6 +42,14 @@ public interface UserService {
 
     List<Long> getIdByUsername(Collection<String> username);
 
+    /**
+     * 批量获取用户名对应的用户id，不存在的用户名不包含在结果中
+     *
+     * @param username 用户名
+     * @return 用户名到用户id的映射
+     */
+    Map<String, Long> getIdMapByUsername(Collection<String> username);
+
     void createUsernameBloom();
 
     boolean saveToUnBloom(String username);
@@ -8,6 +8,7 @@ import com.zyq.chirp.adviceclient.dto.NotificationDto;
 import com.zyq.chirp.common.domain.exception.ChirpException;
 import com.zyq.chirp.common.domain.model.Code;
 import com.zyq.chirp.common.mq.model.Message;
+import com.zyq.chirp.common.mq.service.OutboxService;
 import com.zyq.chirp.common.util.StringUtil;
 import com.zyq.chirp.userclient.dto.RelationDto;
 import com.zyq.chirp.userserver.convertor.RelationConvertor;
@@ -21,8 +22,8 @@ import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 
 import java.sql.Timestamp;
@@ -41,9 +42,11 @@ public class RelationServiceImpl implements RelationService {
     String follow;
     @Value("${mq.topic.unfollow}")
     String unfollowTopic;
+    @Value("${mq.topic.relation}")
+    String relationTopic;
     Integer expire = 6;
     @Resource
-    KafkaTemplate<String, Object> kafkaTemplate;
+    OutboxService outboxService;
     @Resource
     RedisTemplate<String, Object> redisTemplate;
 
@@ -178,6 +181,7 @@ public class RelationServiceImpl implements RelationService {
     @Override
     @Cacheable(key = "#fromId+':'+#toId")
     //TODO BUG,应该使用CacheEvict
+    @Transactional
     public void follow(Long fromId, Long toId) {
         if (Objects.isNull(fromId) || Objects.isNull(toId)) {
             throw new ChirpException(Code.ERR_BUSINESS, "信息不完善");
@@ -188,15 +192,17 @@ public class RelationServiceImpl implements RelationService {
                 new Timestamp(System.currentTimeMillis()),
                 RelationType.FOLLOWING.getRelation());
         relationMapper.replace(relation);
-                NotificationDto messageDto = NotificationDto.builder()
-                        .receiverId(toId)
-                        .senderId(fromId)
-                        .build();
-                kafkaTemplate.send(follow, messageDto);
+        NotificationDto messageDto = NotificationDto.builder()
+                .receiverId(toId)
+                .senderId(fromId)
+                .build();
+        outboxService.save(follow, null, messageDto);
+        this.saveRelationChanged(fromId, toId, RelationType.FOLLOWING);
     }
 
     @Override
     @CacheEvict(key = "#fromId+':'+#toId")
+    @Transactional
     public void unfollow(Long fromId, Long toId) {
         if (Objects.isNull(fromId) || Objects.isNull(toId)) {
             throw new ChirpException(Code.ERR_BUSINESS, "信息不完善");
@@ -212,10 +218,12 @@ public class RelationServiceImpl implements RelationService {
                 .eq(Relation::getStatus, relation.getStatus()));
         Message<RelationDto> message = new Message<>();
         message.setBody(relationConvertor.pojoToDto(relation));
-        kafkaTemplate.send(unfollowTopic, message);
+        outboxService.save(unfollowTopic, null, message);
+        this.saveRelationChanged(fromId, toId, RelationType.UNFOLLOWED);
     }
 
     @Override
+    @Transactional
     public void block(Long fromId, Long toId) {
         if (Objects.isNull(fromId) || Objects.isNull(toId)) {
             throw new ChirpException(Code.ERR_BUSINESS, "信息不完善");
@@ -227,9 +235,11 @@ public class RelationServiceImpl implements RelationService {
         relationMapper.replace(relation);
         //如果to关注了from，也删除该记录
         relationMapper.delete(new LambdaUpdateWrapper<Relation>().eq(Relation::getFromId, toId).eq(Relation::getToId, fromId).eq(Relation::getStatus, RelationType.FOLLOWING.getRelation()));
+        this.saveRelationChanged(fromId, toId, RelationType.BLOCK);
     }
 
     @Override
+    @Transactional
     public void cancelBlock(Long fromId, Long toId) {
         if (Objects.isNull(fromId) || Objects.isNull(toId)) {
             throw new ChirpException(Code.ERR_BUSINESS, "信息不完善");
@@ -238,5 +248,24 @@ public class RelationServiceImpl implements RelationService {
                 .eq(Relation::getFromId, fromId)
                 .eq(Relation::getToId, toId)
                 .eq(Relation::getStatus, RelationType.BLOCK.getRelation()));
+        this.saveRelationChanged(fromId, toId, RelationType.UNFOLLOWED);
+    }
+
+    /**
+     * 记录用户关系变化，与关系写入在同一事务中，供其他服务清除本地缓存的关系
+     *
+     * @param fromId 发起者
+     * @param toId   目标用户
+     * @param type   变化后的关系
+     */
+    private void saveRelationChanged(Long fromId, Long toId, RelationType type) {
+        Message<RelationDto> message = new Message<>();
+        message.setBody(RelationDto.builder()
+                .fromId(fromId)
+                .toId(toId)
+                .status(type.getRelation())
+                .createTime(new Timestamp(System.currentTimeMillis()))
+                .build());
+        outboxService.save(relationTopic, fromId.toString(), message);
     }
 }
@@ -279,6 +279,17 @@ public class UserServiceImpl implements UserService {
                 .in(User::getUsername, username)).stream().map(User::getId).toList();
     }
 
+    @Override
+    public Map<String, Long> getIdMapByUsername(Collection<String> username) {
+        if (username == null || username.isEmpty()) {
+            return Map.of();
+        }
+        return userMapper.selectList(new LambdaQueryWrapper<User>()
+                        .select(User::getId, User::getUsername)
+                        .in(User::getUsername, username)).stream()
+                .collect(Collectors.toMap(User::getUsername, User::getId, (a, b) -> a));
+    }
+
     double ERR_RATE = 0.001;
 
     @Override